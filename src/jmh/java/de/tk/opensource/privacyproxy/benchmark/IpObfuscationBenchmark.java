@@ -0,0 +1,94 @@
+package de.tk.opensource.privacyproxy.benchmark;
+
+import de.tk.opensource.privacyproxy.util.RequestUtils;
+import org.apache.tomcat.util.net.IPv6Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Obfuscating the client IP address of a tracking request, the way {@link RequestUtils} did it
+ * before ({@code legacy}, classifying the address with {@link InetAddress#getByName(String)})
+ * versus parsing the address literal. Run with the GC profiler to see the allocation per request:
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="IpObfuscationBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IpObfuscationBenchmark {
+
+    @Param({"203.0.113.17", "2001:db8:85a3::8a2e:370:7334"})
+    private String address;
+
+    @Benchmark
+    public String legacy() {
+        try {
+            final InetAddress inetAddress = InetAddress.getByName(address);
+            if (inetAddress instanceof Inet6Address) {
+                return legacyObfuscateIpV6Address(address);
+            }
+            if (inetAddress instanceof Inet4Address) {
+                return legacyObfuscateIpV4Address(address);
+            }
+        } catch (UnknownHostException e) {
+            // not an address
+        }
+        return address;
+    }
+
+    @Benchmark
+    public String parsed() {
+        return RequestUtils.obfuscateIpAddress(address);
+    }
+
+    private static String legacyObfuscateIpV4Address(final String ipAddress) {
+        final String[] addr = ipAddress.split("\\.");
+        if (addr.length == 4) {
+            addr[2] = addr[3] = "0";
+            return String.join(".", addr);
+        }
+        return ipAddress;
+    }
+
+    private static String legacyObfuscateIpV6Address(final String ipAddress) {
+        String[] addr = ipAddress.split("\\:");
+        final int positionOfShortSeparator = ipAddress.indexOf("::");
+        if (ipAddress.contains("::") && positionOfShortSeparator != ipAddress.length() - 2) {
+            int startIndex = addr.length;
+            final StringBuilder stringBuilder = new StringBuilder();
+            if (positionOfShortSeparator != 0) {
+                stringBuilder.append(":");
+            } else {
+                startIndex = startIndex - 1;
+            }
+            for (int i = startIndex; i <= 8; i++) {
+                stringBuilder.append("0:");
+            }
+            addr = ipAddress.replace("::", stringBuilder.toString()).split("\\:");
+        }
+        if (addr.length == 8) {
+            addr[6] = addr[7] = "0";
+            return IPv6Utils.canonize(String.join(":", addr));
+        }
+        return ipAddress;
+    }
+}
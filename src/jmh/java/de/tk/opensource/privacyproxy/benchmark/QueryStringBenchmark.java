@@ -0,0 +1,112 @@
+package de.tk.opensource.privacyproxy.benchmark;
+
+import de.tk.opensource.privacyproxy.util.QueryStringBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filtering and encoding the query string of a tracking beacon and creating the upstream URI, the
+ * way the routing did it before ({@code legacy}) versus {@link QueryStringBuilder}. Run with the
+ * GC profiler to see the allocation per request:
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="QueryStringBenchmark -prof gc"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QueryStringBenchmark {
+
+    private static final String ENDPOINT = "https://analytics.example.com/matomo.php";
+    private static final String[] BLACKLIST = {"uid", "cid", "_id", "cip"};
+    private static final Set<String> BLACKLIST_SET = Set.of(BLACKLIST);
+
+    @Param({"32"})
+    private int parameters;
+
+    private Map<String, String> beacon;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // the legacy code removes the blacklisted parameters on the first call, afterwards the
+        // removal costs a lookup just like the check of the new code
+        beacon = new LinkedHashMap<>();
+        beacon.put("idsite", "1");
+        beacon.put("rec", "1");
+        beacon.put("action_name", "Startseite / Versicherungen & Leistungen");
+        beacon.put("url", "https://www.example.com/leistungen/?utm_source=newsletter&q=zähne");
+        beacon.put("urlref", "https://www.google.com/search?q=krankenkasse+wechseln");
+        beacon.put("uid", "user-4711");
+        beacon.put("cid", "0123456789abcdef");
+        beacon.put("_id", "0123456789abcdef");
+        beacon.put("cip", "203.0.113.17");
+        beacon.put("res", "2560x1440");
+        beacon.put("h", "14");
+        beacon.put("m", "37");
+        beacon.put("s", "5");
+        beacon.put("cookie", "1");
+        beacon.put("ua", "Mozilla/5.0 (X11; Linux x86_64; rv:109.0) Gecko/20100101 Firefox/119.0");
+        beacon.put("lang", "de-DE,de;q=0.9,en;q=0.8");
+        for (int i = beacon.size(); i < parameters; i++) {
+            beacon.put("dimension" + i, "value " + i + " (ä/€)");
+        }
+    }
+
+    @Benchmark
+    public URI legacy() throws UnsupportedEncodingException {
+        for (final String blacklisted : BLACKLIST) {
+            beacon.remove(blacklisted);
+        }
+        final StringBuilder query = new StringBuilder();
+        for (final Map.Entry<String, String> entry : beacon.entrySet()) {
+            if (query.length() > 0) {
+                query.append("&");
+            }
+            query.append(entry.getKey()).append("=").append(
+                    URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8.name())
+            );
+        }
+        return UriComponentsBuilder.fromUriString(ENDPOINT).query(query.toString()).build(true)
+                .toUri();
+    }
+
+    @Benchmark
+    public URI queryStringBuilder() {
+        int length = 0;
+        for (final Map.Entry<String, String> entry : beacon.entrySet()) {
+            length += entry.getKey().length() + entry.getValue().length() + 2;
+        }
+        final QueryStringBuilder query =
+                QueryStringBuilder.forEndpoint(ENDPOINT, length + (length >> 2));
+        for (final Map.Entry<String, String> entry : beacon.entrySet()) {
+            if (!BLACKLIST_SET.contains(entry.getKey())) {
+                query.appendEncoded(entry.getKey(), entry.getValue());
+            }
+        }
+        return query.toUri();
+    }
+}
@@ -0,0 +1,142 @@
+package de.tk.opensource.privacyproxy.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import de.tk.opensource.privacyproxy.config.proxy.ConnectionPoolProperties;
+import de.tk.opensource.privacyproxy.util.ProxyHelper;
+import de.tk.opensource.privacyproxy.util.RestTemplateProxyCustomizer;
+import de.tk.opensource.privacyproxy.util.VirtualThreads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Burst of blocking routing calls against a slow 3rd Party Provider, executed on a platform thread
+ * pool sized like the default Tomcat worker pool versus one virtual thread per request. The
+ * virtual variant needs a Java 21 JVM as the first {@code java} on the PATH.
+ *
+ * <pre>
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="VirtualThreadRoutingBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.maxIdleConnections=2000")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class VirtualThreadRoutingBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    @Param({"1000"})
+    private int concurrentRequests;
+
+    @Param({"200"})
+    private int upstreamDelayMillis;
+
+    private HttpServer upstream;
+    private ExecutorService upstreamExecutor;
+    private ProxyHelper proxyHelper;
+    private RestTemplate restTemplate;
+    private Executor workers;
+    private ExecutorService platformWorkers;
+    private String upstreamUrl;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final boolean virtual = "virtual".equals(threads);
+        if (virtual && !VirtualThreads.isSupported()) {
+            throw new IllegalStateException("Virtual threads require a Java 21 runtime");
+        }
+
+        upstreamExecutor = Executors.newCachedThreadPool();
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), concurrentRequests);
+        upstream.setExecutor(upstreamExecutor);
+        upstream.createContext(
+                "/slow",
+                exchange -> {
+                    try {
+                        Thread.sleep(upstreamDelayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    final byte[] body = "ok".getBytes();
+                    exchange.sendResponseHeaders(200, body.length);
+                    exchange.getResponseBody().write(body);
+                    exchange.close();
+                }
+        );
+        upstream.start();
+        upstreamUrl = "http://localhost:" + upstream.getAddress().getPort() + "/slow";
+
+        // the pool must not be the limit, only the threads waiting for the upstream
+        final ConnectionPoolProperties connectionPoolProperties = new ConnectionPoolProperties();
+        connectionPoolProperties.setMaxTotal(concurrentRequests);
+        connectionPoolProperties.setMaxPerRoute(concurrentRequests);
+        proxyHelper = new ProxyHelper(null, null, null, null, connectionPoolProperties, 0, virtual);
+        restTemplate =
+                new RestTemplateBuilder(new RestTemplateProxyCustomizer(proxyHelper)).build();
+
+        if (virtual) {
+            workers = VirtualThreads.newThreadPerTaskExecutor("benchmark-vt-");
+        } else {
+            platformWorkers = Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+            workers = platformWorkers;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (platformWorkers != null) {
+            platformWorkers.shutdownNow();
+        }
+        proxyHelper.close();
+        upstream.stop(0);
+        upstreamExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public int burst() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(concurrentRequests);
+        final AtomicInteger succeeded = new AtomicInteger();
+        for (int i = 0; i < concurrentRequests; i++) {
+            workers.execute(
+                    () -> {
+                        try {
+                            if ("ok".equals(restTemplate.getForObject(upstreamUrl, String.class))) {
+                                succeeded.incrementAndGet();
+                            }
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+            );
+        }
+        done.await();
+        return succeeded.get();
+    }
+}
@@ -0,0 +1,13 @@
+package de.tk.opensource.privacyproxy.config;
+
+public enum QueueOverflowPolicy {
+
+    /** The request which does not fit into the queue anymore is discarded. */
+    DROP_NEWEST,
+
+    /** The longest waiting request is discarded to make room for the new one. */
+    DROP_OLDEST,
+
+    /** The calling thread sends the request itself, which slows down the caller. */
+    CALLER_RUNS
+}
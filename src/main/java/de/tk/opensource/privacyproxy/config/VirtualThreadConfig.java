@@ -0,0 +1,77 @@
+package de.tk.opensource.privacyproxy.config;
+
+import de.tk.opensource.privacyproxy.util.VirtualThreads;
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Opt-in execution of request handling, async MVC processing and scheduled asset retrieval on
+ * virtual threads. Enable with {@code threads.virtual.enabled: true}. Requires a Java 21 runtime;
+ * on older runtimes a warning is logged and the default platform thread pools are kept.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "threads.virtual", name = "enabled", havingValue = "true")
+@Conditional(VirtualThreadConfig.VirtualThreadsSupportedCondition.class)
+public class VirtualThreadConfig {
+
+    @Bean(
+            name = {
+                    TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+                    AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME
+            }
+    )
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        final SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor();
+        executor.setThreadFactory(VirtualThreads.newThreadFactory("task-vt-"));
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler() {
+        final ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setThreadFactory(VirtualThreads.newThreadFactory("scheduling-vt-"));
+        return scheduler;
+    }
+
+    @Configuration
+    @ConditionalOnClass(name = "org.apache.catalina.startup.Tomcat")
+    static class TomcatVirtualThreadConfig {
+
+        @Bean
+        public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+            return protocolHandler -> protocolHandler.setExecutor(
+                    VirtualThreads.newThreadPerTaskExecutor("tomcat-vt-")
+            );
+        }
+    }
+
+    static class VirtualThreadsSupportedCondition implements Condition {
+
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            if (VirtualThreads.isSupported()) {
+                return true;
+            }
+            LoggerFactory.getLogger(VirtualThreadConfig.class).warn(
+                    "threads.virtual.enabled is set, but the runtime does not support virtual threads. "
+                            + "Java {} is running, Java 21 is required.",
+                    System.getProperty("java.version")
+            );
+            return false;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package de.tk.opensource.privacyproxy.config.proxy;
+
+/**
+ * Settings of the pooled connection manager used for all outgoing requests to 3rd Party Providers.
+ * Bound from the {@code https.pool.*} properties of the application.yml.
+ */
+public class ConnectionPoolProperties {
+
+    /**
+     * Maximum number of connections in the pool over all routes
+     */
+    private int maxTotal = 200;
+
+    /**
+     * Maximum number of connections per route (scheme, host and port of a 3rd Party Provider)
+     */
+    private int maxPerRoute = 50;
+
+    /**
+     * Connections idle for longer than this are closed by a background evictor
+     */
+    private long idleEvictionSeconds = 30;
+
+    /**
+     * Upper bound for keeping a connection alive. A shorter keep-alive announced by the 3rd Party
+     * Provider is honored.
+     */
+    private long keepAliveSeconds = 60;
+
+    /**
+     * Pooled connections that have been inactive for longer than this are validated before reuse
+     */
+    private long validateAfterInactivityMillis = 2000;
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public void setMaxPerRoute(int maxPerRoute) {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    public long getIdleEvictionSeconds() {
+        return idleEvictionSeconds;
+    }
+
+    public void setIdleEvictionSeconds(long idleEvictionSeconds) {
+        this.idleEvictionSeconds = idleEvictionSeconds;
+    }
+
+    public long getKeepAliveSeconds() {
+        return keepAliveSeconds;
+    }
+
+    public void setKeepAliveSeconds(long keepAliveSeconds) {
+        this.keepAliveSeconds = keepAliveSeconds;
+    }
+
+    public long getValidateAfterInactivityMillis() {
+        return validateAfterInactivityMillis;
+    }
+
+    public void setValidateAfterInactivityMillis(long validateAfterInactivityMillis) {
+        this.validateAfterInactivityMillis = validateAfterInactivityMillis;
+    }
+}
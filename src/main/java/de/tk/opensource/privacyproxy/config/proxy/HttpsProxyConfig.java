@@ -2,11 +2,16 @@ package de.tk.opensource.privacyproxy.config.proxy;
 
 import de.tk.opensource.privacyproxy.util.ProxyHelper;
 import de.tk.opensource.privacyproxy.util.RestTemplateProxyCustomizer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Primary;
 import org.springframework.web.client.RestTemplate;
 
 @Configuration
@@ -20,14 +25,78 @@ public class HttpsProxyConfig {
     @Value("${https.nonProxyHosts:#{null}}")
     private String nonProxyHosts;
 
+    @Value("${https.dnsCacheTtlSeconds:0}")
+    private long dnsCacheTtlSeconds;
+
+    @Value("${threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private RestTemplateProxyCustomizer restTemplateProxyCustomizer;
+
+    @Bean
+    @ConfigurationProperties(prefix = "https.pool")
+    public ConnectionPoolProperties connectionPoolProperties() {
+        return new ConnectionPoolProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "https.warmup")
+    public WarmUpProperties warmUpProperties() {
+        return new WarmUpProperties();
+    }
+
     @Bean
     public ProxyHelper proxyHelper() {
-        return new ProxyHelper(null, proxyHost, proxyPort, nonProxyHosts);
+        return new ProxyHelper(
+                null,
+                proxyHost,
+                proxyPort,
+                nonProxyHosts,
+                connectionPoolProperties(),
+                dnsCacheTtlSeconds,
+                virtualThreads
+        );
     }
 
+    /**
+     * Connection counts of the shared pool, registered by the actuator if a MeterRegistry exists.
+     */
     @Bean
+    public MeterBinder connectionPoolMetrics() {
+        return meterRegistry -> proxyHelper().bindTo(meterRegistry);
+    }
+
+    @Bean
+    @Primary
     @DependsOn({"proxyHelper"})
     public RestTemplate restTemplate() {
-        return new RestTemplateBuilder(new RestTemplateProxyCustomizer(proxyHelper())).build();
+        return new RestTemplateBuilder(getRestTemplateProxyCustomizer()).build();
+    }
+
+    /**
+     * The counterpart of {@linkplain #restTemplate()} for request bodies of unknown size, on the
+     * same HTTP client, see {@link RestTemplateProxyCustomizer#createStreamingRestTemplate()}.
+     */
+    @Bean
+    @DependsOn({"proxyHelper"})
+    public RestTemplate streamingRestTemplate() {
+        return getRestTemplateProxyCustomizer().createStreamingRestTemplate();
+    }
+
+    private synchronized RestTemplateProxyCustomizer getRestTemplateProxyCustomizer() {
+        if (restTemplateProxyCustomizer == null) {
+            restTemplateProxyCustomizer = new RestTemplateProxyCustomizer(proxyHelper());
+        }
+        return restTemplateProxyCustomizer;
+    }
+
+    /**
+     * Non-blocking client for the asynchronous routing path. Created on first use only, so the
+     * I/O reactor threads are not started for applications routing synchronously.
+     */
+    @Bean
+    @Lazy
+    public CloseableHttpAsyncClient httpAsyncClient() {
+        return proxyHelper().getCloseableHttpAsyncClient();
     }
 }
@@ -0,0 +1,48 @@
+package de.tk.opensource.privacyproxy.config.proxy;
+
+import de.tk.opensource.privacyproxy.util.ProxyHelper;
+
+/**
+ * Timeouts of outgoing requests to 3rd Party Providers.
+ */
+public class TimeoutProperties {
+
+    /**
+     * Maximum time to establish a connection
+     */
+    private long connectMillis = ProxyHelper.ROUTING_TIMEOUT_MILLISECONDS;
+
+    /**
+     * Maximum time of inactivity while waiting for the response
+     */
+    private long responseMillis = ProxyHelper.ROUTING_TIMEOUT_MILLISECONDS;
+
+    /**
+     * Maximum time to wait for a connection from the pool
+     */
+    private long connectionRequestMillis = ProxyHelper.ROUTING_TIMEOUT_MILLISECONDS;
+
+    public long getConnectMillis() {
+        return connectMillis;
+    }
+
+    public void setConnectMillis(long connectMillis) {
+        this.connectMillis = connectMillis;
+    }
+
+    public long getResponseMillis() {
+        return responseMillis;
+    }
+
+    public void setResponseMillis(long responseMillis) {
+        this.responseMillis = responseMillis;
+    }
+
+    public long getConnectionRequestMillis() {
+        return connectionRequestMillis;
+    }
+
+    public void setConnectionRequestMillis(long connectionRequestMillis) {
+        this.connectionRequestMillis = connectionRequestMillis;
+    }
+}
@@ -0,0 +1,34 @@
+package de.tk.opensource.privacyproxy.config.proxy;
+
+/**
+ * Settings of the connection warm-up on startup, see {@code RoutingHandler#getWarmUpEndpoints()}.
+ * Bound from the {@code https.warmup.*} properties of the application.yml.
+ */
+public class WarmUpProperties {
+
+    /**
+     * Connections opened concurrently to each warm-up endpoint. 0 disables the warm-up.
+     */
+    private int connectionsPerHost = 2;
+
+    /**
+     * Maximum time the warm-up delays the readiness of the application
+     */
+    private long timeoutMillis = 10000;
+
+    public int getConnectionsPerHost() {
+        return connectionsPerHost;
+    }
+
+    public void setConnectionsPerHost(int connectionsPerHost) {
+        this.connectionsPerHost = connectionsPerHost;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+}
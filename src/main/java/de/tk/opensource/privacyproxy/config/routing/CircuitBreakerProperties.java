@@ -0,0 +1,86 @@
+package de.tk.opensource.privacyproxy.config.routing;
+
+/**
+ * Settings of the circuit breakers protecting the routing against degraded 3rd Party Providers.
+ * Bound from the {@code routing.circuit-breaker.*} properties of the application.yml.
+ */
+public class CircuitBreakerProperties {
+
+    /**
+     * Whether routed requests are guarded by circuit breakers at all. Disabled by default.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Percentage of failed calls in the sliding window which opens the circuit
+     */
+    private int failureRateThreshold = 50;
+
+    /**
+     * Minimum number of calls in the sliding window before the failure rate is evaluated
+     */
+    private int minimumNumberOfCalls = 20;
+
+    /**
+     * Length of the sliding window the failure rate is calculated over
+     */
+    private int slidingWindowSeconds = 10;
+
+    /**
+     * How long an open circuit rejects calls before trial calls are let through
+     */
+    private long waitDurationInOpenStateSeconds = 30;
+
+    /**
+     * Number of trial calls in half-open state. If all of them succeed, the circuit closes again.
+     */
+    private int permittedCallsInHalfOpenState = 3;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public void setFailureRateThreshold(int failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public int getMinimumNumberOfCalls() {
+        return minimumNumberOfCalls;
+    }
+
+    public void setMinimumNumberOfCalls(int minimumNumberOfCalls) {
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+    }
+
+    public int getSlidingWindowSeconds() {
+        return slidingWindowSeconds;
+    }
+
+    public void setSlidingWindowSeconds(int slidingWindowSeconds) {
+        this.slidingWindowSeconds = slidingWindowSeconds;
+    }
+
+    public long getWaitDurationInOpenStateSeconds() {
+        return waitDurationInOpenStateSeconds;
+    }
+
+    public void setWaitDurationInOpenStateSeconds(long waitDurationInOpenStateSeconds) {
+        this.waitDurationInOpenStateSeconds = waitDurationInOpenStateSeconds;
+    }
+
+    public int getPermittedCallsInHalfOpenState() {
+        return permittedCallsInHalfOpenState;
+    }
+
+    public void setPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+        this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+    }
+}
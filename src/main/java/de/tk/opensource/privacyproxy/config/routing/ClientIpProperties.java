@@ -0,0 +1,44 @@
+package de.tk.opensource.privacyproxy.config.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of the client IP resolution behind reverse proxies. Bound from the {@code
+ * routing.client-ip.*} properties of the application.yml.
+ */
+public class ClientIpProperties {
+
+    /**
+     * CIDR ranges of the reverse proxies whose forwarding headers are trusted. Defaults to the
+     * loopback and private address ranges.
+     */
+    private List<String> trustedProxies =
+            new ArrayList<>(
+                    List.of(
+                            "127.0.0.0/8", "10.0.0.0/8", "172.16.0.0/12", "192.168.0.0/16", "::1/128",
+                            "fc00::/7"
+                    )
+            );
+
+    /**
+     * Forwarding headers in the order they are looked up, the first one present is used
+     */
+    private List<String> headers = new ArrayList<>(List.of("X-Forwarded-For", "Forwarded"));
+
+    public List<String> getTrustedProxies() {
+        return trustedProxies;
+    }
+
+    public void setTrustedProxies(List<String> trustedProxies) {
+        this.trustedProxies = trustedProxies;
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public void setHeaders(List<String> headers) {
+        this.headers = headers;
+    }
+}
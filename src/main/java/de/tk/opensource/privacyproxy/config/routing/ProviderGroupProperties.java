@@ -0,0 +1,52 @@
+package de.tk.opensource.privacyproxy.config.routing;
+
+import de.tk.opensource.privacyproxy.config.proxy.ConnectionPoolProperties;
+import de.tk.opensource.privacyproxy.config.proxy.TimeoutProperties;
+
+/**
+ * Resources reserved for the routing handlers of one provider group. A group gets its own
+ * connection pool, its own timeouts and a limit of concurrently routed requests, so a slow 3rd
+ * Party Provider cannot exhaust the resources of the others.
+ */
+public class ProviderGroupProperties {
+
+    /**
+     * Connection pool of the group
+     */
+    private ConnectionPoolProperties pool = new ConnectionPoolProperties();
+
+    /**
+     * Timeouts of the requests of the group
+     */
+    private TimeoutProperties timeouts = new TimeoutProperties();
+
+    /**
+     * Maximum number of requests routed concurrently by the group. Further requests are rejected
+     * immediately. 0 means unlimited.
+     */
+    private int maxConcurrentRequests;
+
+    public ConnectionPoolProperties getPool() {
+        return pool;
+    }
+
+    public void setPool(ConnectionPoolProperties pool) {
+        this.pool = pool;
+    }
+
+    public TimeoutProperties getTimeouts() {
+        return timeouts;
+    }
+
+    public void setTimeouts(TimeoutProperties timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+}
@@ -0,0 +1,53 @@
+package de.tk.opensource.privacyproxy.config.routing;
+
+import de.tk.opensource.privacyproxy.config.proxy.WarmUpProperties;
+import de.tk.opensource.privacyproxy.routing.CircuitBreakerEndpoint;
+import de.tk.opensource.privacyproxy.routing.CircuitBreakerRegistry;
+import de.tk.opensource.privacyproxy.routing.ConnectionWarmUp;
+import de.tk.opensource.privacyproxy.routing.ProviderGroupRegistry;
+import de.tk.opensource.privacyproxy.routing.RoutingHandler;
+import de.tk.opensource.privacyproxy.util.ClientIpResolver;
+import de.tk.opensource.privacyproxy.util.ProxyHelper;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class RoutingConfig {
+
+    @Bean
+    @ConfigurationProperties(prefix = "routing")
+    public RoutingProperties routingProperties() {
+        return new RoutingProperties();
+    }
+
+    @Bean
+    public CircuitBreakerRegistry circuitBreakerRegistry() {
+        return new CircuitBreakerRegistry(routingProperties().getCircuitBreaker());
+    }
+
+    @Bean
+    public CircuitBreakerEndpoint circuitBreakerEndpoint() {
+        return new CircuitBreakerEndpoint(circuitBreakerRegistry());
+    }
+
+    @Bean
+    public ProviderGroupRegistry providerGroupRegistry(final ProxyHelper proxyHelper) {
+        return new ProviderGroupRegistry(routingProperties(), proxyHelper);
+    }
+
+    @Bean
+    public ClientIpResolver clientIpResolver() {
+        final ClientIpProperties clientIp = routingProperties().getClientIp();
+        return new ClientIpResolver(clientIp.getTrustedProxies(), clientIp.getHeaders());
+    }
+
+    @Bean
+    public ConnectionWarmUp connectionWarmUp(
+            final ObjectProvider<RoutingHandler> routingHandlers,
+            final WarmUpProperties warmUpProperties
+    ) {
+        return new ConnectionWarmUp(routingHandlers, warmUpProperties);
+    }
+}
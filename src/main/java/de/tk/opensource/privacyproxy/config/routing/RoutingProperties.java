@@ -0,0 +1,52 @@
+package de.tk.opensource.privacyproxy.config.routing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings of the routing handlers. Bound from the {@code routing.*} properties of the
+ * application.yml.
+ */
+public class RoutingProperties {
+
+    /**
+     * Circuit breakers guarding the calls to 3rd Party Providers
+     */
+    private CircuitBreakerProperties circuitBreaker = new CircuitBreakerProperties();
+
+    /**
+     * Provider groups by name. Routing handlers join a group by returning its name from
+     * RoutingHandler#getProviderGroupName(). Handlers without a configured group share the default
+     * connection pool.
+     */
+    private Map<String, ProviderGroupProperties> groups = new LinkedHashMap<>();
+
+    /**
+     * Trusted reverse proxies whose forwarding headers reveal the client IP address
+     */
+    private ClientIpProperties clientIp = new ClientIpProperties();
+
+    public CircuitBreakerProperties getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreakerProperties circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public Map<String, ProviderGroupProperties> getGroups() {
+        return groups;
+    }
+
+    public void setGroups(Map<String, ProviderGroupProperties> groups) {
+        this.groups = groups;
+    }
+
+    public ClientIpProperties getClientIp() {
+        return clientIp;
+    }
+
+    public void setClientIp(ClientIpProperties clientIp) {
+        this.clientIp = clientIp;
+    }
+}
@@ -10,14 +10,22 @@ import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
 import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Controller;
 import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.context.request.WebRequest;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is the AssetDeliveryController abstract implementation. It will search for a given asset
@@ -28,6 +36,11 @@ import java.io.InputStream;
 @RequestMapping(value = UrlPattern.Contexts.DELIVERY)
 public abstract class AssetDeliveryController {
 
+    /**
+     * The coarsest modification time resolution of common file systems (FAT)
+     */
+    private static final long MODIFICATION_TIME_RESOLUTION_MILLIS = 2000;
+
     protected final Logger LOGGER = LoggerFactory.getLogger(getClass());
 
     @Autowired
@@ -39,31 +52,62 @@ public abstract class AssetDeliveryController {
     @Value("${assets.fileLocation}")
     private String location;
 
+    /**
+     * The last delivered version of each asset, by the URI of the file the request resolved to, so
+     * patterns matching the same file share one entry. Entries of removed files are dropped when
+     * the file is requested by its name again.
+     */
+    private final Map<String, AssetVersion> assetVersions = new ConcurrentHashMap<>();
+
     /**
      * Tries to fetch the requested file from the file system. It wlll look in a folder named like
-     * the provider for the requested asset.
+     * the provider for the requested asset. Conditional requests are answered by Spring MVC by
+     * means of the ETag and Last-Modified headers of the response.
      *
      * @param provider Identifier of the provider under which we will look for the file
      * @param asset    Identifier of the asset to deliver
+     * @see #getAssetInternal(String, String, WebRequest)
      */
     protected ResponseEntity getAssetInternal(String provider, String asset) {
-        byte[] result = null;
-        Resource[] resources = getResources(provider + "/" + asset);
+        return getAssetInternal(provider, asset, null);
+    }
+
+    /**
+     * Tries to fetch the requested file from the file system. It wlll look in a folder named like
+     * the provider for the requested asset. If-None-Match and If-Modified-Since of the request
+     * are checked against the strong ETag (content hash) and the modification time of the file,
+     * an unchanged asset is answered with 304 Not Modified and no body.
+     *
+     * @param provider Identifier of the provider under which we will look for the file
+     * @param asset    Identifier of the asset to deliver
+     * @param request  the request to check the conditional headers of, null to deliver the asset
+     *                 unconditionally
+     */
+    protected ResponseEntity getAssetInternal(
+            String provider,
+            String asset,
+            @Nullable WebRequest request
+    ) {
+        final String assetPath = provider + "/" + asset;
+        AssetVersion version = null;
+        Resource[] resources = getResources(assetPath);
         if (resources.length > 0) {
-            Resource file = resources[0];
-            try (InputStream stream = file.getInputStream()) {
-                result = StreamUtils.copyToByteArray(stream);
-            } catch (IOException e) {
-                LOGGER.error(
-                        "An error occured while working on file {}. Exception: {}",
-                        file.getFilename(),
-                        e.getMessage()
-                );
+            final String fileKey = getFileKey(resources[0]);
+            if (resources[0].exists()) {
+                version = getAssetVersion(fileKey, resources[0]);
+            } else {
+                // forget removed assets, so only files on the disk are kept
+                assetVersions.remove(fileKey);
             }
         }
 
+        // Return 404 if no asset was found to deliver
+        if (version == null) {
+            return ResponseEntity.notFound().build();
+        }
+
         /**
-         * We do not want to allow any caching of these resources for now.
+         * We do not want to allow any caching of these resources without revalidation for now.
          * The expires header is not necessary but just to not deliver human-confusing cache directives
          * TODO: Allow caching of the assets while they are not being updated (cache time = cron interval from config)
          */
@@ -72,17 +116,77 @@ public abstract class AssetDeliveryController {
         header.setExpires(0L);
         header.setContentDisposition(ContentDisposition.builder("inline").filename(asset).build());
 
-        if (result != null) {
+        if (request != null) {
+            // sets ETag and Last-Modified on the response itself
+            if (request.checkNotModified(version.etag, version.lastModified)) {
+                trackAssetRequest(assetPath, 0);
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(header).build();
+            }
+        } else {
+            header.setETag(version.etag);
+            if (version.lastModified > 0) {
+                header.setLastModified(version.lastModified);
+            }
+        }
+
+        // Log the request to this asset somewhere. Might be useful for usage statistics or other internal statistics
+        trackAssetRequest(assetPath, version.content.length);
 
-            // Log the request to this asset somewhere. Might be useful for usage statistics or other internal statistics
-            trackAssetRequest(provider + "/" + asset, result.length);
+        // Return the asset file itself
+        return ResponseEntity.ok().headers(header).body(version.content);
+    }
+
+    /**
+     * The content and validators of the current version of the file. The file is only read and
+     * hashed if its modification time or size changed since the last request, or if it was read
+     * so shortly after its modification that a later change could still have the same
+     * modification time.
+     *
+     * @return null if the file cannot be read
+     */
+    @Nullable
+    private AssetVersion getAssetVersion(String fileKey, Resource file) {
+        long lastModified;
+        long contentLength;
+        try {
+            lastModified = file.lastModified();
+            contentLength = file.contentLength();
+        } catch (IOException e) {
+            lastModified = contentLength = -1;
+        }
+        AssetVersion version = assetVersions.get(fileKey);
+        if (
+                version != null
+                        && lastModified > 0
+                        && version.lastModified == lastModified
+                        && version.content.length == contentLength
+                        && version.readMillis - lastModified > MODIFICATION_TIME_RESOLUTION_MILLIS
+        ) {
+            return version;
+        }
 
-            // Return the asset file itself
-            return ResponseEntity.ok().headers(header).body(result);
+        final long readMillis = System.currentTimeMillis();
+        try (InputStream stream = file.getInputStream()) {
+            version = new AssetVersion(StreamUtils.copyToByteArray(stream), lastModified, readMillis);
+        } catch (IOException e) {
+            LOGGER.error(
+                    "An error occured while working on file {}. Exception: {}",
+                    file.getFilename(),
+                    e.getMessage()
+            );
+            assetVersions.remove(fileKey);
+            return null;
         }
+        assetVersions.put(fileKey, version);
+        return version;
+    }
 
-        // Return 404 if no asset was found to deliver
-        return ResponseEntity.notFound().build();
+    private static String getFileKey(Resource file) {
+        try {
+            return file.getURI().toString();
+        } catch (IOException e) {
+            return file.getDescription();
+        }
     }
 
     /**
@@ -117,4 +221,30 @@ public abstract class AssetDeliveryController {
         LOGGER.debug("Deliver 3rd party asset. Url={}, bytes sent={}", assetUrl, responseSize);
     }
 
+    /**
+     * An asset as read from the disk, with the validators of conditional requests
+     */
+    private static final class AssetVersion {
+
+        private final byte[] content;
+        private final String etag;
+        private final long lastModified;
+        private final long readMillis;
+
+        private AssetVersion(byte[] content, long lastModified, long readMillis) {
+            this.content = content;
+            this.etag = etag(content);
+            this.lastModified = lastModified;
+            this.readMillis = readMillis;
+        }
+
+        private static String etag(byte[] content) {
+            try {
+                final byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+                return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + "\"";
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not supported", e);
+            }
+        }
+    }
 }
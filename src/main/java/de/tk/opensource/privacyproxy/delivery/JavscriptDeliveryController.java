@@ -1,10 +1,10 @@
 package de.tk.opensource.privacyproxy.delivery;
 
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * This is an implementation of the AssetDeliveryController to deliver JavsScript files.
@@ -13,21 +13,25 @@ import org.springframework.web.bind.annotation.PathVariable;
 public class JavscriptDeliveryController extends AssetDeliveryController {
 
     /**
-     * Sets up a cachegroup as well as the URL mapping under which this content should be
-     * accessible.
+     * Sets up the URL mapping under which this content should be accessible. Unchanged content is
+     * answered with 304 Not Modified.
      */
-    @Cacheable(
-            cacheNames = "js",
-            key = "#provider + #script"
-    )
     @GetMapping(
             value = "/{provider:[a-zA-Z\\-]+$}/{script:[a-zA-Z0-9\\.\\-\\_]+\\.js$}",
             produces = "application/javascript"
     )
     public ResponseEntity getScript(
             @PathVariable("provider") String provider,
-            @PathVariable("script") String script
+            @PathVariable("script") String script,
+            WebRequest request
     ) {
-        return super.getAssetInternal(provider, script);
+        return super.getAssetInternal(provider, script, request);
+    }
+
+    /**
+     * Delivers the script unconditionally.
+     */
+    public ResponseEntity getScript(String provider, String script) {
+        return getScript(provider, script, null);
     }
 }
@@ -1,10 +1,10 @@
 package de.tk.opensource.privacyproxy.delivery;
 
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * This is an implementation of the AssetDeliveryController to deliver truetype fonts.
@@ -13,20 +13,25 @@ import org.springframework.web.bind.annotation.PathVariable;
 public class TruetypeFontDeliveryController extends AssetDeliveryController {
 
     /**
-     * Sets up cachegroup as well as the URL mapping under which this content should be accessible.
+     * Sets up the URL mapping under which this content should be accessible. Unchanged content is
+     * answered with 304 Not Modified.
      */
-    @Cacheable(
-            cacheNames = "ttf",
-            key = "#provider + #font"
-    )
     @GetMapping(
             value = "/{provider:[a-zA-Z\\-]+$}/{font:[a-zA-Z0-9\\.\\-\\_]+\\.ttf$}",
             produces = "font/ttf"
     )
     public ResponseEntity getFont(
             @PathVariable("provider") String provider,
-            @PathVariable("font") String font
+            @PathVariable("font") String font,
+            WebRequest request
     ) {
-        return super.getAssetInternal(provider, font);
+        return super.getAssetInternal(provider, font, request);
+    }
+
+    /**
+     * Delivers the font unconditionally.
+     */
+    public ResponseEntity getFont(String provider, String font) {
+        return getFont(provider, font, null);
     }
 }
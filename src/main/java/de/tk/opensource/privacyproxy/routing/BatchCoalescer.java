@@ -0,0 +1,119 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Collects requests until either the maximum batch size is reached or the oldest request has
+ * waited for the maximum delay, then hands the whole batch over to the sink. The sink is called
+ * outside of the lock, also on the single timer thread, and must not block for long. After
+ * {@linkplain #shutdown()}, each request is handed over on its own right away.
+ */
+final class BatchCoalescer {
+
+    private final int maxSize;
+    private final long maxDelayMillis;
+    private final Consumer<List<BatchedRequest>> sink;
+    private final ScheduledThreadPoolExecutor timer;
+    private final Lock lock = new ReentrantLock();
+
+    // guarded by lock
+    private List<BatchedRequest> pending;
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean shutdown;
+
+    BatchCoalescer(
+            final String name,
+            final int maxSize,
+            final long maxDelayMillis,
+            final Consumer<List<BatchedRequest>> sink
+    ) {
+        this.maxSize = maxSize;
+        this.maxDelayMillis = maxDelayMillis;
+        this.sink = sink;
+        this.timer =
+                new ScheduledThreadPoolExecutor(
+                        1,
+                        task -> {
+                            final Thread thread = new Thread(task, "batch-" + name);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                );
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    void add(final BatchedRequest request) {
+        List<BatchedRequest> fullBatch = null;
+        lock.lock();
+        try {
+            if (shutdown) {
+                fullBatch = List.of(request);
+            } else {
+                if (pending == null) {
+                    final List<BatchedRequest> batch = new ArrayList<>(maxSize);
+                    pending = batch;
+                    scheduledFlush =
+                            timer.schedule(() -> flush(batch), maxDelayMillis, TimeUnit.MILLISECONDS);
+                }
+                pending.add(request);
+                if (pending.size() >= maxSize) {
+                    fullBatch = takePending();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (fullBatch != null) {
+            sink.accept(fullBatch);
+        }
+    }
+
+    /**
+     * Hands over the pending batch, unless it was already handed over because it became full.
+     */
+    private void flush(final List<BatchedRequest> batch) {
+        lock.lock();
+        try {
+            if (pending != batch) {
+                return;
+            }
+            takePending();
+        } finally {
+            lock.unlock();
+        }
+        sink.accept(batch);
+    }
+
+    private List<BatchedRequest> takePending() {
+        final List<BatchedRequest> batch = pending;
+        pending = null;
+        scheduledFlush.cancel(false);
+        scheduledFlush = null;
+        return batch;
+    }
+
+    /**
+     * Stops the timer and hands over the pending batch immediately.
+     */
+    void shutdown() {
+        final List<BatchedRequest> batch;
+        lock.lock();
+        try {
+            shutdown = true;
+            batch = pending != null ? takePending() : null;
+        } finally {
+            lock.unlock();
+        }
+        timer.shutdownNow();
+        if (batch != null) {
+            sink.accept(batch);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.Nullable;
+
+import java.net.URI;
+
+/**
+ * A single request collected for a batch, already filtered by the whitelist and blacklist
+ * configuration of its {@link RoutingHandler}.
+ */
+public final class BatchedRequest {
+
+    private final String targetEndpoint;
+    private final URI uri;
+    private final HttpHeaders headers;
+    private final Object body;
+
+    BatchedRequest(
+            final String targetEndpoint,
+            final URI uri,
+            final HttpHeaders headers,
+            @Nullable final Object body
+    ) {
+        this.targetEndpoint = targetEndpoint;
+        this.uri = uri;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * the endpoint the request would have been sent to without batching
+     */
+    public String getTargetEndpoint() {
+        return targetEndpoint;
+    }
+
+    /**
+     * the target endpoint including the filtered query string
+     */
+    public URI getUri() {
+        return uri;
+    }
+
+    /**
+     * the whitelisted request headers and cookies
+     */
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    @Nullable
+    public Object getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,160 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import de.tk.opensource.privacyproxy.config.routing.CircuitBreakerProperties;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker for the calls to one 3rd Party Provider. Outcomes are counted in a sliding window
+ * of one second buckets. Recording an outcome only touches atomic counters, no lock is involved.
+ * <ul>
+ * <li>CLOSED: all calls pass. When the failure rate of the window reaches the threshold, the
+ * circuit opens.</li>
+ * <li>OPEN: all calls are rejected until the wait duration has passed.</li>
+ * <li>HALF_OPEN: a limited number of trial calls pass. One failure opens the circuit again, if all
+ * trial calls succeed it closes.</li>
+ * </ul>
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final long BUCKET_MILLIS = 1000;
+
+    private final int failureRateThreshold;
+    private final int minimumNumberOfCalls;
+    private final long waitDurationInOpenStateMillis;
+    private final int permittedCallsInHalfOpenState;
+    private final LongSupplier clock;
+    private final Bucket[] buckets;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private volatile long openedAt;
+    private final AtomicInteger halfOpenPermits = new AtomicInteger();
+    private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+
+    CircuitBreaker(final CircuitBreakerProperties properties) {
+        this(properties, () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+    }
+
+    CircuitBreaker(final CircuitBreakerProperties properties, final LongSupplier clock) {
+        this.failureRateThreshold = properties.getFailureRateThreshold();
+        this.minimumNumberOfCalls = Math.max(1, properties.getMinimumNumberOfCalls());
+        this.waitDurationInOpenStateMillis =
+                TimeUnit.SECONDS.toMillis(properties.getWaitDurationInOpenStateSeconds());
+        this.permittedCallsInHalfOpenState = Math.max(1, properties.getPermittedCallsInHalfOpenState());
+        this.clock = clock;
+        this.buckets = new Bucket[Math.max(1, properties.getSlidingWindowSeconds())];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * @return whether the call may be executed. Every permitted call must be followed by
+     * {@linkplain #onSuccess()} or {@linkplain #onFailure()}.
+     */
+    boolean tryAcquirePermission() {
+        switch (state.get()) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.getAsLong() - openedAt < waitDurationInOpenStateMillis) {
+                    return false;
+                }
+                if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+                    halfOpenSuccesses.set(0);
+                    halfOpenPermits.set(permittedCallsInHalfOpenState);
+                }
+                return tryAcquirePermission();
+            default:
+                return halfOpenPermits.getAndUpdate(p -> p > 0 ? p - 1 : 0) > 0;
+        }
+    }
+
+    void onSuccess() {
+        if (state.get() == State.HALF_OPEN) {
+            if (halfOpenSuccesses.incrementAndGet() >= permittedCallsInHalfOpenState
+                    && state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+                resetWindow();
+            }
+            return;
+        }
+        currentBucket().successes.incrementAndGet();
+    }
+
+    void onFailure() {
+        final State current = state.get();
+        if (current == State.HALF_OPEN) {
+            open(State.HALF_OPEN);
+            return;
+        }
+        currentBucket().failures.incrementAndGet();
+        if (current == State.CLOSED) {
+            final long[] calls = countCalls();
+            final long total = calls[0] + calls[1];
+            if (total >= minimumNumberOfCalls && calls[1] * 100 >= failureRateThreshold * total) {
+                open(State.CLOSED);
+            }
+        }
+    }
+
+    private void open(final State expected) {
+        if (state.compareAndSet(expected, State.OPEN)) {
+            openedAt = clock.getAsLong();
+        }
+    }
+
+    State getState() {
+        return state.get();
+    }
+
+    /**
+     * @return successful and failed calls within the sliding window
+     */
+    long[] countCalls() {
+        final long currentEpoch = clock.getAsLong() / BUCKET_MILLIS;
+        long successes = 0;
+        long failures = 0;
+        for (final Bucket bucket : buckets) {
+            if (bucket.epoch.get() > currentEpoch - buckets.length) {
+                successes += bucket.successes.get();
+                failures += bucket.failures.get();
+            }
+        }
+        return new long[]{successes, failures};
+    }
+
+    private Bucket currentBucket() {
+        final long epoch = clock.getAsLong() / BUCKET_MILLIS;
+        final Bucket bucket = buckets[(int) (epoch % buckets.length)];
+        final long bucketEpoch = bucket.epoch.get();
+        if (bucketEpoch != epoch && bucket.epoch.compareAndSet(bucketEpoch, epoch)) {
+            // a few outcomes recorded concurrently with the reset may get lost, which is fine for
+            // a failure rate
+            bucket.successes.set(0);
+            bucket.failures.set(0);
+        }
+        return bucket;
+    }
+
+    private void resetWindow() {
+        for (final Bucket bucket : buckets) {
+            bucket.successes.set(0);
+            bucket.failures.set(0);
+        }
+    }
+
+    private static final class Bucket {
+
+        private final AtomicLong epoch = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicLong successes = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+    }
+}
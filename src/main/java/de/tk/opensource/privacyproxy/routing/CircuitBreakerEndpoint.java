@@ -0,0 +1,38 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Actuator endpoint listing the state of all circuit breakers, keyed by routing handler and 3rd
+ * Party Provider host.
+ */
+@Endpoint(id = "circuitbreakers")
+public class CircuitBreakerEndpoint {
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+
+    public CircuitBreakerEndpoint(final CircuitBreakerRegistry circuitBreakerRegistry) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> circuitBreakers() {
+        final Map<String, Map<String, Object>> circuitBreakers = new TreeMap<>();
+        circuitBreakerRegistry.getCircuitBreakers().forEach(
+                (name, circuitBreaker) -> {
+                    final long[] calls = circuitBreaker.countCalls();
+                    final Map<String, Object> details = new LinkedHashMap<>();
+                    details.put("state", circuitBreaker.getState());
+                    details.put("successfulCalls", calls[0]);
+                    details.put("failedCalls", calls[1]);
+                    circuitBreakers.put(name, details);
+                }
+        );
+        return circuitBreakers;
+    }
+}
@@ -0,0 +1,35 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import de.tk.opensource.privacyproxy.config.routing.CircuitBreakerProperties;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds one {@link CircuitBreaker} per routing handler and 3rd Party Provider host.
+ */
+public class CircuitBreakerRegistry {
+
+    private final CircuitBreakerProperties properties;
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    public CircuitBreakerRegistry(final CircuitBreakerProperties properties) {
+        this.properties = properties;
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    CircuitBreaker getCircuitBreaker(final String handlerName, final String host) {
+        final String name = handlerName + ":" + host;
+        final CircuitBreaker circuitBreaker = circuitBreakers.get(name);
+        return circuitBreaker != null
+                ? circuitBreaker
+                : circuitBreakers.computeIfAbsent(name, n -> new CircuitBreaker(properties));
+    }
+
+    Map<String, CircuitBreaker> getCircuitBreakers() {
+        return circuitBreakers;
+    }
+}
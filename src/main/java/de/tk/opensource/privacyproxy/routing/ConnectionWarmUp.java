@@ -0,0 +1,147 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import de.tk.opensource.privacyproxy.config.proxy.WarmUpProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens connections to the {@linkplain RoutingHandler#getWarmUpEndpoints() warm-up endpoints} of
+ * all routing handlers on startup, so the first routed requests do not pay for DNS resolution,
+ * TCP and TLS handshakes. Runs before the application reports ready, bounded by {@link
+ * WarmUpProperties#getTimeoutMillis()}.
+ * <p>
+ * Each endpoint receives {@link WarmUpProperties#getConnectionsPerHost()} concurrent HEAD
+ * requests through the RestTemplate of the handler's provider group, whose connections remain
+ * in the pool afterwards. Requests which complete quickly may share a connection, so up to that
+ * many connections are opened. Failures are logged and neither delay the startup further nor
+ * count towards the circuit breakers.
+ */
+public class ConnectionWarmUp implements ApplicationRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionWarmUp.class);
+    private static final int MAX_THREADS = 32;
+
+    private final ObjectProvider<RoutingHandler> routingHandlers;
+    private final WarmUpProperties properties;
+
+    public ConnectionWarmUp(
+            final ObjectProvider<RoutingHandler> routingHandlers,
+            final WarmUpProperties properties
+    ) {
+        this.routingHandlers = routingHandlers;
+        this.properties = properties;
+    }
+
+    @Override
+    public void run(final ApplicationArguments args) {
+        if (properties.getConnectionsPerHost() <= 0) {
+            return;
+        }
+        final Map<URI, RestTemplate> endpoints = new LinkedHashMap<>();
+        routingHandlers.orderedStream().forEach(
+                handler -> {
+                    for (final String endpoint : handler.getWarmUpEndpoints()) {
+                        try {
+                            endpoints.putIfAbsent(
+                                    URI.create(endpoint),
+                                    handler.getProviderGroup().getRestTemplate()
+                            );
+                        } catch (IllegalArgumentException e) {
+                            LOGGER.warn("Invalid warm-up endpoint {}", endpoint);
+                        }
+                    }
+                }
+        );
+        if (!endpoints.isEmpty()) {
+            warmUp(endpoints);
+        }
+    }
+
+    /**
+     * @param endpoints the endpoints and the RestTemplates to open connections with
+     * @return the number of successful warm-up requests
+     */
+    int warmUp(final Map<URI, RestTemplate> endpoints) {
+        final List<Callable<Boolean>> requests = new ArrayList<>();
+        endpoints.forEach(
+                (endpoint, restTemplate) -> {
+                    for (int i = 0; i < properties.getConnectionsPerHost(); i++) {
+                        requests.add(() -> warmUp(restTemplate, endpoint));
+                    }
+                }
+        );
+
+        final long start = System.nanoTime();
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(Math.min(requests.size(), MAX_THREADS), threadFactory());
+        int succeeded = 0;
+        try {
+            for (final Future<Boolean> result : executor.invokeAll(
+                    requests,
+                    properties.getTimeoutMillis(),
+                    TimeUnit.MILLISECONDS
+            )) {
+                if (!result.isCancelled() && Boolean.TRUE.equals(result.get())) {
+                    succeeded++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // the requests handle their failures themselves
+            LOGGER.debug("Warm-up failed", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info(
+                "Warmed up {} of {} connections to {} endpoints in {} ms",
+                succeeded,
+                requests.size(),
+                endpoints.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+        );
+        return succeeded;
+    }
+
+    private static boolean warmUp(final RestTemplate restTemplate, final URI endpoint) {
+        try {
+            restTemplate.execute(endpoint, HttpMethod.HEAD, null, response -> null);
+            return true;
+        } catch (HttpStatusCodeException e) {
+            // any response means the connection is established
+            return true;
+        } catch (RestClientException e) {
+            LOGGER.warn("Warm-up of {} failed: {}", endpoint, e.getMessage());
+            return false;
+        }
+    }
+
+    private static ThreadFactory threadFactory() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return task -> {
+            final Thread thread = new Thread(task, "warm-up-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
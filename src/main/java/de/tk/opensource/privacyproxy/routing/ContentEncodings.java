@@ -0,0 +1,108 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Negotiates the content encodings passed through from the 3rd Party Provider to the client
+ * unchanged, see {@link RoutingHandler#isCompressedPassthrough()}.
+ */
+final class ContentEncodings {
+
+    /**
+     * Encodings passed through, in the order of preference advertised to the 3rd Party Provider.
+     */
+    private static final String[] PASSTHROUGH = {"br", "gzip", "deflate"};
+
+    private ContentEncodings() {
+    }
+
+    /**
+     * @param clientAcceptEncoding the {@code Accept-Encoding} header of the client
+     * @return the {@code Accept-Encoding} header for the 3rd Party Provider, consisting of the
+     * passthrough encodings accepted by the client, or {@code null} if the client accepts none
+     */
+    @Nullable
+    static String negotiate(@Nullable final String clientAcceptEncoding) {
+        if (clientAcceptEncoding == null || clientAcceptEncoding.isEmpty()) {
+            return null;
+        }
+        final StringBuilder accepted = new StringBuilder();
+        for (final String encoding : PASSTHROUGH) {
+            if (isAccepted(clientAcceptEncoding, encoding)) {
+                if (accepted.length() > 0) {
+                    accepted.append(", ");
+                }
+                accepted.append(encoding);
+            }
+        }
+        return accepted.length() > 0 ? accepted.toString() : null;
+    }
+
+    /**
+     * @return whether the coding is listed in the header without {@code q=0}, or the header
+     * accepts any coding with {@code *}
+     */
+    static boolean isAccepted(final String acceptEncoding, final String encoding) {
+        boolean wildcard = false;
+        for (final String element : acceptEncoding.split(",")) {
+            final int parameters = element.indexOf(';');
+            final String coding =
+                    (parameters >= 0 ? element.substring(0, parameters) : element).trim();
+            final boolean rejected = parameters >= 0 && isZeroQuality(element.substring(parameters));
+            if (coding.equalsIgnoreCase(encoding)) {
+                return !rejected;
+            }
+            if ("*".equals(coding)) {
+                wildcard = !rejected;
+            }
+        }
+        return wildcard;
+    }
+
+    private static boolean isZeroQuality(final String parameters) {
+        final String normalized = parameters.replace(" ", "").toLowerCase(Locale.ROOT);
+        final int quality = normalized.indexOf("q=");
+        if (quality < 0) {
+            return false;
+        }
+        final String value = normalized.substring(quality + 2);
+        final int end = value.indexOf(';');
+        try {
+            return Double.parseDouble(end >= 0 ? value.substring(0, end) : value) <= 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    static boolean isIdentity(@Nullable final String contentEncoding) {
+        return contentEncoding == null
+                || contentEncoding.isEmpty()
+                || "identity".equalsIgnoreCase(contentEncoding);
+    }
+
+    /**
+     * Fallback for 3rd Party Providers answering with an encoding which was not advertised.
+     *
+     * @return the decoded body, or {@code null} if the encoding is not supported
+     */
+    @Nullable
+    static InputStream decode(final InputStream body, final String contentEncoding)
+            throws IOException {
+        final String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(body);
+            case "deflate":
+                return new InflaterInputStream(body);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import de.tk.opensource.privacyproxy.config.CookieNameMatchType;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Decides whether a cookie is whitelisted. Full names are kept in a hash set, prefixes in a
+ * character trie, so a cookie name is checked in a single walk over its characters, independent
+ * of the number of whitelisted names.
+ */
+final class CookieNameMatcher {
+
+    private final Set<String> fullNames;
+    private final Node prefixes;
+
+    private CookieNameMatcher(final Set<String> fullNames, final Node prefixes) {
+        this.fullNames = fullNames;
+        this.prefixes = prefixes;
+    }
+
+    static CookieNameMatcher of(final String[] names, final CookieNameMatchType matchType) {
+        if (matchType == CookieNameMatchType.PREFIX) {
+            final MutableNode root = new MutableNode();
+            for (final String prefix : names) {
+                if (prefix != null) {
+                    root.insert(prefix);
+                }
+            }
+            return new CookieNameMatcher(Set.of(), root.freeze());
+        }
+        final Set<String> fullNames = new HashSet<>();
+        for (final String name : names) {
+            if (name != null) {
+                fullNames.add(name);
+            }
+        }
+        return new CookieNameMatcher(Set.copyOf(fullNames), null);
+    }
+
+    boolean matches(final String cookieName) {
+        if (prefixes == null) {
+            return fullNames.contains(cookieName);
+        }
+        Node node = prefixes;
+        for (int i = 0; ; i++) {
+            if (node.terminal) {
+                return true;
+            }
+            if (i == cookieName.length()) {
+                return false;
+            }
+            node = node.child(cookieName.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Read-only trie node. Children are looked up by binary search over the sorted edge labels.
+     */
+    private static final class Node {
+
+        private final char[] labels;
+        private final Node[] children;
+        private final boolean terminal;
+
+        private Node(final char[] labels, final Node[] children, final boolean terminal) {
+            this.labels = labels;
+            this.children = children;
+            this.terminal = terminal;
+        }
+
+        private Node child(final char label) {
+            final int index = Arrays.binarySearch(labels, label);
+            return index >= 0 ? children[index] : null;
+        }
+    }
+
+    private static final class MutableNode {
+
+        private final Map<Character, MutableNode> children = new TreeMap<>();
+        private boolean terminal;
+
+        private void insert(final String prefix) {
+            MutableNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new MutableNode());
+            }
+            node.terminal = true;
+        }
+
+        private Node freeze() {
+            final char[] labels = new char[children.size()];
+            final Node[] frozenChildren = new Node[children.size()];
+            int i = 0;
+            for (final Map.Entry<Character, MutableNode> child : children.entrySet()) {
+                labels[i] = child.getKey();
+                frozenChildren[i] = child.getValue().freeze();
+                i++;
+            }
+            return new Node(labels, frozenChildren, terminal);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Diagnostic capture of response bodies for debug logging. Only a sample of the requests is
+ * captured and at most {@code maxBytes} of each body. Streamed bodies are teed into one of a few
+ * reusable buffers while they are written to the client, so the capture neither consumes the body
+ * nor allocates per request. If all buffers are in use, the request is not captured.
+ */
+final class DebugCapture {
+
+    private static final int MAX_BUFFERS = 4;
+
+    private final double sampleRate;
+    private final int maxBytes;
+    private final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(MAX_BUFFERS);
+    private final AtomicInteger allocatedBuffers = new AtomicInteger();
+
+    DebugCapture(final double sampleRate, final int maxBytes) {
+        this.sampleRate = sampleRate;
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    int getMaxBytes() {
+        return maxBytes;
+    }
+
+    boolean isSampled() {
+        return maxBytes > 0
+                && sampleRate > 0
+                && (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate);
+    }
+
+    /**
+     * @return a buffer for teeing a streamed body, {@code null} if the request is not sampled or
+     * all buffers are in use
+     */
+    @Nullable
+    Tee startTee() {
+        if (!isSampled()) {
+            return null;
+        }
+        byte[] buffer = buffers.poll();
+        if (buffer == null) {
+            if (allocatedBuffers.incrementAndGet() > MAX_BUFFERS) {
+                allocatedBuffers.decrementAndGet();
+                return null;
+            }
+            buffer = new byte[maxBytes];
+        }
+        return new Tee(buffer);
+    }
+
+    /**
+     * Renders the first bytes of a body. Textual content is decoded with its charset, anything else
+     * is shown as hex.
+     */
+    static String render(
+            final byte[] bytes,
+            final int length,
+            final long totalLength,
+            @Nullable final MediaType contentType
+    ) {
+        final String content =
+                isTextual(contentType)
+                        ? new String(bytes, 0, length, getCharset(contentType))
+                        : HexFormat.of().formatHex(bytes, 0, length);
+        return length < totalLength || totalLength < 0
+                ? content + "... (" + length + " of " + (totalLength < 0 ? "?" : totalLength)
+                + " bytes)"
+                : content;
+    }
+
+    private static boolean isTextual(@Nullable final MediaType contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        final String subtype = contentType.getSubtype();
+        return "text".equals(contentType.getType())
+                || subtype.contains("json")
+                || subtype.contains("xml")
+                || subtype.contains("javascript")
+                || MediaType.APPLICATION_FORM_URLENCODED.includes(contentType);
+    }
+
+    private static Charset getCharset(final MediaType contentType) {
+        final Charset charset = contentType.getCharset();
+        return charset != null ? charset : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Captures the first bytes written through it. Must be released after use.
+     */
+    final class Tee {
+
+        private final byte[] buffer;
+        private int length;
+        private long totalLength;
+
+        private Tee(final byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        void write(final byte[] bytes, final int offset, final int count) {
+            totalLength += count;
+            final int captured = Math.min(count, buffer.length - length);
+            if (captured > 0) {
+                System.arraycopy(bytes, offset, buffer, length, captured);
+                length += captured;
+            }
+        }
+
+        String render(@Nullable final MediaType contentType) {
+            return DebugCapture.render(buffer, length, totalLength, contentType);
+        }
+
+        void release() {
+            length = 0;
+            totalLength = 0;
+            if (!buffers.offer(buffer)) {
+                allocatedBuffers.decrementAndGet();
+            }
+        }
+    }
+}
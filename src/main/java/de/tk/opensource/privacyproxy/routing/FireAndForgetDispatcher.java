@@ -0,0 +1,137 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import de.tk.opensource.privacyproxy.config.QueueOverflowPolicy;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the requests of a {@link RoutingHandler} in fire-and-forget mode. Requests wait in a
+ * bounded queue and are drained by a small, fixed number of worker threads. When the queue is full,
+ * the configured {@link QueueOverflowPolicy} decides what happens.
+ */
+final class FireAndForgetDispatcher {
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong dropped = new AtomicLong();
+
+    FireAndForgetDispatcher(
+            final String name,
+            final int workers,
+            final int queueCapacity,
+            final QueueOverflowPolicy overflowPolicy
+    ) {
+        this.executor =
+                new ThreadPoolExecutor(
+                        workers,
+                        workers,
+                        0L,
+                        TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueCapacity),
+                        threadFactory("fire-and-forget-" + name + "-"),
+                        overflowHandler(overflowPolicy)
+                );
+    }
+
+    private static ThreadFactory threadFactory(final String prefix) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        return task -> {
+            final Thread thread = new Thread(task, prefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private RejectedExecutionHandler overflowHandler(final QueueOverflowPolicy overflowPolicy) {
+        return (task, rejectingExecutor) -> {
+            if (rejectingExecutor.isShutdown()) {
+                dropped.incrementAndGet();
+                return;
+            }
+            final QueueOverflowPolicy policy =
+                    task instanceof QueuedOnlyRequest && overflowPolicy == QueueOverflowPolicy.CALLER_RUNS
+                            ? QueueOverflowPolicy.DROP_OLDEST
+                            : overflowPolicy;
+            switch (policy) {
+                case DROP_OLDEST:
+                    if (rejectingExecutor.getQueue().poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                    rejectingExecutor.execute(task);
+                    break;
+                case CALLER_RUNS:
+                    task.run();
+                    break;
+                default:
+                    dropped.incrementAndGet();
+            }
+        };
+    }
+
+    void dispatch(final Runnable request) {
+        executor.execute(request);
+    }
+
+    /**
+     * Like {@linkplain #dispatch(Runnable)}, but never sends the request on the calling thread:
+     * with {@link QueueOverflowPolicy#CALLER_RUNS}, the oldest queued request is discarded
+     * instead. For callers which must not block, like the timer of a {@link BatchCoalescer}.
+     */
+    void dispatchQueued(final Runnable request) {
+        executor.execute(new QueuedOnlyRequest(request));
+    }
+
+    int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    void bindTo(final MeterRegistry meterRegistry, final String handlerName) {
+        Gauge.builder("privacyproxy.routing.queue.size", executor, e -> e.getQueue().size())
+                .description("Fire-and-forget requests waiting to be sent")
+                .tag("handler", handlerName)
+                .register(meterRegistry);
+        FunctionCounter.builder("privacyproxy.routing.queue.dropped", dropped, AtomicLong::get)
+                .description("Fire-and-forget requests discarded because the queue was full")
+                .tag("handler", handlerName)
+                .register(meterRegistry);
+    }
+
+    private static final class QueuedOnlyRequest implements Runnable {
+
+        private final Runnable request;
+
+        private QueuedOnlyRequest(final Runnable request) {
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            request.run();
+        }
+    }
+
+    /**
+     * Stops accepting requests and gives the queued ones a short time to be sent.
+     *
+     * @return the number of requests which could not be sent anymore
+     */
+    int shutdown(final long timeout, final TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        if (executor.awaitTermination(timeout, unit)) {
+            return 0;
+        }
+        return executor.shutdownNow().size();
+    }
+}
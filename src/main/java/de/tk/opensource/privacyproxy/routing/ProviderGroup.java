@@ -0,0 +1,121 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.springframework.lang.Nullable;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * The resources a {@link RoutingHandler} routes its requests with: the RestTemplate and
+ * therefore the connection pool and timeouts, the asynchronous client with the same settings and
+ * the limit of concurrently routed requests.
+ */
+final class ProviderGroup {
+
+    private final String name;
+    private final RestTemplate restTemplate;
+    private final RestTemplate streamingRestTemplate;
+    private final Semaphore permits;
+    private final Supplier<CloseableHttpAsyncClient> httpAsyncClientFactory;
+    private final Lock httpAsyncClientLock = new ReentrantLock();
+    private volatile CloseableHttpAsyncClient httpAsyncClient;
+
+    ProviderGroup(
+            final String name,
+            final RestTemplate restTemplate,
+            @Nullable final Semaphore permits
+    ) {
+        this(name, restTemplate, null, permits);
+    }
+
+    /**
+     * @param streamingRestTemplate RestTemplate not buffering request bodies, {@code null} if
+     *                              the request factory cannot stream them
+     */
+    ProviderGroup(
+            final String name,
+            final RestTemplate restTemplate,
+            @Nullable final RestTemplate streamingRestTemplate,
+            @Nullable final Semaphore permits
+    ) {
+        this(name, restTemplate, streamingRestTemplate, permits, null);
+    }
+
+    /**
+     * @param httpAsyncClientFactory creates the asynchronous client of the group on first use,
+     *                               {@code null} to use the shared one
+     */
+    ProviderGroup(
+            final String name,
+            final RestTemplate restTemplate,
+            @Nullable final RestTemplate streamingRestTemplate,
+            @Nullable final Semaphore permits,
+            @Nullable final Supplier<CloseableHttpAsyncClient> httpAsyncClientFactory
+    ) {
+        this.name = name;
+        this.restTemplate = restTemplate;
+        this.streamingRestTemplate =
+                streamingRestTemplate != null ? streamingRestTemplate : restTemplate;
+        this.permits = permits;
+        this.httpAsyncClientFactory = httpAsyncClientFactory;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    RestTemplate getRestTemplate() {
+        return restTemplate;
+    }
+
+    /**
+     * @return the RestTemplate for request bodies of unknown size, which are written to the
+     * connection while they are read. Falls back to {@linkplain #getRestTemplate()}.
+     */
+    RestTemplate getStreamingRestTemplate() {
+        return streamingRestTemplate;
+    }
+
+    /**
+     * @return the asynchronous client with the pool and timeouts of the group, started on first
+     * use, or {@code null} if the group uses the shared one
+     */
+    @Nullable
+    CloseableHttpAsyncClient getHttpAsyncClient() {
+        if (httpAsyncClientFactory == null) {
+            return null;
+        }
+        CloseableHttpAsyncClient client = httpAsyncClient;
+        if (client == null) {
+            httpAsyncClientLock.lock();
+            try {
+                client = httpAsyncClient;
+                if (client == null) {
+                    client = httpAsyncClientFactory.get();
+                    httpAsyncClient = client;
+                }
+            } finally {
+                httpAsyncClientLock.unlock();
+            }
+        }
+        return client;
+    }
+
+    /**
+     * @return whether another request may be routed. Never waits, a saturated group rejects
+     * requests immediately. Every successful call must be followed by {@linkplain #release()}.
+     */
+    boolean tryAcquire() {
+        return permits == null || permits.tryAcquire();
+    }
+
+    void release() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import de.tk.opensource.privacyproxy.config.routing.ProviderGroupProperties;
+import de.tk.opensource.privacyproxy.config.routing.RoutingProperties;
+import de.tk.opensource.privacyproxy.util.ProxyHelper;
+import de.tk.opensource.privacyproxy.util.RestTemplateProxyCustomizer;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.lang.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Creates the isolated resources of the provider groups configured under {@code routing.groups}.
+ * Each group is created once, on first use.
+ */
+public class ProviderGroupRegistry {
+
+    private final RoutingProperties routingProperties;
+    private final ProxyHelper proxyHelper;
+    private final Map<String, ProviderGroup> providerGroups = new ConcurrentHashMap<>();
+    private final Map<String, ProviderGroup> http2ProviderGroups = new ConcurrentHashMap<>();
+
+    public ProviderGroupRegistry(
+            final RoutingProperties routingProperties,
+            final ProxyHelper proxyHelper
+    ) {
+        this.routingProperties = routingProperties;
+        this.proxyHelper = proxyHelper;
+    }
+
+    /**
+     * @return the provider group, or {@code null} if no group of that name is configured
+     */
+    @Nullable
+    ProviderGroup getProviderGroup(final String name) {
+        final ProviderGroupProperties properties = routingProperties.getGroups().get(name);
+        if (properties == null) {
+            return null;
+        }
+        return providerGroups.computeIfAbsent(name, n -> createProviderGroup(n, properties));
+    }
+
+    /**
+     * The HTTP/2 variant of {@linkplain #getProviderGroup(String)}: the timeouts and the limit of
+     * concurrent requests of the group apply, connections are multiplexed instead of pooled.
+     *
+     * @param name the group, {@code null} for the default settings without a concurrency limit
+     * @return the provider group, or {@code null} if no group of that name is configured
+     */
+    @Nullable
+    ProviderGroup getHttp2ProviderGroup(@Nullable final String name) {
+        final ProviderGroupProperties properties =
+                name != null ? routingProperties.getGroups().get(name) : new ProviderGroupProperties();
+        if (properties == null) {
+            return null;
+        }
+        return http2ProviderGroups.computeIfAbsent(
+                name != null ? name : "default",
+                n -> createHttp2ProviderGroup(
+                        n,
+                        properties,
+                        // the default settings are those of the shared asynchronous client
+                        name != null ? httpAsyncClientFactory(properties) : null
+                )
+        );
+    }
+
+    private ProviderGroup createHttp2ProviderGroup(
+            final String name,
+            final ProviderGroupProperties properties,
+            @Nullable final Supplier<CloseableHttpAsyncClient> httpAsyncClientFactory
+    ) {
+        return new ProviderGroup(
+                name,
+                new RestTemplateBuilder().requestFactory(
+                        () -> proxyHelper.createHttp2RequestFactory(properties.getTimeouts())
+                ).build(),
+                null,
+                properties.getMaxConcurrentRequests() > 0
+                        ? new Semaphore(properties.getMaxConcurrentRequests())
+                        : null,
+                httpAsyncClientFactory
+        );
+    }
+
+    private ProviderGroup createProviderGroup(
+            final String name,
+            final ProviderGroupProperties properties
+    ) {
+        final RestTemplateProxyCustomizer customizer =
+                new RestTemplateProxyCustomizer(
+                        proxyHelper,
+                        properties.getPool(),
+                        properties.getTimeouts()
+                );
+        return new ProviderGroup(
+                name,
+                new RestTemplateBuilder(customizer).build(),
+                customizer.createStreamingRestTemplate(),
+                properties.getMaxConcurrentRequests() > 0
+                        ? new Semaphore(properties.getMaxConcurrentRequests())
+                        : null,
+                httpAsyncClientFactory(properties)
+        );
+    }
+
+    private Supplier<CloseableHttpAsyncClient> httpAsyncClientFactory(
+            final ProviderGroupProperties properties
+    ) {
+        return () -> proxyHelper.createDedicatedCloseableHttpAsyncClient(
+                properties.getPool(),
+                properties.getTimeouts()
+        );
+    }
+}
@@ -0,0 +1,276 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Least recently used cache for filtered responses of a {@link RoutingHandler}, bounded by the
+ * number of entries and the summed size of the cached bodies. The key is built from the request
+ * after filtering, so it only contains what is sent to the 3rd Party Provider anyway. Responses are
+ * cached as long as the upstream Cache-Control or Expires header allows, or for the configured time
+ * to live if the upstream does not say anything. Responses which must not be shared, e.g. because
+ * they set a cookie, are never cached.
+ */
+final class ResponseCache {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long defaultTtlMillis;
+    private final LongSupplier clock;
+    private final Lock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // guarded by lock
+    private long bytes;
+
+    ResponseCache(final int maxEntries, final long maxBytes, final long defaultTtlMillis) {
+        this(maxEntries, maxBytes, defaultTtlMillis, System::currentTimeMillis);
+    }
+
+    ResponseCache(
+            final int maxEntries,
+            final long maxBytes,
+            final long defaultTtlMillis,
+            final LongSupplier clock
+    ) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.defaultTtlMillis = defaultTtlMillis;
+        this.clock = clock;
+    }
+
+    boolean isEnabled() {
+        return maxEntries > 0 && maxBytes > 0;
+    }
+
+    @Nullable
+    ResponseEntity<Resource> get(final String key) {
+        lock.lock();
+        try {
+            final Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expiresAt > clock.getAsLong()) {
+                    hits.increment();
+                    return entry.response;
+                }
+                remove(key, entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches the response, if the upstream response allows it.
+     *
+     * @param upstreamHeaders the headers of the 3rd Party Provider, before whitelisting
+     * @param response        the response as delivered to the client
+     */
+    void put(
+            final String key,
+            final HttpHeaders upstreamHeaders,
+            final ResponseEntity<Resource> response
+    ) {
+        if (response.getStatusCode() != HttpStatus.OK) {
+            return;
+        }
+        final Resource body = response.getBody();
+        if (body != null && !(body instanceof ByteArrayResource)) {
+            return;
+        }
+        final long ttlMillis = freshnessMillis(upstreamHeaders);
+        if (ttlMillis <= 0) {
+            return;
+        }
+        final long weight =
+                key.length() + (body != null ? ((ByteArrayResource) body).getByteArray().length : 0);
+        if (weight > maxBytes) {
+            return;
+        }
+
+        final Entry entry = new Entry(response, clock.getAsLong() + ttlMillis, weight);
+        lock.lock();
+        try {
+            final Entry replaced = entries.put(key, entry);
+            if (replaced != null) {
+                bytes -= replaced.weight;
+            }
+            bytes += weight;
+            final Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries || bytes > maxBytes) {
+                bytes -= eldest.next().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(final String key, final Entry entry) {
+        entries.remove(key);
+        bytes -= entry.weight;
+    }
+
+    /**
+     * How long the response may be served from a shared cache. s-maxage and max-age of the
+     * Cache-Control header win over Expires, the configured time to live is only used if the
+     * upstream sends neither. The Age header of the upstream, i.e. the time the response already
+     * spent in caches on the way, is subtracted.
+     *
+     * @return the remaining freshness, 0 if the response must not be cached
+     */
+    long freshnessMillis(final HttpHeaders upstreamHeaders) {
+        if (!isShareable(upstreamHeaders)) {
+            return 0;
+        }
+
+        final String age = upstreamHeaders.getFirst(HttpHeaders.AGE);
+        final long freshness =
+                lifetimeMillis(upstreamHeaders) - (age != null ? parseSeconds(age.trim()) * 1000 : 0);
+        return Math.max(freshness, 0);
+    }
+
+    private long lifetimeMillis(final HttpHeaders upstreamHeaders) {
+        long maxAge = -1;
+        long sharedMaxAge = -1;
+        for (final String cacheControl : upstreamHeaders.getValuesAsList(HttpHeaders.CACHE_CONTROL)) {
+            final String directive = cacheControl.trim().toLowerCase(Locale.ROOT);
+            if (directive.startsWith("s-maxage=")) {
+                sharedMaxAge = parseSeconds(directive.substring("s-maxage=".length()));
+            } else if (directive.startsWith("max-age=")) {
+                maxAge = parseSeconds(directive.substring("max-age=".length()));
+            }
+        }
+        if (sharedMaxAge >= 0) {
+            return sharedMaxAge * 1000;
+        }
+        if (maxAge >= 0) {
+            return maxAge * 1000;
+        }
+
+        if (upstreamHeaders.containsKey(HttpHeaders.EXPIRES)) {
+            // an invalid date, e.g. "0", means already expired
+            final long expires = upstreamHeaders.getExpires();
+            final long date = upstreamHeaders.getDate();
+            return expires - (date > 0 ? date : clock.getAsLong());
+        }
+        return defaultTtlMillis;
+    }
+
+    /**
+     * Whether the response may be delivered to other clients at all, i.e. it sets no cookie, does
+     * not vary by everything and is not marked no-store, no-cache or private.
+     *
+     * @param upstreamHeaders the headers of the 3rd Party Provider, before whitelisting
+     */
+    static boolean isShareable(final HttpHeaders upstreamHeaders) {
+        if (upstreamHeaders.containsKey(HttpHeaders.SET_COOKIE)) {
+            return false;
+        }
+        if (upstreamHeaders.getVary().contains("*")) {
+            return false;
+        }
+        for (final String cacheControl : upstreamHeaders.getValuesAsList(HttpHeaders.CACHE_CONTROL)) {
+            final String directive = cacheControl.trim().toLowerCase(Locale.ROOT);
+            if (
+                    directive.startsWith("no-store") || directive.startsWith("no-cache")
+                            || directive.startsWith("private")
+            ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseSeconds(final String value) {
+        try {
+            return Long.parseLong(value.replace("\"", ""));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long weight() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void bindTo(final MeterRegistry meterRegistry, final String handlerName) {
+        FunctionCounter.builder("privacyproxy.routing.cache.requests", hits, LongAdder::sum)
+                .description("Requests answered from the response cache")
+                .tags("handler", handlerName, "result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("privacyproxy.routing.cache.requests", misses, LongAdder::sum)
+                .description("Requests not found in the response cache")
+                .tags("handler", handlerName, "result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("privacyproxy.routing.cache.evictions", evictions, LongAdder::sum)
+                .description("Responses evicted because the cache was full")
+                .tag("handler", handlerName)
+                .register(meterRegistry);
+        Gauge.builder("privacyproxy.routing.cache.size", this, ResponseCache::size)
+                .description("Responses in the cache")
+                .tag("handler", handlerName)
+                .register(meterRegistry);
+        Gauge.builder("privacyproxy.routing.cache.weight", this, ResponseCache::weight)
+                .description("Bytes of the cached responses")
+                .tag("handler", handlerName)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    private static final class Entry {
+
+        private final ResponseEntity<Resource> response;
+        private final long expiresAt;
+        private final long weight;
+
+        private Entry(final ResponseEntity<Resource> response, final long expiresAt, final long weight) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import de.tk.opensource.privacyproxy.util.IpAnonymizer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable snapshot of the whitelist and blacklist configuration of a {@link RoutingHandler}. The
+ * configuration hooks of the handler are evaluated once when the plan is compiled, the request path
+ * only reads the prepared structures.
+ */
+final class RoutingFilterPlan {
+
+    private final String[] requestHeaderNames;
+    private final String[] responseHeaderNames;
+    private final String[] blacklistedQueryParams;
+    private final Set<String> blacklistedQueryParamSet;
+    private final boolean cookieNamesWhitelisted;
+    private final CookieNameMatcher cookieNameMatcher;
+    private final boolean defaultQueryParamEncoding;
+    private final StreamingBodyFilter bodyFilter;
+    private final IpAnonymizer ipAnonymizer;
+    private final boolean batchingSupported;
+
+    private RoutingFilterPlan(final RoutingHandler handler) {
+        this.requestHeaderNames = distinctIgnoreCase(handler.getWhitelistedRequestHeaders());
+        this.responseHeaderNames = distinctIgnoreCase(handler.getWhitelistedResponseHeaders());
+        this.blacklistedQueryParams = handler.getBlacklistedQueryParams().clone();
+        final Set<String> blacklisted = new HashSet<>();
+        Collections.addAll(blacklisted, blacklistedQueryParams);
+        this.blacklistedQueryParamSet = Collections.unmodifiableSet(blacklisted);
+        final String[] cookieNames = handler.getWhitelistedCookieNames();
+        this.cookieNamesWhitelisted = cookieNames.length > 0;
+        this.cookieNameMatcher = CookieNameMatcher.of(cookieNames, handler.getCookieNameMatchType());
+        this.defaultQueryParamEncoding =
+                !overrides(handler.getClass(), "transformQueryParam", String.class, String.class);
+        this.bodyFilter =
+                StreamingBodyFilter.compile(blacklistedQueryParams, handler.getBlacklistedBodyPaths());
+        final int ipv4PrefixLength = handler.getAnonymizedIpv4PrefixLength();
+        final int ipv6PrefixLength = handler.getAnonymizedIpv6PrefixLength();
+        this.ipAnonymizer =
+                ipv4PrefixLength == IpAnonymizer.DEFAULT.getIpv4PrefixLength()
+                        && ipv6PrefixLength == IpAnonymizer.DEFAULT.getIpv6PrefixLength()
+                        ? IpAnonymizer.DEFAULT
+                        : new IpAnonymizer(ipv4PrefixLength, ipv6PrefixLength);
+        final Class<?> handlerType = handler.getClass();
+        this.batchingSupported = overrides(handlerType, "mergeBatch", List.class);
+        final boolean batchingConfigured =
+                overrides(handlerType, "getBatchMaxSize")
+                        || overrides(handlerType, "getBatchMaxDelayMillis")
+                        || overrides(handlerType, "getBatchEndpoint", List.class);
+        if (batchingConfigured && !batchingSupported) {
+            throw new IllegalStateException(
+                    handler.getHandlerName() + " configures batching but does not override mergeBatch"
+            );
+        }
+    }
+
+    static RoutingFilterPlan compile(final RoutingHandler handler) {
+        return new RoutingFilterPlan(handler);
+    }
+
+    private static boolean overrides(
+            final Class<?> handlerType,
+            final String methodName,
+            final Class<?>... parameterTypes
+    ) {
+        for (Class<?> type = handlerType; type != RoutingHandler.class; type = type.getSuperclass()) {
+            try {
+                type.getDeclaredMethod(methodName, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // not declared on this level
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Header names are case-insensitive, so names differing only in case are kept once. The
+     * configured order is preserved.
+     */
+    private static String[] distinctIgnoreCase(final String[] names) {
+        final Set<String> seen = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        return Arrays.stream(names).filter(seen::add).toArray(String[]::new);
+    }
+
+    String[] getRequestHeaderNames() {
+        return requestHeaderNames;
+    }
+
+    String[] getResponseHeaderNames() {
+        return responseHeaderNames;
+    }
+
+    String[] getBlacklistedQueryParams() {
+        return blacklistedQueryParams;
+    }
+
+    boolean isBlacklistedQueryParam(final String name) {
+        return blacklistedQueryParamSet.contains(name);
+    }
+
+    boolean hasBlacklistedQueryParams() {
+        return blacklistedQueryParams.length > 0;
+    }
+
+    boolean hasCookieNames() {
+        return cookieNamesWhitelisted;
+    }
+
+    CookieNameMatcher getCookieNameMatcher() {
+        return cookieNameMatcher;
+    }
+
+    /**
+     * @return whether {@link RoutingHandler#transformQueryParam} is not overridden, so values can
+     * be encoded without calling it
+     */
+    boolean isDefaultQueryParamEncoding() {
+        return defaultQueryParamEncoding;
+    }
+
+    StreamingBodyFilter getBodyFilter() {
+        return bodyFilter;
+    }
+
+    IpAnonymizer getIpAnonymizer() {
+        return ipAnonymizer;
+    }
+
+    /**
+     * @return whether {@link RoutingHandler#mergeBatch} is overridden, so requests can be batched
+     */
+    boolean isBatchingSupported() {
+        return batchingSupported;
+    }
+}
@@ -1,35 +1,71 @@
 package de.tk.opensource.privacyproxy.routing;
 
 import de.tk.opensource.privacyproxy.config.CookieNameMatchType;
+import de.tk.opensource.privacyproxy.config.QueueOverflowPolicy;
 import de.tk.opensource.privacyproxy.config.UrlPattern;
+import de.tk.opensource.privacyproxy.util.ClientIpResolver;
+import de.tk.opensource.privacyproxy.util.CompressedPassthroughExec;
+import de.tk.opensource.privacyproxy.util.IpAnonymizer;
+import de.tk.opensource.privacyproxy.util.QueryStringBuilder;
 import de.tk.opensource.privacyproxy.util.RequestUtils;
-import org.apache.commons.io.IOUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.io.EofSensorInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotWritableException;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
-import org.springframework.web.util.WebUtils;
 
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This component will allow you to take back control over information being sent to 3rd Party
@@ -46,20 +82,290 @@ import java.util.Map;
  */
 @Controller
 @RequestMapping(value = UrlPattern.Contexts.PROXY)
-public abstract class RoutingHandler {
+public abstract class RoutingHandler implements SmartInitializingSingleton, DisposableBean {
 
     public static final String EXCEPTION_PROXY_MESSAGE =
             "Failed to proxy request. Endpoint: %s, Error: %s";
     private static final String[] DEFAULT_RETURN_VALUE = new String[0];
+    private static final int STREAMING_BUFFER_SIZE = 8192;
+    private static final long FIRE_AND_FORGET_SHUTDOWN_SECONDS = 5;
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    private ObjectProvider<CloseableHttpAsyncClient> httpAsyncClient;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Autowired(required = false)
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    @Autowired(required = false)
+    private ProviderGroupRegistry providerGroupRegistry;
+
+    @Autowired(required = false)
+    private ClientIpResolver clientIpResolver;
+
+    @Autowired(required = false)
+    @Qualifier("streamingRestTemplate")
+    private RestTemplate streamingRestTemplate;
+
+    private volatile RoutingFilterPlan filterPlan;
+
+    private final Lock lazyInitLock = new ReentrantLock();
+    private volatile FireAndForgetDispatcher fireAndForgetDispatcher;
+    private volatile BatchCoalescer batchCoalescer;
+    private volatile ResponseCache responseCache;
+    private volatile SingleFlight<ResponseEntity<Resource>> singleFlight;
+    private volatile ProviderGroup providerGroup;
+    private volatile RoutingMetrics routingMetrics;
+    private volatile DebugCapture debugCapture;
+
+    /**
+     * Compiles the filter configuration as soon as all beans are initialized, so the first routed
+     * request does not pay for it. Fails if batching is configured without {@linkplain
+     * #mergeBatch(List)}.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        getFilterPlan();
+    }
+
+    /**
+     * The whitelist and blacklist hooks of this handler, evaluated once. Handlers created outside
+     * of Spring compile their plan on first use.
+     */
+    RoutingFilterPlan getFilterPlan() {
+        RoutingFilterPlan plan = filterPlan;
+        if (plan == null) {
+            plan = RoutingFilterPlan.compile(this);
+            filterPlan = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * Sends the pending batch and the requests still waiting in the fire-and-forget queue, if
+     * these modes were used.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        final BatchCoalescer coalescer = batchCoalescer;
+        if (coalescer != null) {
+            coalescer.shutdown();
+        }
+        final FireAndForgetDispatcher dispatcher = fireAndForgetDispatcher;
+        if (dispatcher != null) {
+            final int abandoned =
+                    dispatcher.shutdown(FIRE_AND_FORGET_SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+            if (abandoned > 0) {
+                logger.warn("Discarded {} queued fire-and-forget requests on shutdown", abandoned);
+            }
+        }
+    }
+
+    /**
+     * The queue of the fire-and-forget mode, created on first use with the configuration of this
+     * handler.
+     */
+    FireAndForgetDispatcher getFireAndForgetDispatcher() {
+        FireAndForgetDispatcher dispatcher = fireAndForgetDispatcher;
+        if (dispatcher == null) {
+            lazyInitLock.lock();
+            try {
+                dispatcher = fireAndForgetDispatcher;
+                if (dispatcher == null) {
+                    dispatcher =
+                            new FireAndForgetDispatcher(
+                                    getHandlerName(),
+                                    getFireAndForgetWorkers(),
+                                    getFireAndForgetQueueCapacity(),
+                                    getFireAndForgetOverflowPolicy()
+                            );
+                    final MeterRegistry registry = getMeterRegistry();
+                    if (registry != null) {
+                        dispatcher.bindTo(registry, getHandlerName());
+                    }
+                    fireAndForgetDispatcher = dispatcher;
+                }
+            } finally {
+                lazyInitLock.unlock();
+            }
+        }
+        return dispatcher;
+    }
+
+    /**
+     * The collector of the batching mode, created on first use with the configuration of this
+     * handler. Complete batches are sent through the fire-and-forget queue, never on the timer of
+     * the collector: with {@link QueueOverflowPolicy#CALLER_RUNS}, the oldest queued batch is
+     * discarded instead.
+     */
+    BatchCoalescer getBatchCoalescer() {
+        BatchCoalescer coalescer = batchCoalescer;
+        if (coalescer == null) {
+            lazyInitLock.lock();
+            try {
+                coalescer = batchCoalescer;
+                if (coalescer == null) {
+                    coalescer =
+                            new BatchCoalescer(
+                                    getHandlerName(),
+                                    getBatchMaxSize(),
+                                    getBatchMaxDelayMillis(),
+                                    batch -> getFireAndForgetDispatcher().dispatchQueued(() -> sendBatch(batch))
+                            );
+                    batchCoalescer = coalescer;
+                }
+            } finally {
+                lazyInitLock.unlock();
+            }
+        }
+        return coalescer;
+    }
+
+    /**
+     * The response cache of this handler, created on first use. Disabled unless {@linkplain
+     * #getResponseCacheMaxEntries()} is overridden.
+     */
+    ResponseCache getResponseCache() {
+        ResponseCache cache = responseCache;
+        if (cache == null) {
+            lazyInitLock.lock();
+            try {
+                cache = responseCache;
+                if (cache == null) {
+                    cache =
+                            new ResponseCache(
+                                    getResponseCacheMaxEntries(),
+                                    getResponseCacheMaxBytes(),
+                                    TimeUnit.SECONDS.toMillis(getResponseCacheTtlSeconds())
+                            );
+                    final MeterRegistry registry = getMeterRegistry();
+                    if (cache.isEnabled() && registry != null) {
+                        cache.bindTo(registry, getHandlerName());
+                    }
+                    responseCache = cache;
+                }
+            } finally {
+                lazyInitLock.unlock();
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * The coalescing of identical concurrent GET requests, created on first use. Disabled unless
+     * {@linkplain #getSingleFlightMaxWaitMillis()} is overridden.
+     */
+    SingleFlight<ResponseEntity<Resource>> getSingleFlight() {
+        SingleFlight<ResponseEntity<Resource>> flight = singleFlight;
+        if (flight == null) {
+            lazyInitLock.lock();
+            try {
+                flight = singleFlight;
+                if (flight == null) {
+                    flight = new SingleFlight<>(getSingleFlightMaxWaitMillis());
+                    final MeterRegistry registry = getMeterRegistry();
+                    if (flight.isEnabled() && registry != null) {
+                        flight.bindTo(registry, getHandlerName());
+                    }
+                    singleFlight = flight;
+                }
+            } finally {
+                lazyInitLock.unlock();
+            }
+        }
+        return flight;
+    }
+
+    /**
+     * The provider group this handler routes its requests with, resolved once. Handlers without a
+     * configured group use the shared RestTemplate without a concurrency limit, or the default
+     * HTTP/2 client if {@linkplain #isHttp2Enabled()}.
+     */
+    ProviderGroup getProviderGroup() {
+        ProviderGroup group = providerGroup;
+        if (group == null) {
+            final String groupName = getProviderGroupName();
+            final boolean http2 = isHttp2Enabled() && providerGroupRegistry != null;
+            if (groupName != null && providerGroupRegistry != null) {
+                group =
+                        http2
+                                ? providerGroupRegistry.getHttp2ProviderGroup(groupName)
+                                : providerGroupRegistry.getProviderGroup(groupName);
+                if (group == null) {
+                    logger.warn("Provider group {} is not configured, using the default pool", groupName);
+                }
+            }
+            if (group == null) {
+                group =
+                        http2
+                                ? providerGroupRegistry.getHttp2ProviderGroup(null)
+                                : new ProviderGroup("default", restTemplate, streamingRestTemplate, null);
+            }
+            providerGroup = group;
+        }
+        return group;
+    }
+
+    private void logSaturated(final String targetEndpoint, final ProviderGroup group) {
+        logger.warn(
+                String.format(
+                        EXCEPTION_PROXY_MESSAGE,
+                        targetEndpoint,
+                        "max concurrent requests of provider group " + group.getName() + " reached"
+                )
+        );
+    }
+
+    /**
+     * The Micrometer meters of this handler. Nothing is recorded without a MeterRegistry.
+     */
+    RoutingMetrics getRoutingMetrics() {
+        RoutingMetrics metrics = routingMetrics;
+        if (metrics == null) {
+            final MeterRegistry registry = getMeterRegistry();
+            metrics =
+                    registry != null
+                            ? new RoutingMetrics(registry, getHandlerName())
+                            : RoutingMetrics.NOOP;
+            routingMetrics = metrics;
+        }
+        return metrics;
+    }
+
+    /**
+     * The sampled capture of response bodies for the debug log, created on first use with the
+     * configuration of this handler.
+     */
+    DebugCapture getDebugCapture() {
+        DebugCapture capture = debugCapture;
+        if (capture == null) {
+            capture = new DebugCapture(getDebugCaptureSampleRate(), getDebugCaptureMaxBytes());
+            debugCapture = capture;
+        }
+        return capture;
+    }
+
+    @Nullable
+    private MeterRegistry getMeterRegistry() {
+        return meterRegistry != null ? meterRegistry.getIfAvailable() : null;
+    }
+
+    String getHandlerName() {
+        final String simpleName = getClass().getSimpleName();
+        return simpleName.isEmpty() ? getClass().getName() : simpleName;
+    }
+
     /**
      * Basic implementation for requests, which are routed through the privacy-proxy. It can be
      * configured by overriding certain methods. Every routing endpoint must have a dedicated
-     * specific handler.
+     * specific handler. GET responses are served from the response cache, if it is enabled, and
+     * identical concurrent GET requests share one upstream call, if coalescing is enabled.
      */
     public <T> ResponseEntity<Resource> handleGenericRequestInternal(
             final String targetEndpoint,
@@ -68,65 +374,1110 @@ public abstract class RoutingHandler {
             @Nullable final T body,
             final HttpMethod method
     ) {
+        final long start = System.nanoTime();
         filterRequestBody(body);
-        final String queryString = filterQueryString(queryStrings);
-        final URI uri =
-                UriComponentsBuilder.fromUriString(targetEndpoint).query(queryString).build(true)
-                        .toUri();
+        final URI uri = createRequestUri(targetEndpoint, queryStrings);
+        return handleRequest(
+                targetEndpoint,
+                uri,
+                createRequestEntity(request, body, isCompressedPassthrough()),
+                request.getContentLength(),
+                method,
+                start
+        );
+    }
 
+    /**
+     * Variant of {@linkplain #handleGenericRequestInternal} working on the raw query string of the
+     * request instead of a decoded parameter map. Repeated parameters are kept in their order and
+     * the allowed parameters are passed on verbatim, without decoding and encoding them again.
+     * Only if {@linkplain #transformQueryParam} is overridden, values are decoded and passed
+     * through it. Requests whose filtered query string is not a valid URI are answered with 400.
+     */
+    public <T> ResponseEntity<Resource> handleRawQueryRequestInternal(
+            final String targetEndpoint,
+            final HttpServletRequest request,
+            @Nullable final T body,
+            final HttpMethod method
+    ) {
+        final long start = System.nanoTime();
+        filterRequestBody(body);
+        final URI uri;
+        try {
+            uri = createRequestUri(targetEndpoint, filterRawQueryString(request.getQueryString()));
+        } catch (IllegalArgumentException e) {
+            logger.debug("Rejected malformed query string {}", request.getQueryString(), e);
+            return ResponseEntity.badRequest().build();
+        }
+        return handleRequest(
+                targetEndpoint,
+                uri,
+                createRequestEntity(request, body, isCompressedPassthrough()),
+                request.getContentLength(),
+                method,
+                start
+        );
+    }
+
+    /**
+     * Variant of {@linkplain #handleGenericRequestInternal} for JSON and form bodies, which are
+     * read from the request instead of being bound by Spring. The {@linkplain
+     * #getBlacklistedQueryParams()} and {@linkplain #getBlacklistedBodyPaths()} are removed token
+     * by token while the body is sent to the 3rd Party Provider, so the body is never parsed into
+     * a tree. Bodies of other content types are rejected with 415 if anything is blacklisted,
+     * malformed bodies with 400.
+     * <p>
+     * The filtered body is written to the connection while it is read, so memory use does not
+     * grow with its size. Only with {@linkplain #isHttp2Enabled()} the body is buffered. Since
+     * filtering is interleaved with sending, no filter time is recorded for these requests; it is
+     * part of the response time.
+     */
+    public ResponseEntity<Resource> handleFilteredBodyRequestInternal(
+            final String targetEndpoint,
+            @Nullable final Map<String, String> queryStrings,
+            final HttpServletRequest request,
+            final HttpMethod method
+    ) {
+        final long start = System.nanoTime();
+        final URI uri = createRequestUri(targetEndpoint, queryStrings);
         final HttpHeaders headers = getRequestHeaders(request);
         addWhitelistedCookies(request, headers);
+        if (isCompressedPassthrough()) {
+            negotiateContentEncoding(request, headers);
+        }
 
-        final HttpEntity<T> httpEntity =
-                body != null ? new HttpEntity<>(body, headers) : new HttpEntity<>(headers);
+        final MediaType contentType = getContentType(request);
+        final StreamingBodyFilter bodyFilter = getFilterPlan().getBodyFilter();
+        final InputStream body;
+        try {
+            if (StreamingBodyFilter.isSupported(contentType)) {
+                body = bodyFilter.filter(request.getInputStream(), contentType);
+            } else if (bodyFilter.isEmpty()) {
+                body = request.getInputStream();
+            } else {
+                logger.debug("Rejected request body of content type {}", contentType);
+                return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+            }
+        } catch (IOException e) {
+            logProxyException(targetEndpoint, e);
+            return ResponseEntity.badRequest().build();
+        }
+        // the length of the filtered body is not known in advance
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        if (contentType != null) {
+            headers.setContentType(
+                    StreamingBodyFilter.isSupported(contentType)
+                            ? StreamingBodyFilter.filteredContentType(contentType)
+                            : contentType
+            );
+        }
+        return handleRequest(
+                targetEndpoint,
+                uri,
+                new HttpEntity<>(new InputStreamResource(body), headers),
+                request.getContentLength(),
+                method,
+                start,
+                false
+        );
+    }
+
+    @Nullable
+    private static MediaType getContentType(final HttpServletRequest request) {
+        final String contentType = request.getContentType();
+        if (contentType == null) {
+            return null;
+        }
+        try {
+            return MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            return null;
+        }
+    }
+
+    private <T> ResponseEntity<Resource> handleRequest(
+            final String targetEndpoint,
+            final URI uri,
+            final HttpEntity<T> httpEntity,
+            final long requestSize,
+            final HttpMethod method,
+            final long start
+    ) {
+        return handleRequest(targetEndpoint, uri, httpEntity, requestSize, method, start, true);
+    }
+
+    /**
+     * @param filtered true if the request is completely filtered at this point, so the time since
+     *                 start is recorded as filter time
+     */
+    private <T> ResponseEntity<Resource> handleRequest(
+            final String targetEndpoint,
+            final URI uri,
+            final HttpEntity<T> httpEntity,
+            final long requestSize,
+            final HttpMethod method,
+            final long start,
+            final boolean filtered
+    ) {
+        final RoutingMetrics metrics = getRoutingMetrics();
+        if (filtered) {
+            metrics.recordFilter(System.nanoTime() - start);
+        }
+        metrics.recordRequestSize(uri.getHost(), requestSize);
+
+        final ResponseEntity<Resource> responseEntity =
+                route(targetEndpoint, uri, method, httpEntity, requestSize);
+        metrics.recordResponse(
+                uri.getHost(),
+                responseEntity.getStatusCode(),
+                contentLength(responseEntity.getBody()),
+                System.nanoTime() - start
+        );
+        return responseEntity;
+    }
+
+    private <T> ResponseEntity<Resource> route(
+            final String targetEndpoint,
+            final URI uri,
+            final HttpMethod method,
+            final HttpEntity<T> httpEntity,
+            final long requestSize
+    ) {
+        if (method != HttpMethod.GET) {
+            return exchange(targetEndpoint, uri, method, httpEntity, requestSize, null, null, null);
+        }
+
+        final ResponseCache cache = getResponseCache();
+        final SingleFlight<ResponseEntity<Resource>> flight = getSingleFlight();
+        if (!cache.isEnabled() && !flight.isEnabled()) {
+            return exchange(targetEndpoint, uri, method, httpEntity, requestSize, null, null, null);
+        }
+        final String requestKey = createRequestKey(method, uri, httpEntity.getHeaders());
+        final ResponseCache cacheToFill = cache.isEnabled() ? cache : null;
+        if (cacheToFill != null) {
+            final ResponseEntity<Resource> cachedResponseEntity = cache.get(requestKey);
+            if (cachedResponseEntity != null) {
+                logger.debug("Serving {} from the response cache", uri);
+                return cachedResponseEntity;
+            }
+        }
+        if (flight.isEnabled()) {
+            // failures and responses for a single client are not handed to the waiting requests
+            final AtomicBoolean shareable = new AtomicBoolean();
+            return flight.execute(
+                    requestKey,
+                    () -> exchange(
+                            targetEndpoint,
+                            uri,
+                            method,
+                            httpEntity,
+                            requestSize,
+                            cacheToFill,
+                            requestKey,
+                            shareable
+                    ),
+                    responseEntity -> shareable.get()
+            );
+        }
+        return exchange(
+                targetEndpoint,
+                uri,
+                method,
+                httpEntity,
+                requestSize,
+                cacheToFill,
+                requestKey,
+                null
+        );
+    }
+
+    private <T> ResponseEntity<Resource> exchange(
+            final String targetEndpoint,
+            final URI uri,
+            final HttpMethod method,
+            final HttpEntity<T> httpEntity,
+            final long requestSize,
+            @Nullable final ResponseCache cache,
+            @Nullable final String cacheKey,
+            @Nullable final AtomicBoolean shareable
+    ) {
+        final ProviderGroup group = getProviderGroup();
+        if (!group.tryAcquire()) {
+            logSaturated(targetEndpoint, group);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        try {
+            return exchangeUpstream(
+                    // bodies which can be read only once are streamed, their size is unknown
+                    httpEntity.getBody() instanceof InputStreamResource
+                            ? group.getStreamingRestTemplate()
+                            : group.getRestTemplate(),
+                    targetEndpoint,
+                    uri,
+                    method,
+                    httpEntity,
+                    requestSize,
+                    cache,
+                    cacheKey,
+                    shareable
+            );
+        } finally {
+            group.release();
+        }
+    }
+
+    private <T> ResponseEntity<Resource> exchangeUpstream(
+            final RestTemplate restTemplate,
+            final String targetEndpoint,
+            final URI uri,
+            final HttpMethod method,
+            final HttpEntity<T> httpEntity,
+            final long requestSize,
+            @Nullable final ResponseCache cache,
+            @Nullable final String cacheKey,
+            @Nullable final AtomicBoolean shareable
+    ) {
+        final CircuitBreaker circuitBreaker = getCircuitBreaker(uri);
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+            logCircuitOpen(targetEndpoint);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+
+        final ResponseEntity<Resource> responseEntity;
+        final long upstreamStart = System.nanoTime();
         try {
             logger.debug("Calling {} with method {}", uri, method);
-            final ResponseEntity<Resource> responseEntity =
-                    restTemplate.exchange(uri, method, httpEntity, Resource.class);
+            responseEntity = restTemplate.exchange(uri, method, httpEntity, Resource.class);
+            getRoutingMetrics().recordUpstream(
+                    uri.getHost(),
+                    responseEntity.getStatusCode(),
+                    System.nanoTime() - upstreamStart
+            );
+        } catch (RestClientException e) {
+            if (e.getCause() instanceof StreamingBodyFilter.MalformedBodyException) {
+                // the request of the client was broken, not the 3rd Party Provider
+                recordOutcome(circuitBreaker, false);
+                logProxyException(targetEndpoint, e);
+                return ResponseEntity.badRequest().build();
+            }
+            getRoutingMetrics().recordUpstreamError(
+                    uri.getHost(),
+                    e,
+                    System.nanoTime() - upstreamStart
+            );
+            recordOutcome(circuitBreaker, isUpstreamFailure(e));
+            logProxyException(targetEndpoint, e);
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
+        }
+        recordOutcome(circuitBreaker, false);
 
+        try {
             final HttpHeaders responseHeaders = responseEntity.getHeaders();
-            final ResponseEntity<Resource> customResponseEntity =
+            ResponseEntity<Resource> customResponseEntity =
                     ResponseEntity.status(responseEntity.getStatusCode()).headers(
                                     whitelistResponseHeaders(responseHeaders)
                             )
                             .body(responseEntity.getBody());
+            final String negotiatedContentEncoding =
+                    getNegotiatedContentEncoding(httpEntity.getHeaders());
+            if (negotiatedContentEncoding != null) {
+                final String contentEncoding =
+                        responseHeaders.getFirst(HttpHeaders.CONTENT_ENCODING);
+                customResponseEntity =
+                        applyContentEncoding(
+                                negotiatedContentEncoding,
+                                contentEncoding,
+                                customResponseEntity
+                        );
+                if (customResponseEntity == null) {
+                    logger.warn(
+                            "Unsupported Content-Encoding {} from {}",
+                            contentEncoding,
+                            targetEndpoint
+                    );
+                    return ResponseEntity.status(HttpStatus.BAD_GATEWAY).build();
+                }
+            }
 
-            log(targetEndpoint, request.getContentLength(), customResponseEntity, body);
+            log(targetEndpoint, requestSize, customResponseEntity, httpEntity.getBody());
 
+            // encoded responses are not cached, other clients may not accept the encoding
+            if (cache != null
+                    && !customResponseEntity.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+                cache.put(cacheKey, responseHeaders, customResponseEntity);
+            }
+            if (shareable != null) {
+                shareable.set(
+                        customResponseEntity.getStatusCode() == HttpStatus.OK
+                                && ResponseCache.isShareable(responseHeaders)
+                );
+            }
             return customResponseEntity;
-        } catch (HttpStatusCodeException e) {
-            logger.warn(
-                    String.format(EXCEPTION_PROXY_MESSAGE, targetEndpoint, e.getMessage())
-                            + ", with status code: " + e.getStatusCode()
+        } catch (IOException ee) {
+            logProxyException(targetEndpoint, ee);
+            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
+        }
+    }
+
+    /**
+     * The circuit breaker guarding the calls of this handler to the host of the given URI, or
+     * {@code null} if circuit breakers are disabled.
+     */
+    @Nullable
+    private CircuitBreaker getCircuitBreaker(final URI uri) {
+        final CircuitBreakerRegistry registry = circuitBreakerRegistry;
+        return registry != null && registry.isEnabled()
+                ? registry.getCircuitBreaker(getHandlerName(), uri.getHost())
+                : null;
+    }
+
+    /**
+     * Client errors mean the 3rd Party Provider is working, everything else counts as a failure.
+     */
+    private static boolean isUpstreamFailure(final RestClientException e) {
+        return !(e instanceof HttpStatusCodeException)
+                || ((HttpStatusCodeException) e).getStatusCode().is5xxServerError();
+    }
+
+    private static void recordOutcome(
+            @Nullable final CircuitBreaker circuitBreaker,
+            final boolean upstreamFailure
+    ) {
+        if (circuitBreaker != null) {
+            if (upstreamFailure) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+        }
+    }
+
+    private void logCircuitOpen(final String targetEndpoint) {
+        logger.debug(String.format(EXCEPTION_PROXY_MESSAGE, targetEndpoint, "circuit breaker open"));
+    }
+
+    /**
+     * Identifies a filtered request for the response cache and the coalescing of concurrent
+     * requests. Only contains what is sent to the 3rd Party Provider.
+     */
+    private static String createRequestKey(
+            final HttpMethod method,
+            final URI uri,
+            final HttpHeaders requestHeaders
+    ) {
+        final StringBuilder key = new StringBuilder(128);
+        key.append(method.name()).append(' ').append(uri.toString());
+        requestHeaders.forEach(
+                (headerName, headerValues) -> {
+                    for (final String headerValue : headerValues) {
+                        key.append('\n').append(headerName).append(':').append(headerValue);
+                    }
+                }
+        );
+        return key.toString();
+    }
+
+    /**
+     * @return the size of a materialized response body, -1 if unknown
+     */
+    private static long contentLength(@Nullable final Resource body) {
+        if (body == null) {
+            return 0;
+        }
+        return body instanceof ByteArrayResource
+                ? ((ByteArrayResource) body).getByteArray().length
+                : -1;
+    }
+
+    /**
+     * Streaming variant of {@linkplain #handleGenericRequestInternal}. The request is filtered
+     * the same way, but the response of the 3rd Party Provider is not materialized. Status and
+     * whitelisted headers are written first, afterwards the upstream body is piped to the client
+     * through a buffer of {@value #STREAMING_BUFFER_SIZE} bytes. The upstream connection is
+     * released as soon as the body has been transferred. If the client aborts the transfer, the
+     * upstream connection is aborted instead of being drained.
+     *
+     * @param response the servlet response the upstream body is written to
+     */
+    public <T> void handleGenericRequestStreaming(
+            final String targetEndpoint,
+            @Nullable final Map<String, String> queryStrings,
+            final HttpServletRequest request,
+            @Nullable final T body,
+            final HttpMethod method,
+            final HttpServletResponse response
+    ) {
+        final long start = System.nanoTime();
+        filterRequestBody(body);
+        final URI uri = createRequestUri(targetEndpoint, queryStrings);
+        final HttpEntity<T> httpEntity =
+                createRequestEntity(request, body, isCompressedPassthrough());
+        final long requestSize = request.getContentLength();
+        final RoutingMetrics metrics = getRoutingMetrics();
+        metrics.recordFilter(System.nanoTime() - start);
+        metrics.recordRequestSize(uri.getHost(), requestSize);
+
+        final long bytesStreamed =
+                stream(targetEndpoint, uri, method, httpEntity, requestSize, response);
+        metrics.recordResponse(
+                uri.getHost(),
+                HttpStatusCode.valueOf(response.getStatus()),
+                bytesStreamed,
+                System.nanoTime() - start
+        );
+    }
+
+    /**
+     * @return the number of bytes streamed to the client, -1 if the upstream was not called or
+     * failed
+     */
+    private <T> long stream(
+            final String targetEndpoint,
+            final URI uri,
+            final HttpMethod method,
+            final HttpEntity<T> httpEntity,
+            final long requestSize,
+            final HttpServletResponse response
+    ) {
+        final ProviderGroup group = getProviderGroup();
+        if (!group.tryAcquire()) {
+            logSaturated(targetEndpoint, group);
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return -1;
+        }
+        final CircuitBreaker circuitBreaker = getCircuitBreaker(uri);
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+            group.release();
+            logCircuitOpen(targetEndpoint);
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return -1;
+        }
+        final RestTemplate restTemplate = group.getRestTemplate();
+        final long upstreamStart = System.nanoTime();
+        try {
+            logger.debug("Streaming {} with method {}", uri, method);
+            final Long bytesReceived =
+                    restTemplate.execute(
+                            uri,
+                            method,
+                            restTemplate.httpEntityCallback(httpEntity, Resource.class),
+                            upstreamResponse -> streamResponse(
+                                    upstreamResponse,
+                                    getNegotiatedContentEncoding(httpEntity.getHeaders()),
+                                    response
+                            )
+                    );
+            getRoutingMetrics().recordUpstream(
+                    uri.getHost(),
+                    HttpStatusCode.valueOf(response.getStatus()),
+                    System.nanoTime() - upstreamStart
             );
+            recordOutcome(circuitBreaker, false);
             logger.debug(
-                    String.format(EXCEPTION_PROXY_MESSAGE, targetEndpoint, e.getMessage())
-                            + ", with status code: " + e.getStatusCode(),
-                    e
+                    "Route request to 3rd party. Url={}, query bytes sent={}, bytes streamed={}",
+                    targetEndpoint,
+                    requestSize,
+                    bytesReceived
             );
-            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
-        } catch (IOException ee) {
-            logger.warn(
-                    String.format(EXCEPTION_PROXY_MESSAGE, targetEndpoint, ee.getMessage())
+            return bytesReceived != null ? bytesReceived : -1;
+        } catch (RestClientException e) {
+            final boolean clientAborted = e.getCause() instanceof ClientAbortedException;
+            if (clientAborted) {
+                getRoutingMetrics().recordUpstream(
+                        uri.getHost(),
+                        HttpStatusCode.valueOf(response.getStatus()),
+                        System.nanoTime() - upstreamStart
+                );
+            } else {
+                getRoutingMetrics().recordUpstreamError(
+                        uri.getHost(),
+                        e,
+                        System.nanoTime() - upstreamStart
+                );
+            }
+            recordOutcome(circuitBreaker, !clientAborted && isUpstreamFailure(e));
+            logProxyException(targetEndpoint, e);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.setStatus(HttpStatus.GATEWAY_TIMEOUT.value());
+            }
+            return -1;
+        } finally {
+            group.release();
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@linkplain #handleGenericRequestInternal}. The request is filtered
+     * with the same hooks, but sent through the asynchronous HTTP client, so no servlet thread is
+     * parked while waiting for the 3rd Party Provider. Return the future from your handler method
+     * and Spring MVC completes the request once the upstream response has arrived. Any failure
+     * completes the future with 504.
+     * <p>
+     * The asynchronous client always uses HTTP/1.1 and buffers the upstream response, so
+     * {@linkplain #isHttp2Enabled()} and {@linkplain #isCompressedPassthrough()} do not apply to
+     * this variant. Handlers of a {@linkplain #getProviderGroupName() provider group} use an
+     * asynchronous client with the pool and timeouts of the group, started on first use.
+     */
+    public <T> CompletableFuture<ResponseEntity<Resource>> handleGenericRequestAsync(
+            final String targetEndpoint,
+            @Nullable final Map<String, String> queryStrings,
+            final HttpServletRequest request,
+            @Nullable final T body,
+            final HttpMethod method
+    ) {
+        final long start = System.nanoTime();
+        filterRequestBody(body);
+        final URI uri = createRequestUri(targetEndpoint, queryStrings);
+        final HttpEntity<T> httpEntity = createRequestEntity(request, body);
+        final long requestSize = request.getContentLength();
+        final RoutingMetrics metrics = getRoutingMetrics();
+        metrics.recordFilter(System.nanoTime() - start);
+        metrics.recordRequestSize(uri.getHost(), requestSize);
+
+        final SimpleHttpRequest upstreamRequest;
+        try {
+            upstreamRequest = createAsyncRequest(uri, method, httpEntity);
+        } catch (IOException e) {
+            logProxyException(targetEndpoint, e);
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build()
             );
-            logger.debug(
-                    String.format(EXCEPTION_PROXY_MESSAGE, targetEndpoint, ee.getMessage()),
-                    ee
+        }
+
+        final ProviderGroup group = getProviderGroup();
+        if (!group.tryAcquire()) {
+            logSaturated(targetEndpoint, group);
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build()
+            );
+        }
+        final CircuitBreaker circuitBreaker = getCircuitBreaker(uri);
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+            group.release();
+            logCircuitOpen(targetEndpoint);
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build()
             );
+        }
+
+        final CompletableFuture<ResponseEntity<Resource>> result = new CompletableFuture<>();
+        result.whenComplete(
+                (responseEntity, e) -> {
+                    group.release();
+                    metrics.recordResponse(
+                            uri.getHost(),
+                            responseEntity.getStatusCode(),
+                            contentLength(responseEntity.getBody()),
+                            System.nanoTime() - start
+                    );
+                }
+        );
+        final long upstreamStart = System.nanoTime();
+        logger.debug("Calling {} asynchronously with method {}", uri, method);
+        final FutureCallback<SimpleHttpResponse> callback =
+                new FutureCallback<>() {
+                    @Override
+                    public void completed(final SimpleHttpResponse upstreamResponse) {
+                        try {
+                            final HttpStatusCode statusCode =
+                                    HttpStatusCode.valueOf(upstreamResponse.getCode());
+                            metrics.recordUpstream(
+                                    uri.getHost(),
+                                    statusCode,
+                                    System.nanoTime() - upstreamStart
+                            );
+                            recordOutcome(circuitBreaker, statusCode.is5xxServerError());
+                            result.complete(
+                                    toResponseEntity(
+                                            targetEndpoint,
+                                            requestSize,
+                                            upstreamResponse,
+                                            body
+                                    )
+                            );
+                        } catch (Throwable e) {
+                            logProxyException(targetEndpoint, e);
+                            result.complete(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build());
+                        }
+                    }
+
+                    @Override
+                    public void failed(final Exception e) {
+                        try {
+                            metrics.recordUpstreamError(
+                                    uri.getHost(),
+                                    e,
+                                    System.nanoTime() - upstreamStart
+                            );
+                            recordOutcome(circuitBreaker, true);
+                            logProxyException(targetEndpoint, e);
+                        } finally {
+                            result.complete(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build());
+                        }
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        try {
+                            recordOutcome(circuitBreaker, true);
+                            logger.warn(String.format(EXCEPTION_PROXY_MESSAGE, targetEndpoint, "cancelled"));
+                        } finally {
+                            result.complete(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build());
+                        }
+                    }
+                };
+        try {
+            final CloseableHttpAsyncClient groupClient = group.getHttpAsyncClient();
+            (groupClient != null ? groupClient : httpAsyncClient.getObject())
+                    .execute(upstreamRequest, callback);
+        } catch (Throwable e) {
+            // e.g. the I/O reactor has been shut down, the callback is never called
+            recordOutcome(circuitBreaker, true);
+            logProxyException(targetEndpoint, e);
+            result.complete(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build());
+        }
+        return result;
+    }
+
+    /**
+     * Fire-and-forget variant of {@linkplain #handleGenericRequestInternal} for tracking requests,
+     * whose response is of no interest to the client. The request is filtered right away and put
+     * on a bounded queue, the client immediately receives {@linkplain #getFireAndForgetResponse()}.
+     * Worker threads send the queued requests to the 3rd Party Provider and discard the responses.
+     */
+    public <T> ResponseEntity<Resource> handleFireAndForgetRequestInternal(
+            final String targetEndpoint,
+            @Nullable final Map<String, String> queryStrings,
+            final HttpServletRequest request,
+            @Nullable final T body,
+            final HttpMethod method
+    ) {
+        filterRequestBody(body);
+        final URI uri = createRequestUri(targetEndpoint, queryStrings);
+        final HttpEntity<T> httpEntity = createRequestEntity(request, body);
+        getFireAndForgetDispatcher().dispatch(
+                () -> sendFireAndForget(targetEndpoint, uri, method, httpEntity)
+        );
+        return getFireAndForgetResponse();
+    }
+
+    /**
+     * Batching variant of {@linkplain #handleFireAndForgetRequestInternal} for 3rd Party Providers
+     * accepting bulk requests. The filtered request is collected until {@linkplain
+     * #getBatchMaxSize()} requests are together or the first one has waited {@linkplain
+     * #getBatchMaxDelayMillis()}. The batch is then merged into one request by {@linkplain
+     * #mergeBatch(List)} and sent to {@linkplain #getBatchEndpoint(List)}.
+     *
+     * @throws IllegalStateException if {@linkplain #mergeBatch(List)} is not overridden
+     */
+    public <T> ResponseEntity<Resource> handleBatchedRequestInternal(
+            final String targetEndpoint,
+            @Nullable final Map<String, String> queryStrings,
+            final HttpServletRequest request,
+            @Nullable final T body
+    ) {
+        if (!getFilterPlan().isBatchingSupported()) {
+            throw new IllegalStateException(
+                    getHandlerName() + " does not override mergeBatch, batching is not supported"
+            );
+        }
+        filterRequestBody(body);
+        final URI uri = createRequestUri(targetEndpoint, queryStrings);
+        final HttpHeaders headers = getRequestHeaders(request);
+        addWhitelistedCookies(request, headers);
+        getBatchCoalescer().add(new BatchedRequest(targetEndpoint, uri, headers, body));
+        return getFireAndForgetResponse();
+    }
+
+    private void sendBatch(final List<BatchedRequest> batch) {
+        final String batchEndpoint = getBatchEndpoint(batch);
+        final HttpEntity<?> httpEntity;
+        try {
+            httpEntity = mergeBatch(batch);
+        } catch (RuntimeException e) {
+            logProxyException(batchEndpoint, e);
+            return;
+        }
+        logger.debug("Sending batch of {} requests to {}", batch.size(), batchEndpoint);
+        sendFireAndForget(batchEndpoint, URI.create(batchEndpoint), HttpMethod.POST, httpEntity);
+    }
+
+    private void sendFireAndForget(
+            final String targetEndpoint,
+            final URI uri,
+            final HttpMethod method,
+            final HttpEntity<?> httpEntity
+    ) {
+        final CircuitBreaker circuitBreaker = getCircuitBreaker(uri);
+        if (circuitBreaker != null && !circuitBreaker.tryAcquirePermission()) {
+            logCircuitOpen(targetEndpoint);
+            return;
+        }
+        final RestTemplate restTemplate = getProviderGroup().getRestTemplate();
+        final long upstreamStart = System.nanoTime();
+        try {
+            final HttpStatusCode statusCode =
+                    restTemplate.execute(
+                            uri,
+                            method,
+                            restTemplate.httpEntityCallback(httpEntity),
+                            ClientHttpResponse::getStatusCode
+                    );
+            getRoutingMetrics().recordUpstream(
+                    uri.getHost(),
+                    statusCode,
+                    System.nanoTime() - upstreamStart
+            );
+            recordOutcome(circuitBreaker, false);
+            logger.debug("Sent {} with method {}, status code: {}", uri, method, statusCode);
+        } catch (RestClientException e) {
+            getRoutingMetrics().recordUpstreamError(
+                    uri.getHost(),
+                    e,
+                    System.nanoTime() - upstreamStart
+            );
+            recordOutcome(circuitBreaker, isUpstreamFailure(e));
+            logProxyException(targetEndpoint, e);
+        }
+    }
+
+    private URI createRequestUri(
+            final String targetEndpoint,
+            @Nullable final Map<String, String> queryStrings
+    ) {
+        if (QueryStringBuilder.isAppendable(targetEndpoint)) {
+            final QueryStringBuilder query =
+                    QueryStringBuilder.forEndpoint(
+                            targetEndpoint,
+                            estimateQueryStringLength(queryStrings)
+                    );
+            if (queryStrings != null) {
+                appendQueryParams(query, queryStrings);
+            }
+            return query.toUri();
+        }
+        // endpoints with a query of their own are merged with the filtered query string
+        final String queryString = filterQueryString(queryStrings);
+        return UriComponentsBuilder.fromUriString(targetEndpoint).query(queryString).build(true)
+                .toUri();
+    }
+
+    private URI createRequestUri(final String targetEndpoint, @Nullable final String rawQuery) {
+        if (QueryStringBuilder.isAppendable(targetEndpoint)) {
+            return rawQuery == null || rawQuery.isEmpty()
+                    ? URI.create(targetEndpoint)
+                    : URI.create(targetEndpoint + '?' + rawQuery);
+        }
+        return UriComponentsBuilder.fromUriString(targetEndpoint).query(rawQuery).build(true)
+                .toUri();
+    }
+
+    private <T> HttpEntity<T> createRequestEntity(
+            final HttpServletRequest request,
+            @Nullable final T body
+    ) {
+        return createRequestEntity(request, body, false);
+    }
+
+    /**
+     * @param compressedPassthrough whether the response is requested in an encoding the client
+     *                              accepts, see {@linkplain #isCompressedPassthrough()}
+     */
+    private <T> HttpEntity<T> createRequestEntity(
+            final HttpServletRequest request,
+            @Nullable final T body,
+            final boolean compressedPassthrough
+    ) {
+        final HttpHeaders headers = getRequestHeaders(request);
+        addWhitelistedCookies(request, headers);
+        if (compressedPassthrough) {
+            negotiateContentEncoding(request, headers);
+        }
+        return body != null ? new HttpEntity<>(body, headers) : new HttpEntity<>(headers);
+    }
+
+    /**
+     * Advertises the encodings the client accepts to the 3rd Party Provider. If the client
+     * accepts none of them, the HTTP client decodes the response as usual.
+     */
+    private static void negotiateContentEncoding(
+            final HttpServletRequest request,
+            final HttpHeaders headers
+    ) {
+        final String acceptEncoding =
+                ContentEncodings.negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (acceptEncoding != null) {
+            headers.set(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+            headers.set(CompressedPassthroughExec.HEADER, "true");
+        }
+    }
+
+    /**
+     * @return the encodings advertised by {@linkplain #negotiateContentEncoding}, {@code null} if
+     * the HTTP client decodes the response
+     */
+    @Nullable
+    private static String getNegotiatedContentEncoding(final HttpHeaders requestHeaders) {
+        return requestHeaders.containsKey(CompressedPassthroughExec.HEADER)
+                ? requestHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING)
+                : null;
+    }
+
+    /**
+     * Passes an advertised encoding on to the client and decodes any other encoding.
+     *
+     * @return the response for the client, or {@code null} if the response is in an encoding
+     * which can neither be passed on nor decoded
+     */
+    @Nullable
+    private static ResponseEntity<Resource> applyContentEncoding(
+            final String negotiatedContentEncoding,
+            @Nullable final String contentEncoding,
+            final ResponseEntity<Resource> responseEntity
+    ) throws IOException {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.putAll(responseEntity.getHeaders());
+        headers.remove(HttpHeaders.CONTENT_ENCODING);
+        addVaryAcceptEncoding(headers);
+        Resource body = responseEntity.getBody();
+        if (!ContentEncodings.isIdentity(contentEncoding)) {
+            if (ContentEncodings.isAccepted(negotiatedContentEncoding, contentEncoding)) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+            } else if (body != null && body.contentLength() > 0) {
+                final InputStream decoded =
+                        ContentEncodings.decode(body.getInputStream(), contentEncoding);
+                if (decoded == null) {
+                    return null;
+                }
+                try (decoded) {
+                    body = new ByteArrayResource(decoded.readAllBytes());
+                }
+                headers.remove(HttpHeaders.CONTENT_LENGTH);
+            }
+        }
+        return ResponseEntity.status(responseEntity.getStatusCode()).headers(headers).body(body);
+    }
+
+    private static void addVaryAcceptEncoding(final HttpHeaders headers) {
+        final List<String> vary = headers.getVary();
+        if (!vary.contains("*")
+                && vary.stream().noneMatch(HttpHeaders.ACCEPT_ENCODING::equalsIgnoreCase)) {
+            headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+    }
+
+    private long streamResponse(
+            final ClientHttpResponse upstreamResponse,
+            @Nullable final String negotiatedContentEncoding,
+            final HttpServletResponse response
+    ) throws IOException {
+        final InputStream rawUpstreamBody = upstreamResponse.getBody();
+        InputStream upstreamBody = rawUpstreamBody;
+        final HttpHeaders responseHeaders = whitelistResponseHeaders(upstreamResponse.getHeaders());
+        boolean encoded = false;
+        if (negotiatedContentEncoding != null) {
+            responseHeaders.remove(HttpHeaders.CONTENT_ENCODING);
+            addVaryAcceptEncoding(responseHeaders);
+            final String contentEncoding =
+                    upstreamResponse.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+            if (!ContentEncodings.isIdentity(contentEncoding)) {
+                if (ContentEncodings.isAccepted(negotiatedContentEncoding, contentEncoding)) {
+                    responseHeaders.set(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+                    encoded = true;
+                } else {
+                    upstreamBody = ContentEncodings.decode(rawUpstreamBody, contentEncoding);
+                    if (upstreamBody == null) {
+                        logger.warn("Unsupported Content-Encoding {}", contentEncoding);
+                        response.setStatus(HttpStatus.BAD_GATEWAY.value());
+                        return 0;
+                    }
+                    responseHeaders.remove(HttpHeaders.CONTENT_LENGTH);
+                }
+            }
+        }
+        response.setStatus(upstreamResponse.getStatusCode().value());
+        responseHeaders.forEach(
+                (headerName, headerValues) -> headerValues.forEach(
+                        headerValue -> response.addHeader(headerName, headerValue)
+                )
+        );
+
+        final OutputStream clientBody = response.getOutputStream();
+        final byte[] buffer = new byte[STREAMING_BUFFER_SIZE];
+        // compressed bytes are not worth logging
+        final DebugCapture.Tee tee =
+                logger.isDebugEnabled() && !encoded ? getDebugCapture().startTee() : null;
+        try {
+            long transferred = 0;
+            int read;
+            while ((read = upstreamBody.read(buffer)) != -1) {
+                try {
+                    clientBody.write(buffer, 0, read);
+                } catch (IOException e) {
+                    // The client is gone. Draining the remaining upstream body would only waste
+                    // time.
+                    if (rawUpstreamBody instanceof EofSensorInputStream) {
+                        ((EofSensorInputStream) rawUpstreamBody).abort();
+                    }
+                    throw new ClientAbortedException(e);
+                }
+                if (tee != null) {
+                    tee.write(buffer, 0, read);
+                }
+                transferred += read;
+            }
+            clientBody.flush();
+            if (tee != null) {
+                logger.debug(
+                        "Streamed response body: {}",
+                        tee.render(upstreamResponse.getHeaders().getContentType())
+                );
+            }
+            return transferred;
+        } finally {
+            if (tee != null) {
+                tee.release();
+            }
+        }
+    }
+
+    /**
+     * The client stopped reading the streamed response. Not a failure of the 3rd Party Provider.
+     */
+    private static final class ClientAbortedException extends IOException {
+
+        private ClientAbortedException(final IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Converts the request entity into a request of the asynchronous client. The body is
+     * serialized with the message converters of the {@link RestTemplate}, so it is sent exactly
+     * like in the synchronous path.
+     */
+    @SuppressWarnings("unchecked")
+    private SimpleHttpRequest createAsyncRequest(
+            final URI uri,
+            final HttpMethod method,
+            final HttpEntity<?> httpEntity
+    ) throws IOException {
+        final SimpleHttpRequest upstreamRequest = new SimpleHttpRequest(method.name(), uri);
+        final HttpHeaders headers = new HttpHeaders();
+        headers.putAll(httpEntity.getHeaders());
+
+        final Object body = httpEntity.getBody();
+        if (body != null) {
+            final MediaType contentType = headers.getContentType();
+            final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+            final HttpMessageConverter<Object> converter =
+                    (HttpMessageConverter<Object>) restTemplate.getMessageConverters().stream().filter(
+                                    c -> c.canWrite(body.getClass(), contentType)
+                            )
+                            .findFirst().orElseThrow(
+                                    () -> new HttpMessageNotWritableException(
+                                            "No converter for request body of type " + body.getClass()
+                                    )
+                            );
+            converter.write(
+                    body,
+                    contentType,
+                    new HttpOutputMessage() {
+                        @Override
+                        public OutputStream getBody() {
+                            return bodyBytes;
+                        }
+
+                        @Override
+                        public HttpHeaders getHeaders() {
+                            return headers;
+                        }
+                    }
+            );
+            final MediaType writtenContentType = headers.getContentType();
+            upstreamRequest.setBody(
+                    bodyBytes.toByteArray(),
+                    writtenContentType != null ? ContentType.parse(writtenContentType.toString()) : null
+            );
+        }
+
+        // Content headers are derived from the body by the client itself
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        headers.remove(HttpHeaders.CONTENT_TYPE);
+        headers.forEach(
+                (headerName, headerValues) -> headerValues.forEach(
+                        headerValue -> upstreamRequest.addHeader(headerName, headerValue)
+                )
+        );
+        return upstreamRequest;
+    }
+
+    private <T> ResponseEntity<Resource> toResponseEntity(
+            final String targetEndpoint,
+            final long requestSize,
+            final SimpleHttpResponse upstreamResponse,
+            @Nullable final T body
+    ) {
+        final HttpHeaders upstreamHeaders = new HttpHeaders();
+        for (final Header header : upstreamResponse.getHeaders()) {
+            upstreamHeaders.add(header.getName(), header.getValue());
+        }
+        final HttpStatusCode statusCode = HttpStatusCode.valueOf(upstreamResponse.getCode());
+        final byte[] upstreamBody = upstreamResponse.getBodyBytes();
+
+        // Same semantics as the error handler of the RestTemplate in the synchronous path
+        if (statusCode.isError()) {
+            final HttpStatusCodeException e =
+                    statusCode.is4xxClientError()
+                            ? HttpClientErrorException.create(
+                            statusCode,
+                            upstreamResponse.getReasonPhrase(),
+                            upstreamHeaders,
+                            upstreamBody,
+                            null
+                    )
+                            : HttpServerErrorException.create(
+                            statusCode,
+                            upstreamResponse.getReasonPhrase(),
+                            upstreamHeaders,
+                            upstreamBody,
+                            null
+                    );
+            logProxyException(targetEndpoint, e);
             return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build();
         }
+
+        final ResponseEntity<Resource> customResponseEntity =
+                ResponseEntity.status(statusCode).headers(whitelistResponseHeaders(upstreamHeaders))
+                        .body(upstreamBody != null ? new ByteArrayResource(upstreamBody) : null);
+        try {
+            log(targetEndpoint, requestSize, customResponseEntity, body);
+        } catch (IOException e) {
+            logProxyException(targetEndpoint, e);
+        }
+        return customResponseEntity;
+    }
+
+    private void logProxyException(final String targetEndpoint, final Throwable e) {
+        String message = String.format(EXCEPTION_PROXY_MESSAGE, targetEndpoint, e.getMessage());
+        if (e instanceof HttpStatusCodeException) {
+            message += ", with status code: " + ((HttpStatusCodeException) e).getStatusCode();
+        }
+        logger.warn(message);
+        logger.debug(message, e);
     }
 
     protected HttpHeaders whitelistResponseHeaders(final HttpHeaders sourceHeaders) {
         final HttpHeaders whitelistedResponseHeaders = new HttpHeaders();
         whitelistedResponseHeaders.add(HttpHeaders.CACHE_CONTROL, "no-cache");
-        if (sourceHeaders.getContentType() != null) {
-            whitelistedResponseHeaders.add(HttpHeaders.CONTENT_TYPE,
-                    sourceHeaders.getContentType().toString());
+        final String contentType = sourceHeaders.getFirst(HttpHeaders.CONTENT_TYPE);
+        if (contentType != null) {
+            whitelistedResponseHeaders.add(HttpHeaders.CONTENT_TYPE, contentType);
         }
 
-        for (final String headerName : getWhitelistedResponseHeaders()) {
-            final String headerValue = sourceHeaders.toSingleValueMap().get(headerName);
+        for (final String headerName : getFilterPlan().getResponseHeaderNames()) {
+            final String headerValue = sourceHeaders.getFirst(headerName);
             if (headerValue != null) {
                 whitelistedResponseHeaders.add(headerName, headerValue);
             }
@@ -142,10 +1493,13 @@ public abstract class RoutingHandler {
      * @param <T>  request body type
      */
     protected <T> void filterRequestBody(final T body) {
-        if (getBlacklistedQueryParams().length > 0 && body != null) {
+        final RoutingFilterPlan filterPlan = getFilterPlan();
+        if (filterPlan.hasBlacklistedQueryParams() && body != null) {
             if (body instanceof Map) {
                 final Map<?, ?> bodyMap = (Map<?, ?>) body;
-                Arrays.stream(getBlacklistedQueryParams()).forEach(bodyMap::remove);
+                for (final String blackListedParam : filterPlan.getBlacklistedQueryParams()) {
+                    bodyMap.remove(blackListedParam);
+                }
             }
         }
     }
@@ -154,32 +1508,144 @@ public abstract class RoutingHandler {
      * Excludes all the blacklisted query params of the request and returns a cleaned query string.
      */
     String filterQueryString(final Map<String, String> params) {
-        return params != null ? createQueryString(filterBlacklistedData(params)) : null;
+        if (params == null) {
+            return null;
+        }
+        final QueryStringBuilder query =
+                QueryStringBuilder.forQueryString(estimateQueryStringLength(params));
+        appendQueryParams(query, params);
+        return query.toQueryString();
     }
 
-    private String createQueryString(final Map<String, String> params) {
-        final StringBuilder allowedQueryParams = new StringBuilder();
+    /**
+     * Appends the parameters which are not blacklisted. The map of the caller is left untouched.
+     * Unless {@linkplain #transformQueryParam} is overridden, values are encoded straight into the
+     * query string.
+     */
+    private void appendQueryParams(
+            final QueryStringBuilder query,
+            final Map<String, String> params
+    ) {
+        final RoutingFilterPlan plan = getFilterPlan();
+        final boolean defaultEncoding = plan.isDefaultQueryParamEncoding();
         for (final Map.Entry<String, String> entry : params.entrySet()) {
-            if (allowedQueryParams.length() > 0) {
-                allowedQueryParams.append("&");
+            final String name = entry.getKey();
+            if (plan.isBlacklistedQueryParam(name)) {
+                continue;
+            }
+            if (defaultEncoding) {
+                query.appendEncoded(name, entry.getValue());
+            } else {
+                query.appendRaw(name, transformQueryParam(name, entry.getValue()));
             }
-            allowedQueryParams.append(entry.getKey()).append("=").append(
-                    transformQueryParam(entry.getKey(), entry.getValue())
-            );
         }
-        return allowedQueryParams.toString();
     }
 
-    private Map<String, String> filterBlacklistedData(Map<String, String> data) {
-        for (final String blackListedParam : getBlacklistedQueryParams()) {
-            data.remove(blackListedParam);
+    /**
+     * Excludes the blacklisted params from a raw query string in a single scan. The remaining
+     * pairs are copied as they are, unless {@linkplain #transformQueryParam} is overridden.
+     */
+    String filterRawQueryString(@Nullable final String rawQuery) {
+        if (rawQuery == null) {
+            return null;
+        }
+        final RoutingFilterPlan plan = getFilterPlan();
+        if (!plan.hasBlacklistedQueryParams() && plan.isDefaultQueryParamEncoding()) {
+            return rawQuery;
         }
-        return data;
+        final StringBuilder filtered = new StringBuilder(rawQuery.length());
+        int pairStart = 0;
+        while (pairStart <= rawQuery.length()) {
+            int pairEnd = rawQuery.indexOf('&', pairStart);
+            if (pairEnd < 0) {
+                pairEnd = rawQuery.length();
+            }
+            if (pairEnd > pairStart) {
+                appendRawQueryParam(filtered, rawQuery, pairStart, pairEnd, plan);
+            }
+            pairStart = pairEnd + 1;
+        }
+        return filtered.toString();
+    }
+
+    private void appendRawQueryParam(
+            final StringBuilder filtered,
+            final String rawQuery,
+            final int pairStart,
+            final int pairEnd,
+            final RoutingFilterPlan plan
+    ) {
+        final int separator = rawQuery.indexOf('=', pairStart);
+        final int nameEnd = separator >= 0 && separator < pairEnd ? separator : pairEnd;
+        if (isBlacklistedRawName(rawQuery, pairStart, nameEnd, plan)) {
+            return;
+        }
+        if (filtered.length() > 0) {
+            filtered.append('&');
+        }
+        if (plan.isDefaultQueryParamEncoding()) {
+            filtered.append(rawQuery, pairStart, pairEnd);
+            return;
+        }
+        final String name = decode(rawQuery.substring(pairStart, nameEnd));
+        final String value =
+                nameEnd < pairEnd ? decode(rawQuery.substring(nameEnd + 1, pairEnd)) : "";
+        filtered.append(rawQuery, pairStart, nameEnd).append('=').append(
+                transformQueryParam(name, value)
+        );
+    }
+
+    private static boolean isBlacklistedRawName(
+            final String rawQuery,
+            final int nameStart,
+            final int nameEnd,
+            final RoutingFilterPlan plan
+    ) {
+        if (!plan.hasBlacklistedQueryParams()) {
+            return false;
+        }
+        final int nameLength = nameEnd - nameStart;
+        for (int i = nameStart; i < nameEnd; i++) {
+            final char c = rawQuery.charAt(i);
+            if (c == '%' || c == '+') {
+                // encoded names are compared decoded, like the parameter map would have them
+                return plan.isBlacklistedQueryParam(decode(rawQuery.substring(nameStart, nameEnd)));
+            }
+        }
+        for (final String blacklisted : plan.getBlacklistedQueryParams()) {
+            if (
+                    blacklisted.length() == nameLength
+                            && rawQuery.regionMatches(nameStart, blacklisted, 0, nameLength)
+            ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value contains an invalid escape sequence
+     */
+    private static String decode(final String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    private static int estimateQueryStringLength(@Nullable final Map<String, String> params) {
+        if (params == null) {
+            return 0;
+        }
+        int length = 0;
+        for (final Map.Entry<String, String> entry : params.entrySet()) {
+            final String value = entry.getValue();
+            length += entry.getKey().length() + (value != null ? value.length() : 0) + 2;
+        }
+        // leaves room for some percent-encoding
+        return length + (length >> 2);
     }
 
     HttpHeaders getRequestHeaders(final HttpServletRequest request) {
         final HttpHeaders headers = new HttpHeaders();
-        for (final String headerName : getWhitelistedRequestHeaders()) {
+        for (final String headerName : getFilterPlan().getRequestHeaderNames()) {
             final String headerValue = request.getHeader(headerName);
             if (headerValue != null) {
                 headers.add(headerName, headerValue);
@@ -195,41 +1661,25 @@ public abstract class RoutingHandler {
         return headers;
     }
 
+    /**
+     * Copies all whitelisted cookies into a single Cookie header. The request cookies are walked
+     * exactly once, in the order the client sent them.
+     */
     void addWhitelistedCookies(final HttpServletRequest request, final HttpHeaders headers) {
-        if (getWhitelistedCookieNames().length > 0) {
-            headers.add("Cookie", getWhitelistedCookies(request).toString());
-        }
-    }
-
-    private StringBuilder getWhitelistedCookies(final HttpServletRequest request) {
-        final StringBuilder cookies = new StringBuilder();
-        for (final String cookieName : getWhitelistedCookieNames()) {
-            final CookieNameMatchType cookieNameMatchType = getCookieNameMatchType();
-            if (cookieNameMatchType == CookieNameMatchType.FULL) {
-                appendCookie(cookies, WebUtils.getCookie(request, cookieName));
-            } else if (cookieNameMatchType == CookieNameMatchType.PREFIX) {
-                for (
-                        final Cookie cookieStartingWithPrefix : getCookiesByPrefix(request, cookieName)
-                ) {
-                    appendCookie(cookies, cookieStartingWithPrefix);
-                }
-            }
-        }
-        return cookies;
-    }
-
-    private List<Cookie> getCookiesByPrefix(final HttpServletRequest request, final String prefix) {
-        final Cookie[] cookies = request.getCookies();
-        if (cookies != null && prefix != null) {
-            final List<Cookie> result = new ArrayList<>();
-            for (final Cookie cookie : cookies) {
-                if (cookie.getName().startsWith(prefix)) {
-                    result.add(cookie);
+        final RoutingFilterPlan filterPlan = getFilterPlan();
+        if (filterPlan.hasCookieNames()) {
+            final CookieNameMatcher cookieNameMatcher = filterPlan.getCookieNameMatcher();
+            final StringBuilder cookies = new StringBuilder();
+            final Cookie[] requestCookies = request.getCookies();
+            if (requestCookies != null) {
+                for (final Cookie cookie : requestCookies) {
+                    if (cookieNameMatcher.matches(cookie.getName())) {
+                        appendCookie(cookies, cookie);
+                    }
                 }
             }
-            return result;
+            headers.add("Cookie", cookies.toString());
         }
-        return Collections.emptyList();
     }
 
     private void appendCookie(final StringBuilder builder, final Cookie cookie) {
@@ -271,20 +1721,34 @@ public abstract class RoutingHandler {
                     responseBody != null ? responseBody.contentLength() : 0
             );
 
+            final MediaType contentType = responseEntity.getHeaders().getContentType();
             logger.debug(
                     "Response to caller: Content Type {} | Status Code {}",
-                    responseEntity.getHeaders().getContentType(),
+                    contentType,
                     responseEntity.getStatusCode()
             );
 
-            byte[] responseBodyBytes = null;
-            if (responseBody != null) {
-                responseBodyBytes = IOUtils.toByteArray(responseBody.getInputStream());
+            // only materialized bodies are captured, reading a stream would consume it
+            final DebugCapture capture = getDebugCapture();
+            if (responseBody instanceof ByteArrayResource && capture.isSampled()) {
+                final byte[] bytes = ((ByteArrayResource) responseBody).getByteArray();
+                logger.debug(
+                        "Response body: {}",
+                        DebugCapture.render(
+                                bytes,
+                                Math.min(bytes.length, capture.getMaxBytes()),
+                                bytes.length,
+                                contentType
+                        )
+                );
             }
-            logger.debug("Response body: {}", Arrays.toString(responseBodyBytes));
         }
     }
 
+    /**
+     * request headers which will be copied from the client request to the endpoint request.
+     * Evaluated once, see {@linkplain #getFilterPlan()}.
+     */
     protected String[] getWhitelistedRequestHeaders() {
         return DEFAULT_RETURN_VALUE;
     }
@@ -297,14 +1761,30 @@ public abstract class RoutingHandler {
     }
 
     /**
-     * cookies that will be copied from the client request to the endpoint request
+     * The client IP address of the request, anonymized to the {@linkplain
+     * #getAnonymizedIpv4PrefixLength() IPv4} and {@linkplain #getAnonymizedIpv6PrefixLength()
+     * IPv6} prefix lengths of this handler, e.g. to pass it on in {@linkplain
+     * #getAdditionalRequestHeaders(HttpServletRequest)}. Forwarding headers are only followed
+     * through the trusted proxies of the {@link ClientIpResolver}. Handlers created outside of
+     * Spring fall back to {@linkplain RequestUtils#getClientIpAddress(HttpServletRequest)}.
+     */
+    protected final String getAnonymizedClientIpAddress(final HttpServletRequest request) {
+        final IpAnonymizer anonymizer = getFilterPlan().getIpAnonymizer();
+        if (clientIpResolver == null) {
+            return RequestUtils.getClientIpAddress(request, anonymizer);
+        }
+        return anonymizer.anonymize(clientIpResolver.resolve(request));
+    }
+
+    /**
+     * cookies that will be copied from the client request to the endpoint request. Evaluated once.
      */
     protected String[] getWhitelistedCookieNames() {
         return DEFAULT_RETURN_VALUE;
     }
 
     /**
-     * Define how the required cookies will be matched
+     * Define how the required cookies will be matched. Evaluated once.
      */
     protected CookieNameMatchType getCookieNameMatchType() {
         return CookieNameMatchType.FULL;
@@ -323,17 +1803,196 @@ public abstract class RoutingHandler {
     }
 
     /**
-     * query params which should not be transferred to the endpoint
+     * query params which should not be transferred to the endpoint. Evaluated once.
      */
     protected String[] getBlacklistedQueryParams() {
         return DEFAULT_RETURN_VALUE;
     }
 
     /**
-     * response headers which should be transferred back to the client
+     * dot-separated paths of JSON fields which {@linkplain #handleFilteredBodyRequestInternal}
+     * removes from request bodies, e.g. {@code user.id}. Arrays are traversed transparently, so
+     * {@code events.uid} applies to every object in the array {@code events}. The {@linkplain
+     * #getBlacklistedQueryParams()} are removed from the top level anyway. Evaluated once.
+     */
+    protected String[] getBlacklistedBodyPaths() {
+        return DEFAULT_RETURN_VALUE;
+    }
+
+    /**
+     * number of leading bits of IPv4 client addresses kept by {@linkplain
+     * #getAnonymizedClientIpAddress(HttpServletRequest)}, e.g. 24. Evaluated once.
+     */
+    protected int getAnonymizedIpv4PrefixLength() {
+        return IpAnonymizer.DEFAULT.getIpv4PrefixLength();
+    }
+
+    /**
+     * number of leading bits of IPv6 client addresses kept by {@linkplain
+     * #getAnonymizedClientIpAddress(HttpServletRequest)}, e.g. 48. Evaluated once.
+     */
+    protected int getAnonymizedIpv6PrefixLength() {
+        return IpAnonymizer.DEFAULT.getIpv6PrefixLength();
+    }
+
+    /**
+     * URLs of 3rd Party Providers this handler routes to, e.g. {@code
+     * https://www.google-analytics.com/collect}. On startup, before the application reports
+     * ready, their host names are resolved and connections to them are opened with HEAD requests,
+     * see {@link ConnectionWarmUp}. Evaluated once.
+     */
+    protected String[] getWarmUpEndpoints() {
+        return DEFAULT_RETURN_VALUE;
+    }
+
+    /**
+     * whether requests are sent with an HTTP/2 capable client instead of the pooled HTTP/1.1
+     * client. Concurrent requests to a 3rd Party Provider supporting HTTP/2 share a single
+     * connection. Proxies are selected like for the HTTP/1.1 client. Applies to the synchronous,
+     * streaming and fire-and-forget paths. Evaluated once.
+     */
+    protected boolean isHttp2Enabled() {
+        return false;
+    }
+
+    /**
+     * whether compressed responses of the 3rd Party Provider are passed to the client as they
+     * are. The encodings out of br, gzip and deflate which the client accepts are advertised
+     * upstream and the Content-Encoding is forwarded, so the body is neither decompressed nor
+     * compressed again. Applies to the synchronous and streaming paths.
+     */
+    protected boolean isCompressedPassthrough() {
+        return false;
+    }
+
+    /**
+     * response headers which should be transferred back to the client. Evaluated once.
      */
     protected String[] getWhitelistedResponseHeaders() {
         return DEFAULT_RETURN_VALUE;
     }
 
+    /**
+     * response which is returned to the client in fire-and-forget mode. Override it to deliver
+     * e.g. a tracking pixel instead of an empty response.
+     */
+    protected ResponseEntity<Resource> getFireAndForgetResponse() {
+        return ResponseEntity.noContent().header(HttpHeaders.CACHE_CONTROL, "no-cache").build();
+    }
+
+    /**
+     * Merges a batch of filtered requests into the body and headers of a single bulk request,
+     * which is sent with POST. Must be overridden to use {@linkplain #handleBatchedRequestInternal}
+     * or any of the other batching hooks, otherwise the handler fails at startup.
+     *
+     * @param batch the collected requests in arrival order
+     * @return the bulk request entity
+     */
+    protected HttpEntity<?> mergeBatch(final List<BatchedRequest> batch) {
+        throw new IllegalStateException(
+                getHandlerName() + " does not override mergeBatch, batching is not supported"
+        );
+    }
+
+    /**
+     * the endpoint bulk requests are sent to. Defaults to the target endpoint of the first request
+     * of the batch.
+     */
+    protected String getBatchEndpoint(final List<BatchedRequest> batch) {
+        return batch.get(0).getTargetEndpoint();
+    }
+
+    /**
+     * maximum number of requests merged into one bulk request. Evaluated once.
+     */
+    protected int getBatchMaxSize() {
+        return 50;
+    }
+
+    /**
+     * maximum time in milliseconds a request waits for its batch to be sent. Evaluated once.
+     */
+    protected long getBatchMaxDelayMillis() {
+        return 1000;
+    }
+
+    /**
+     * name of the provider group under {@code routing.groups} whose connection pool, timeouts and
+     * concurrency limit this handler uses. {@code null} routes through the shared default pool.
+     * Evaluated once.
+     */
+    protected String getProviderGroupName() {
+        return null;
+    }
+
+    /**
+     * maximum number of GET responses kept in the response cache. 0 disables the cache. Evaluated
+     * once.
+     */
+    protected int getResponseCacheMaxEntries() {
+        return 0;
+    }
+
+    /**
+     * maximum summed size in bytes of the response bodies kept in the response cache. Evaluated
+     * once.
+     */
+    protected long getResponseCacheMaxBytes() {
+        return 10L * 1024 * 1024;
+    }
+
+    /**
+     * time to live of cached responses, if the 3rd Party Provider sends neither Cache-Control nor
+     * Expires. 0 caches such responses not at all. Evaluated once.
+     */
+    protected long getResponseCacheTtlSeconds() {
+        return 0;
+    }
+
+    /**
+     * maximum time in milliseconds a GET request waits for an identical request already in flight,
+     * before it calls the 3rd Party Provider on its own. Only responses which could be cached are
+     * shared, i.e. 200 without Set-Cookie, no-store or private. 0 disables the coalescing. Evaluated
+     * once.
+     */
+    protected long getSingleFlightMaxWaitMillis() {
+        return 0;
+    }
+
+    /**
+     * share of requests, between 0 and 1, whose response body is written to the debug log. Only
+     * applies while debug logging is enabled for this handler. Evaluated once.
+     */
+    protected double getDebugCaptureSampleRate() {
+        return 1;
+    }
+
+    /**
+     * maximum number of response body bytes written to the debug log per request. Evaluated once.
+     */
+    protected int getDebugCaptureMaxBytes() {
+        return 1024;
+    }
+
+    /**
+     * number of threads sending fire-and-forget requests. Evaluated once.
+     */
+    protected int getFireAndForgetWorkers() {
+        return 2;
+    }
+
+    /**
+     * maximum number of fire-and-forget requests waiting to be sent. Evaluated once.
+     */
+    protected int getFireAndForgetQueueCapacity() {
+        return 1000;
+    }
+
+    /**
+     * what happens to fire-and-forget requests when the queue is full. Evaluated once.
+     */
+    protected QueueOverflowPolicy getFireAndForgetOverflowPolicy() {
+        return QueueOverflowPolicy.DROP_NEWEST;
+    }
+
 }
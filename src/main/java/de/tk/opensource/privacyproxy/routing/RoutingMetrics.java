@@ -0,0 +1,185 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.lang.Nullable;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer meters of one {@link RoutingHandler}. All meters are tagged with the handler and,
+ * except for the filter stage, with the host of the 3rd Party Provider. Query strings never become
+ * tags. Meters are registered on first use and cached, so recording a measurement does not
+ * allocate a meter id. Without a {@link MeterRegistry} nothing is recorded.
+ */
+final class RoutingMetrics {
+
+    static final RoutingMetrics NOOP = new RoutingMetrics(null, "");
+
+    private static final String STATUS_TIMEOUT = "timeout";
+    private static final String STATUS_IO_ERROR = "io_error";
+
+    private final MeterRegistry meterRegistry;
+    private final String handlerName;
+    private final Timer filterTimer;
+    private final Map<String, HostMeters> hostMeters = new ConcurrentHashMap<>();
+
+    RoutingMetrics(@Nullable final MeterRegistry meterRegistry, final String handlerName) {
+        this.meterRegistry = meterRegistry;
+        this.handlerName = handlerName;
+        this.filterTimer =
+                meterRegistry != null
+                        ? Timer.builder("privacyproxy.routing.filter")
+                        .description("Time spent filtering the request before it is routed")
+                        .tag("handler", handlerName)
+                        .register(meterRegistry)
+                        : null;
+    }
+
+    void recordFilter(final long nanos) {
+        if (filterTimer != null) {
+            filterTimer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @param bytes size of the client request body, ignored if unknown
+     */
+    void recordRequestSize(final String host, final long bytes) {
+        if (meterRegistry != null && bytes >= 0) {
+            getHostMeters(host).requestSize.record(bytes);
+        }
+    }
+
+    /**
+     * Records the response sent to the client and the time since the request arrived.
+     *
+     * @param bytes size of the response body, ignored if unknown
+     */
+    void recordResponse(
+            final String host,
+            final HttpStatusCode statusCode,
+            final long bytes,
+            final long nanos
+    ) {
+        if (meterRegistry != null) {
+            final HostMeters meters = getHostMeters(host);
+            meters.requestTimer(statusClass(statusCode)).record(nanos, TimeUnit.NANOSECONDS);
+            if (bytes >= 0) {
+                meters.responseSize.record(bytes);
+            }
+        }
+    }
+
+    void recordUpstream(final String host, final HttpStatusCode statusCode, final long nanos) {
+        if (meterRegistry != null) {
+            getHostMeters(host).upstreamTimer(statusClass(statusCode))
+                    .record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Records a failed upstream call. Error responses are counted by their status class, timeouts
+     * and other I/O errors additionally increase the error counter.
+     */
+    void recordUpstreamError(final String host, final Exception e, final long nanos) {
+        if (meterRegistry == null) {
+            return;
+        }
+        final HostMeters meters = getHostMeters(host);
+        if (e instanceof HttpStatusCodeException) {
+            meters.upstreamTimer(statusClass(((HttpStatusCodeException) e).getStatusCode()))
+                    .record(nanos, TimeUnit.NANOSECONDS);
+            return;
+        }
+        final String status = isTimeout(e) ? STATUS_TIMEOUT : STATUS_IO_ERROR;
+        meters.upstreamTimer(status).record(nanos, TimeUnit.NANOSECONDS);
+        meters.errorCounter(status).increment();
+    }
+
+    private static boolean isTimeout(final Exception e) {
+        Throwable cause = e instanceof RestClientException ? e.getCause() : e;
+        while (cause != null) {
+            // covers SocketTimeoutException and the connect and connection request timeouts
+            if (cause instanceof InterruptedIOException) {
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    private static String statusClass(final HttpStatusCode statusCode) {
+        return (statusCode.value() / 100) + "xx";
+    }
+
+    private HostMeters getHostMeters(final String host) {
+        final String hostTag = host != null ? host : "unknown";
+        final HostMeters meters = hostMeters.get(hostTag);
+        return meters != null ? meters : hostMeters.computeIfAbsent(hostTag, HostMeters::new);
+    }
+
+    private final class HostMeters {
+
+        private final String host;
+        private final DistributionSummary requestSize;
+        private final DistributionSummary responseSize;
+        private final Map<String, Timer> requestTimers = new ConcurrentHashMap<>();
+        private final Map<String, Timer> upstreamTimers = new ConcurrentHashMap<>();
+        private final Map<String, Counter> errorCounters = new ConcurrentHashMap<>();
+
+        private HostMeters(final String host) {
+            this.host = host;
+            this.requestSize =
+                    DistributionSummary.builder("privacyproxy.routing.request.size")
+                            .description("Size of the request bodies received from clients")
+                            .baseUnit("bytes")
+                            .tags("handler", handlerName, "host", host)
+                            .register(meterRegistry);
+            this.responseSize =
+                    DistributionSummary.builder("privacyproxy.routing.response.size")
+                            .description("Size of the response bodies sent to clients")
+                            .baseUnit("bytes")
+                            .tags("handler", handlerName, "host", host)
+                            .register(meterRegistry);
+        }
+
+        private Timer requestTimer(final String status) {
+            return requestTimers.computeIfAbsent(
+                    status,
+                    s -> Timer.builder("privacyproxy.routing.requests")
+                            .description("Time from receiving a request to answering the client")
+                            .tags("handler", handlerName, "host", host, "status", s)
+                            .register(meterRegistry)
+            );
+        }
+
+        private Timer upstreamTimer(final String status) {
+            return upstreamTimers.computeIfAbsent(
+                    status,
+                    s -> Timer.builder("privacyproxy.routing.upstream")
+                            .description("Duration of the calls to the 3rd Party Provider")
+                            .tags("handler", handlerName, "host", host, "status", s)
+                            .register(meterRegistry)
+            );
+        }
+
+        private Counter errorCounter(final String type) {
+            return errorCounters.computeIfAbsent(
+                    type,
+                    t -> Counter.builder("privacyproxy.routing.upstream.errors")
+                            .description("Calls to the 3rd Party Provider failing without response")
+                            .tags("handler", handlerName, "host", host, "type", t)
+                            .register(meterRegistry)
+            );
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent callers with the same key share one call. The first caller executes it, all
+ * callers arriving while it is in flight wait for its result. A caller waiting longer than the
+ * maximum wait time, or seeing the shared call fail or return a result which must not be shared,
+ * executes the call on its own instead.
+ *
+ * @param <V> result of the call
+ */
+final class SingleFlight<V> {
+
+    private static final NotShareableException NOT_SHAREABLE = new NotShareableException();
+
+    private final long maxWaitMillis;
+    private final ConcurrentHashMap<String, CompletableFuture<V>> inFlight =
+            new ConcurrentHashMap<>();
+    private final LongAdder shared = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    SingleFlight(final long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    boolean isEnabled() {
+        return maxWaitMillis > 0;
+    }
+
+    V execute(final String key, final Supplier<V> call) {
+        return execute(key, call, result -> true);
+    }
+
+    /**
+     * @param shareable decides whether the result of the first caller is handed to the waiting
+     *                  callers. Only the predicate of the first caller is evaluated.
+     */
+    V execute(final String key, final Supplier<V> call, final Predicate<V> shareable) {
+        final CompletableFuture<V> own = new CompletableFuture<>();
+        final CompletableFuture<V> existing = inFlight.putIfAbsent(key, own);
+        if (existing == null) {
+            try {
+                final V result = call.get();
+                if (shareable.test(result)) {
+                    own.complete(result);
+                } else {
+                    own.completeExceptionally(NOT_SHAREABLE);
+                }
+                return result;
+            } catch (RuntimeException | Error e) {
+                own.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, own);
+            }
+        }
+
+        try {
+            final V result = existing.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+            shared.increment();
+            return result;
+        } catch (TimeoutException | ExecutionException e) {
+            fallbacks.increment();
+            return call.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fallbacks.increment();
+            return call.get();
+        }
+    }
+
+    long getSharedCount() {
+        return shared.sum();
+    }
+
+    long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    void bindTo(final MeterRegistry meterRegistry, final String handlerName) {
+        FunctionCounter.builder("privacyproxy.routing.coalesced", shared, LongAdder::sum)
+                .description("Requests answered with the result of an identical request in flight")
+                .tags("handler", handlerName, "result", "shared")
+                .register(meterRegistry);
+        FunctionCounter.builder("privacyproxy.routing.coalesced", fallbacks, LongAdder::sum)
+                .description("Requests which gave up waiting for an identical request in flight")
+                .tags("handler", handlerName, "result", "fallback")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Completes the shared call for the waiting callers, so they execute the call on their own.
+     */
+    private static final class NotShareableException extends Exception {
+
+        private NotShareableException() {
+            super("result must not be shared", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.http.MediaType;
+import org.springframework.lang.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Removes blacklisted fields from JSON and form request bodies while they are read. The filtered
+ * body is produced token by token as the upstream request reads it, so neither the original nor
+ * the filtered body is held in memory as a whole.
+ * <p>
+ * JSON fields are addressed by dot-separated paths, arrays are traversed transparently: {@code
+ * events.uid} removes the field {@code uid} of every object in the array {@code events}. Form
+ * parameters are matched by their decoded name.
+ */
+final class StreamingBodyFilter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int CHUNK_SIZE = 8192;
+
+    private final Node paths;
+
+    private StreamingBodyFilter(final Node paths) {
+        this.paths = paths;
+    }
+
+    /**
+     * @param topLevelNames fields removed from the top level, which includes the objects of a
+     *                      top level array
+     * @param nestedPaths   dot-separated paths of fields, starting at the top level
+     */
+    static StreamingBodyFilter compile(final String[] topLevelNames, final String[] nestedPaths) {
+        final Node root = new Node();
+        for (final String name : topLevelNames) {
+            root.child(name).blacklisted = true;
+        }
+        for (final String path : nestedPaths) {
+            Node node = root;
+            for (final String segment : path.split("\\.")) {
+                node = node.child(segment);
+            }
+            node.blacklisted = true;
+        }
+        return new StreamingBodyFilter(root);
+    }
+
+    boolean isEmpty() {
+        return paths.children.isEmpty();
+    }
+
+    static boolean isSupported(@Nullable final MediaType contentType) {
+        return contentType != null && (isJson(contentType) || isForm(contentType));
+    }
+
+    private static boolean isJson(final MediaType contentType) {
+        return MediaType.APPLICATION_JSON.includes(contentType)
+                || contentType.getSubtype().endsWith("+json");
+    }
+
+    private static boolean isForm(final MediaType contentType) {
+        return MediaType.APPLICATION_FORM_URLENCODED.includes(contentType);
+    }
+
+    /**
+     * @param contentType a content type for which {@linkplain #isSupported} holds
+     * @return the filtered body. Reading it throws a {@link MalformedBodyException} if the body
+     * does not match its content type.
+     */
+    InputStream filter(final InputStream body, final MediaType contentType) throws IOException {
+        return isJson(contentType)
+                ? new JsonFilterInputStream(body, contentType.getCharset())
+                : new FormFilterInputStream(body);
+    }
+
+    /**
+     * The content type of the filtered body. JSON is read in its declared charset but always
+     * written as UTF-8, the default of JSON without a charset. Form bodies are copied byte by byte
+     * and keep their charset.
+     *
+     * @param contentType a content type for which {@linkplain #isSupported} holds
+     */
+    static MediaType filteredContentType(final MediaType contentType) {
+        return isJson(contentType) && contentType.getCharset() != null
+                ? new MediaType(contentType, StandardCharsets.UTF_8)
+                : contentType;
+    }
+
+    /**
+     * The request body could not be parsed. A client error, not a failure of the 3rd Party
+     * Provider.
+     */
+    static final class MalformedBodyException extends IOException {
+
+        private MalformedBodyException(final String message, final Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private static final class Node {
+
+        private static final Node NONE = new Node();
+
+        private final Map<String, Node> children = new HashMap<>();
+        private boolean blacklisted;
+
+        private Node child(final String name) {
+            return children.computeIfAbsent(name, n -> new Node());
+        }
+
+        private Node find(final String name) {
+            final Node child = children.get(name);
+            return child != null ? child : NONE;
+        }
+    }
+
+    /**
+     * Exposes the written bytes without copying them.
+     */
+    private static final class ChunkOutputStream extends ByteArrayOutputStream {
+
+        private ChunkOutputStream() {
+            super(CHUNK_SIZE);
+        }
+
+        private byte[] bytes() {
+            return buf;
+        }
+    }
+
+    /**
+     * Produces the filtered body in chunks of about {@value #CHUNK_SIZE} bytes.
+     */
+    private abstract static class ChunkedFilterInputStream extends InputStream {
+
+        final ChunkOutputStream chunk = new ChunkOutputStream();
+        private int position;
+        private boolean done;
+
+        /**
+         * Writes the next part of the filtered body to {@link #chunk}.
+         *
+         * @return false if the body is complete
+         */
+        abstract boolean fill() throws IOException;
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            return chunk.bytes()[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(
+                final byte[] target,
+                final int offset,
+                final int length
+        ) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!ensureAvailable()) {
+                return -1;
+            }
+            final int count = Math.min(length, chunk.size() - position);
+            System.arraycopy(chunk.bytes(), position, target, offset, count);
+            position += count;
+            return count;
+        }
+
+        private boolean ensureAvailable() throws IOException {
+            while (position == chunk.size()) {
+                if (done) {
+                    return false;
+                }
+                chunk.reset();
+                position = 0;
+                done = !fill();
+            }
+            return true;
+        }
+    }
+
+    private final class JsonFilterInputStream extends ChunkedFilterInputStream {
+
+        private final JsonParser parser;
+        private final JsonGenerator generator;
+        private final Deque<Node> contexts = new ArrayDeque<>();
+        private Node fieldNode;
+
+        /**
+         * @param charset the declared charset, {@code null} to detect the Unicode encoding
+         */
+        private JsonFilterInputStream(final InputStream body, @Nullable final Charset charset)
+                throws IOException {
+            this.parser =
+                    charset == null || StandardCharsets.UTF_8.equals(charset)
+                            ? JSON_FACTORY.createParser(body)
+                            : JSON_FACTORY.createParser(new InputStreamReader(body, charset));
+            this.generator = JSON_FACTORY.createGenerator(chunk, JsonEncoding.UTF8);
+        }
+
+        @Override
+        boolean fill() throws IOException {
+            try {
+                while (chunk.size() + generator.getOutputBuffered() < CHUNK_SIZE) {
+                    final JsonToken token = parser.nextToken();
+                    if (token == null) {
+                        generator.flush();
+                        return false;
+                    }
+                    copy(token);
+                }
+                generator.flush();
+                return true;
+            } catch (JsonProcessingException e) {
+                throw new MalformedBodyException("Malformed JSON request body", e);
+            }
+        }
+
+        private void copy(final JsonToken token) throws IOException {
+            switch (token) {
+                case FIELD_NAME:
+                    final String name = parser.getCurrentName();
+                    final Node field = contexts.isEmpty() ? Node.NONE : contexts.peek().find(name);
+                    if (field.blacklisted) {
+                        parser.nextToken();
+                        parser.skipChildren();
+                        return;
+                    }
+                    fieldNode = field;
+                    generator.writeFieldName(name);
+                    return;
+                case START_OBJECT:
+                    contexts.push(valueNode());
+                    generator.writeStartObject();
+                    return;
+                case START_ARRAY:
+                    contexts.push(valueNode());
+                    generator.writeStartArray();
+                    return;
+                case END_OBJECT:
+                    contexts.pop();
+                    generator.writeEndObject();
+                    return;
+                case END_ARRAY:
+                    contexts.pop();
+                    generator.writeEndArray();
+                    return;
+                case VALUE_STRING:
+                    fieldNode = null;
+                    generator.writeString(
+                            parser.getTextCharacters(),
+                            parser.getTextOffset(),
+                            parser.getTextLength()
+                    );
+                    return;
+                case VALUE_NUMBER_FLOAT:
+                    // keeps the number exactly as it was sent
+                    fieldNode = null;
+                    generator.writeNumber(parser.getText());
+                    return;
+                default:
+                    fieldNode = null;
+                    generator.copyCurrentEvent(parser);
+            }
+        }
+
+        /**
+         * The paths below a new object or array: those of its field, the same as its parent for
+         * array elements, all paths for the root.
+         */
+        private Node valueNode() {
+            final Node node;
+            if (fieldNode != null) {
+                node = fieldNode;
+            } else {
+                node = contexts.isEmpty() ? paths : contexts.peek();
+            }
+            fieldNode = null;
+            return node;
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+    }
+
+    private final class FormFilterInputStream extends ChunkedFilterInputStream {
+
+        private final InputStream body;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private final ByteArrayOutputStream name = new ByteArrayOutputStream();
+        private int bufferPosition;
+        private int bufferLength;
+        private boolean inValue;
+        private boolean skipValue;
+        private boolean firstPair = true;
+
+        private FormFilterInputStream(final InputStream body) {
+            this.body = body;
+        }
+
+        @Override
+        boolean fill() throws IOException {
+            while (chunk.size() < CHUNK_SIZE) {
+                if (bufferPosition == bufferLength) {
+                    bufferLength = body.read(buffer);
+                    bufferPosition = 0;
+                    if (bufferLength < 0) {
+                        if (!inValue) {
+                            endName(false);
+                        }
+                        return false;
+                    }
+                }
+                final byte b = buffer[bufferPosition++];
+                if (inValue) {
+                    if (b == '&') {
+                        inValue = false;
+                    } else if (!skipValue) {
+                        chunk.write(b);
+                    }
+                } else if (b == '=') {
+                    endName(true);
+                } else if (b == '&') {
+                    endName(false);
+                } else {
+                    name.write(b);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Decides about the pair once its name is complete and writes the name if it is allowed.
+         */
+        private void endName(final boolean hasValue) throws IOException {
+            if (name.size() == 0 && !hasValue) {
+                return;
+            }
+            final boolean blacklisted = paths.find(decodeName()).blacklisted;
+            if (!blacklisted) {
+                if (!firstPair) {
+                    chunk.write('&');
+                }
+                firstPair = false;
+                name.writeTo(chunk);
+                if (hasValue) {
+                    chunk.write('=');
+                }
+            }
+            name.reset();
+            inValue = hasValue;
+            skipValue = blacklisted;
+        }
+
+        private String decodeName() throws MalformedBodyException {
+            final String rawName = name.toString(StandardCharsets.ISO_8859_1);
+            try {
+                return URLDecoder.decode(rawName, StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                throw new MalformedBodyException("Malformed form request body", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+}
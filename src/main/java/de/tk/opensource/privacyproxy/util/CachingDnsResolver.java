@@ -0,0 +1,65 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.SystemDefaultDnsResolver;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the addresses of resolved host names for a fixed time, independent of the address cache
+ * of the JVM. Failed lookups are not cached.
+ */
+public class CachingDnsResolver implements DnsResolver {
+
+    private final DnsResolver delegate;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    public CachingDnsResolver(final long ttlSeconds) {
+        this(SystemDefaultDnsResolver.INSTANCE, ttlSeconds, System::nanoTime);
+    }
+
+    CachingDnsResolver(
+            final DnsResolver delegate,
+            final long ttlSeconds,
+            final LongSupplier nanoClock
+    ) {
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public InetAddress[] resolve(final String host) throws UnknownHostException {
+        final long now = nanoClock.getAsLong();
+        final Entry entry = cache.get(host);
+        if (entry != null && now - entry.resolvedAt < ttlNanos) {
+            return entry.addresses.clone();
+        }
+        final InetAddress[] addresses = delegate.resolve(host);
+        cache.put(host, new Entry(addresses.clone(), now));
+        return addresses;
+    }
+
+    @Override
+    public String resolveCanonicalHostname(final String host) throws UnknownHostException {
+        return delegate.resolveCanonicalHostname(host);
+    }
+
+    private static final class Entry {
+
+        private final InetAddress[] addresses;
+        private final long resolvedAt;
+
+        private Entry(final InetAddress[] addresses, final long resolvedAt) {
+            this.addresses = addresses;
+            this.resolvedAt = resolvedAt;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package de.tk.opensource.privacyproxy.util;
+
+/**
+ * A set of CIDR ranges, e.g. {@code 10.0.0.0/8} or {@code fd00::/8}, compiled into one binary
+ * radix tree per address family. An address is looked up with one walk along its bits, which
+ * ends at the first node a range ends at, at most 32 or 128 steps regardless of the number of
+ * ranges. IPv4-mapped IPv6 addresses are matched against the IPv4 ranges.
+ */
+final class CidrMatcher {
+
+    private static final int IPV4_MAPPED_OFFSET = IpAddresses.IPV6_LENGTH - IpAddresses.IPV4_LENGTH;
+
+    private final Node ipv4 = new Node();
+    private final Node ipv6 = new Node();
+
+    /**
+     * @param ranges addresses with an optional prefix length; without one the range consists of the
+     *               address alone
+     * @throws IllegalArgumentException if a range is malformed
+     */
+    CidrMatcher(final Iterable<String> ranges) {
+        for (final String rawRange : ranges) {
+            add(rawRange.trim());
+        }
+    }
+
+    private void add(final String range) {
+        final int slash = range.indexOf('/');
+        final byte[] address = IpAddresses.parse(slash < 0 ? range : range.substring(0, slash));
+        if (address == null) {
+            throw new IllegalArgumentException("Invalid CIDR range " + range);
+        }
+        final int maxPrefixLength = address.length * 8;
+        int prefixLength = maxPrefixLength;
+        if (slash >= 0) {
+            try {
+                prefixLength = Integer.parseInt(range.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                prefixLength = -1;
+            }
+            if (prefixLength < 0 || prefixLength > maxPrefixLength) {
+                throw new IllegalArgumentException("Invalid CIDR range " + range);
+            }
+        }
+        if (address.length == IpAddresses.IPV4_LENGTH) {
+            ipv4.add(address, 0, prefixLength);
+        } else if (IpAddresses.isIpv4Mapped(address) && prefixLength >= IPV4_MAPPED_OFFSET * 8) {
+            ipv4.add(address, IPV4_MAPPED_OFFSET, prefixLength - IPV4_MAPPED_OFFSET * 8);
+        } else {
+            ipv6.add(address, 0, prefixLength);
+        }
+    }
+
+    /**
+     * @param address the bytes of an IPv4 or IPv6 address
+     * @return whether the address lies within one of the ranges
+     */
+    boolean matches(final byte[] address) {
+        if (address.length == IpAddresses.IPV4_LENGTH) {
+            return ipv4.matches(address, 0);
+        }
+        if (IpAddresses.isIpv4Mapped(address) && ipv4.matches(address, IPV4_MAPPED_OFFSET)) {
+            return true;
+        }
+        return ipv6.matches(address, 0);
+    }
+
+    boolean isEmpty() {
+        return ipv4.isEmpty() && ipv6.isEmpty();
+    }
+
+    /**
+     * Binary trie node, {@code zero} and {@code one} are followed for the next bit. A node is
+     * terminal if a range ends there, every address continuing from it is within that range.
+     */
+    private static final class Node {
+
+        private Node zero;
+        private Node one;
+        private boolean terminal;
+
+        private void add(final byte[] address, final int offset, final int prefixLength) {
+            Node node = this;
+            for (int bit = 0; bit < prefixLength && !node.terminal; bit++) {
+                if (bit(address, offset, bit)) {
+                    node = node.one == null ? (node.one = new Node()) : node.one;
+                } else {
+                    node = node.zero == null ? (node.zero = new Node()) : node.zero;
+                }
+            }
+            node.terminal = true;
+            // narrower ranges below are covered now
+            node.zero = node.one = null;
+        }
+
+        private boolean matches(final byte[] address, final int offset) {
+            final int bits = (address.length - offset) * 8;
+            Node node = this;
+            for (int bit = 0; !node.terminal; bit++) {
+                if (bit == bits) {
+                    return false;
+                }
+                node = bit(address, offset, bit) ? node.one : node.zero;
+                if (node == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isEmpty() {
+            return !terminal && zero == null && one == null;
+        }
+
+        private static boolean bit(final byte[] address, final int offset, final int bit) {
+            return (address[offset + (bit >>> 3)] & (0x80 >>> (bit & 7))) != 0;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package de.tk.opensource.privacyproxy.util;
+
+import jakarta.servlet.http.HttpServletRequest;
+import java.util.List;
+
+/**
+ * Determines the client IP address of a request behind reverse proxies. Forwarding headers are
+ * only believed if they were set by a trusted proxy: starting with the peer address of the
+ * connection, the hops of the forwarding header are walked from right to left, i.e. from the
+ * nearest to the farthest, until a hop is reached that is not within the trusted CIDR ranges.
+ * That hop is the client. Entries left of it may have been sent by the client itself.
+ * <p>
+ * Of the configured headers, the first one present in the request is used. {@code Forwarded}
+ * (RFC 7239) is evaluated by its {@code for} parameters, any other header as a comma-separated
+ * list of addresses like {@code X-Forwarded-For}.
+ */
+public class ClientIpResolver {
+
+    private static final String FORWARDED = "Forwarded";
+
+    private final CidrMatcher trustedProxies;
+    private final String[] headers;
+    private final boolean[] forwardedSyntax;
+
+    /**
+     * @param trustedProxies CIDR ranges of the reverse proxies in front of the application
+     * @param headers        forwarding headers in the order they are looked up
+     * @throws IllegalArgumentException if a range is malformed
+     */
+    public ClientIpResolver(final List<String> trustedProxies, final List<String> headers) {
+        this.trustedProxies = new CidrMatcher(trustedProxies);
+        this.headers = headers.toArray(new String[0]);
+        this.forwardedSyntax = new boolean[this.headers.length];
+        for (int i = 0; i < this.headers.length; i++) {
+            forwardedSyntax[i] = FORWARDED.equalsIgnoreCase(this.headers[i]);
+        }
+    }
+
+    /**
+     * @return the address of the first untrusted hop, or the leftmost hop if all of them are
+     * trusted
+     */
+    public String resolve(final HttpServletRequest request) {
+        final String remoteAddr = request.getRemoteAddr();
+        if (trustedProxies.isEmpty() || !isTrusted(remoteAddr)) {
+            return remoteAddr;
+        }
+        for (int i = 0; i < headers.length; i++) {
+            final String value = request.getHeader(headers[i]);
+            if (value != null && !value.isEmpty()) {
+                return resolve(value, forwardedSyntax[i], remoteAddr);
+            }
+        }
+        return remoteAddr;
+    }
+
+    /**
+     * Walks the hops of a header value from right to left.
+     *
+     * @param value          header value
+     * @param forwarded      whether the value has the syntax of the {@code Forwarded} header
+     * @param trustedAddress the address the header was received from
+     */
+    String resolve(final String value, final boolean forwarded, final String trustedAddress) {
+        String client = trustedAddress;
+        int end = value.length();
+        while (end >= 0) {
+            final int start = value.lastIndexOf(',', end - 1);
+            final String hop =
+                    forwarded
+                            ? forwardedFor(value, start + 1, end)
+                            : stripPort(value.substring(start + 1, end).trim());
+            if (hop == null || hop.isEmpty()) {
+                // unknown or obfuscated hops cannot be trusted
+                return client;
+            }
+            final byte[] address = IpAddresses.parse(hop);
+            if (address == null) {
+                return client;
+            }
+            client = hop;
+            if (!trustedProxies.matches(address)) {
+                return client;
+            }
+            end = start;
+        }
+        return client;
+    }
+
+    private boolean isTrusted(final String address) {
+        final byte[] parsed = IpAddresses.parse(address);
+        return parsed != null && trustedProxies.matches(parsed);
+    }
+
+    /**
+     * @return the node of the {@code for} parameter of one forwarded element, e.g. {@code
+     * for=192.0.2.43;proto=https} or {@code for="[2001:db8:cafe::17]:4711"}, null if missing
+     */
+    private static String forwardedFor(final String value, final int start, final int end) {
+        int pairStart = start;
+        while (pairStart < end) {
+            int pairEnd = value.indexOf(';', pairStart);
+            if (pairEnd < 0 || pairEnd > end) {
+                pairEnd = end;
+            }
+            final String pair = value.substring(pairStart, pairEnd).trim();
+            final int equals = pair.indexOf('=');
+            if (equals > 0 && "for".equalsIgnoreCase(pair.substring(0, equals).trim())) {
+                String node = pair.substring(equals + 1).trim();
+                if (node.length() >= 2 && node.charAt(0) == '"' && node.charAt(node.length() - 1) == '"') {
+                    node = node.substring(1, node.length() - 1);
+                }
+                return stripPort(node);
+            }
+            pairStart = pairEnd + 1;
+        }
+        return null;
+    }
+
+    /**
+     * Removes the port of {@code 192.0.2.43:4711} and the brackets and port of {@code
+     * [2001:db8::17]:4711}. Plain IPv6 addresses are returned as they are.
+     */
+    private static String stripPort(final String node) {
+        if (node.startsWith("[")) {
+            final int bracket = node.indexOf(']');
+            return bracket > 0 ? node.substring(1, bracket) : null;
+        }
+        final int colon = node.indexOf(':');
+        if (colon >= 0 && node.indexOf(':', colon + 1) < 0) {
+            return node.substring(0, colon);
+        }
+        return node;
+    }
+}
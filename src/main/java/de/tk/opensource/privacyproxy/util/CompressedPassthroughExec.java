@@ -0,0 +1,40 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.classic.ExecChainHandler;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpException;
+
+import java.io.IOException;
+
+/**
+ * Lets single requests opt out of the transparent content decoding of the client. A request
+ * carrying the {@value #HEADER} header is sent with its own {@code Accept-Encoding} and receives
+ * the response body as it was encoded by the server, including its {@code Content-Encoding}. The
+ * marker header itself is removed before the request is sent.
+ */
+public class CompressedPassthroughExec implements ExecChainHandler {
+
+    public static final String HEADER = "X-Privacy-Proxy-Compressed-Passthrough";
+    static final String NAME = "compressed-passthrough";
+
+    @Override
+    public ClassicHttpResponse execute(
+            final ClassicHttpRequest request,
+            final ExecChain.Scope scope,
+            final ExecChain chain
+    ) throws IOException, HttpException {
+        if (request.containsHeader(HEADER)) {
+            request.removeHeaders(HEADER);
+            final HttpClientContext context = scope.clientContext;
+            context.setRequestConfig(
+                    RequestConfig.copy(context.getRequestConfig()).setContentCompressionEnabled(false)
+                            .build()
+            );
+        }
+        return chain.proceed(request, scope);
+    }
+}
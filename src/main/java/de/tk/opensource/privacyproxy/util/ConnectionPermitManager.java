@@ -0,0 +1,213 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.HttpClientConnectionManager;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.impl.io.HttpRequestExecutor;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits the connections leased from a pool to its size before the pool is asked. The httpclient5
+ * pool waits for a free connection inside a synchronized block, which pins the carrier thread of a
+ * virtual thread for up to the connection request timeout. With this manager in front, waiting
+ * happens on a {@link Semaphore} instead, which unmounts virtual threads.
+ * <p>
+ * There is one instance per pool, and every client of the pool leases through it, so the pool
+ * always has a connection available for a lease holding a permit. The permits are keyed by the
+ * {@link HttpRoute} like the pool itself, and are returned when the connection is released.
+ */
+final class ConnectionPermitManager implements HttpClientConnectionManager {
+
+    private final HttpClientConnectionManager pool;
+    private final Semaphore totalPermits;
+    private final int maxPerRoute;
+    private final Map<HttpRoute, Semaphore> routePermits = new ConcurrentHashMap<>();
+
+    ConnectionPermitManager(
+            final HttpClientConnectionManager pool,
+            final int maxTotal,
+            final int maxPerRoute
+    ) {
+        this.pool = pool;
+        this.totalPermits = new Semaphore(maxTotal, true);
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    @Override
+    public LeaseRequest lease(
+            final String id,
+            final HttpRoute route,
+            final Timeout requestTimeout,
+            final Object state
+    ) {
+        return new LeaseRequest() {
+
+            private volatile LeaseRequest poolRequest;
+
+            @Override
+            public ConnectionEndpoint get(final Timeout timeout)
+                    throws InterruptedException, ExecutionException, TimeoutException {
+                final long deadline = deadline(timeout);
+                final Semaphore routePermit =
+                        routePermits.computeIfAbsent(route, key -> new Semaphore(maxPerRoute, true));
+                acquire(routePermit, deadline, route);
+                try {
+                    acquire(totalPermits, deadline, route);
+                } catch (InterruptedException | TimeoutException e) {
+                    routePermit.release();
+                    throw e;
+                }
+
+                try {
+                    poolRequest = pool.lease(id, route, requestTimeout, state);
+                    return new PermitConnectionEndpoint(poolRequest.get(timeout), routePermit);
+                } catch (InterruptedException | ExecutionException | TimeoutException | RuntimeException e) {
+                    totalPermits.release();
+                    routePermit.release();
+                    throw e;
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                final LeaseRequest request = poolRequest;
+                return request != null && request.cancel();
+            }
+        };
+    }
+
+    /**
+     * @return the time in nanos waiting ends, or {@link Long#MAX_VALUE} to wait without limit
+     */
+    private static long deadline(final Timeout timeout) {
+        return Timeout.isPositive(timeout)
+                ? System.nanoTime() + timeout.toNanoseconds()
+                : Long.MAX_VALUE;
+    }
+
+    private static void acquire(final Semaphore permits, final long deadline, final HttpRoute route)
+            throws InterruptedException, TimeoutException {
+        if (deadline == Long.MAX_VALUE) {
+            permits.acquire();
+        } else if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            throw new TimeoutException("Timeout waiting for connection to " + route.getTargetHost());
+        }
+    }
+
+    @Override
+    public void release(
+            final ConnectionEndpoint endpoint,
+            final Object newState,
+            final TimeValue validDuration
+    ) {
+        if (endpoint instanceof PermitConnectionEndpoint) {
+            final PermitConnectionEndpoint permitEndpoint = (PermitConnectionEndpoint) endpoint;
+            try {
+                pool.release(permitEndpoint.endpoint, newState, validDuration);
+            } finally {
+                permitEndpoint.releasePermits();
+            }
+        } else {
+            pool.release(endpoint, newState, validDuration);
+        }
+    }
+
+    @Override
+    public void connect(
+            final ConnectionEndpoint endpoint,
+            final TimeValue connectTimeout,
+            final HttpContext context
+    ) throws IOException {
+        pool.connect(unwrap(endpoint), connectTimeout, context);
+    }
+
+    @Override
+    public void upgrade(final ConnectionEndpoint endpoint, final HttpContext context)
+            throws IOException {
+        pool.upgrade(unwrap(endpoint), context);
+    }
+
+    @Override
+    public void close(final CloseMode closeMode) {
+        pool.close(closeMode);
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.close();
+    }
+
+    private static ConnectionEndpoint unwrap(final ConnectionEndpoint endpoint) {
+        return endpoint instanceof PermitConnectionEndpoint
+                ? ((PermitConnectionEndpoint) endpoint).endpoint
+                : endpoint;
+    }
+
+    /**
+     * A leased connection holding a permit of its route and of the pool.
+     */
+    private final class PermitConnectionEndpoint extends ConnectionEndpoint {
+
+        private final ConnectionEndpoint endpoint;
+        private final Semaphore routePermit;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private PermitConnectionEndpoint(final ConnectionEndpoint endpoint, final Semaphore routePermit) {
+            this.endpoint = endpoint;
+            this.routePermit = routePermit;
+        }
+
+        @Override
+        public ClassicHttpResponse execute(
+                final String id,
+                final ClassicHttpRequest request,
+                final HttpRequestExecutor executor,
+                final HttpContext context
+        ) throws IOException, HttpException {
+            return endpoint.execute(id, request, executor, context);
+        }
+
+        @Override
+        public boolean isConnected() {
+            return endpoint.isConnected();
+        }
+
+        @Override
+        public void setSocketTimeout(final Timeout timeout) {
+            endpoint.setSocketTimeout(timeout);
+        }
+
+        @Override
+        public void close(final CloseMode closeMode) {
+            endpoint.close(closeMode);
+        }
+
+        @Override
+        public void close() throws IOException {
+            endpoint.close();
+        }
+
+        private void releasePermits() {
+            if (released.compareAndSet(false, true)) {
+                totalPermits.release();
+                routePermit.release();
+            }
+        }
+    }
+}
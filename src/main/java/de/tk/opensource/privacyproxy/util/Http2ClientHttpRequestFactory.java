@@ -0,0 +1,239 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Sends the requests of a RestTemplate with the HTTP client of the JDK, which negotiates HTTP/2
+ * via ALPN and multiplexes concurrent requests to the same host over a single connection. Hosts
+ * not supporting HTTP/2 are served with HTTP/1.1.
+ * <p>
+ * Like the Apache HTTP client used otherwise, gzip and deflate encoded responses are decoded
+ * unless the request carries the {@value CompressedPassthroughExec#HEADER} header.
+ */
+public class Http2ClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    /**
+     * Headers managed by the HTTP client itself, which are not allowed or not meaningful to set
+     * on HTTP/2 requests.
+     */
+    private static final Set<String> CONNECTION_HEADERS =
+            Set.of(
+                    "connection",
+                    "content-length",
+                    "expect",
+                    "host",
+                    "keep-alive",
+                    "transfer-encoding",
+                    "upgrade"
+            );
+    private static final String DEFAULT_ACCEPT_ENCODING = "gzip, deflate";
+
+    private final HttpClient httpClient;
+    private final Duration responseTimeout;
+
+    /**
+     * @param responseTimeout maximum time until the response headers are received
+     */
+    public Http2ClientHttpRequestFactory(final HttpClient httpClient, final Duration responseTimeout) {
+        this.httpClient = httpClient;
+        this.responseTimeout = responseTimeout;
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(final URI uri, final HttpMethod httpMethod) {
+        return new Http2ClientHttpRequest(uri, httpMethod);
+    }
+
+    private final class Http2ClientHttpRequest extends AbstractClientHttpRequest {
+
+        private final URI uri;
+        private final HttpMethod method;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+
+        private Http2ClientHttpRequest(final URI uri, final HttpMethod method) {
+            this.uri = uri;
+            this.method = method;
+        }
+
+        @Override
+        public HttpMethod getMethod() {
+            return method;
+        }
+
+        @Override
+        public URI getURI() {
+            return uri;
+        }
+
+        @Override
+        protected OutputStream getBodyInternal(final HttpHeaders headers) {
+            return body;
+        }
+
+        @Override
+        protected ClientHttpResponse executeInternal(final HttpHeaders headers) throws IOException {
+            final HttpRequest.Builder request =
+                    HttpRequest.newBuilder(uri).timeout(responseTimeout).method(
+                            method.name(),
+                            body.size() > 0
+                                    ? HttpRequest.BodyPublishers.ofByteArray(body.toByteArray())
+                                    : HttpRequest.BodyPublishers.noBody()
+                    );
+            final boolean passthrough = headers.containsKey(CompressedPassthroughExec.HEADER);
+            headers.forEach(
+                    (name, values) -> {
+                        if (!CONNECTION_HEADERS.contains(name.toLowerCase(Locale.ROOT))
+                                && !CompressedPassthroughExec.HEADER.equalsIgnoreCase(name)) {
+                            values.forEach(value -> request.header(name, value));
+                        }
+                    }
+            );
+            if (!passthrough) {
+                request.setHeader(HttpHeaders.ACCEPT_ENCODING, DEFAULT_ACCEPT_ENCODING);
+            }
+
+            final HttpResponse<InputStream> response;
+            try {
+                response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            } catch (HttpTimeoutException e) {
+                // reported like the timeouts of the Apache HTTP client
+                final SocketTimeoutException timeout = new SocketTimeoutException(e.getMessage());
+                timeout.initCause(e);
+                throw timeout;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                final InterruptedIOException interrupted =
+                        new InterruptedIOException("Request to " + uri + " interrupted");
+                interrupted.initCause(e);
+                throw interrupted;
+            }
+            return new Http2ClientHttpResponse(response, !passthrough);
+        }
+    }
+
+    private static final class Http2ClientHttpResponse implements ClientHttpResponse {
+
+        private final HttpResponse<InputStream> response;
+        private final HttpHeaders headers = new HttpHeaders();
+        private final String contentEncoding;
+        private InputStream body;
+
+        private Http2ClientHttpResponse(
+                final HttpResponse<InputStream> response,
+                final boolean decode
+        ) {
+            this.response = response;
+            for (final Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+                headers.addAll(header.getKey(), header.getValue());
+            }
+            final String encoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+            if (decode && isDecodable(encoding)) {
+                headers.remove(HttpHeaders.CONTENT_ENCODING);
+                headers.remove(HttpHeaders.CONTENT_LENGTH);
+                contentEncoding = encoding.trim().toLowerCase(Locale.ROOT);
+            } else {
+                contentEncoding = null;
+            }
+        }
+
+        private static boolean isDecodable(final String contentEncoding) {
+            if (contentEncoding == null) {
+                return false;
+            }
+            switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+                case "gzip":
+                case "x-gzip":
+                case "deflate":
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() {
+            return HttpStatusCode.valueOf(response.statusCode());
+        }
+
+        @Override
+        @Deprecated
+        public int getRawStatusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String getStatusText() {
+            final HttpStatus status = HttpStatus.resolve(response.statusCode());
+            return status != null ? status.getReasonPhrase() : "";
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+
+        /**
+         * Decodes the body on first access. Empty bodies, e.g. of HEAD requests, are not decoded.
+         */
+        @Override
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                if (contentEncoding == null) {
+                    body = response.body();
+                } else {
+                    final PushbackInputStream raw = new PushbackInputStream(response.body());
+                    final int first = raw.read();
+                    if (first == -1) {
+                        body = raw;
+                    } else {
+                        raw.unread(first);
+                        body =
+                                "deflate".equals(contentEncoding)
+                                        ? new InflaterInputStream(raw)
+                                        : new GZIPInputStream(raw);
+                    }
+                }
+            }
+            return body;
+        }
+
+        /**
+         * Closing the body before it was read completely cancels the exchange.
+         */
+        @Override
+        public void close() {
+            try {
+                (body != null ? body : response.body()).close();
+            } catch (IOException e) {
+                // nothing left to release
+            }
+        }
+    }
+}
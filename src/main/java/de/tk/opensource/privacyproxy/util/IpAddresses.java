@@ -0,0 +1,266 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Parses and formats textual IP addresses without {@link java.net.InetAddress}, which resolves
+ * anything that is not an address literal via DNS. Addresses are handled as their network order
+ * bytes, 4 for IPv4 and 16 for IPv6.
+ */
+public final class IpAddresses {
+
+    public static final int IPV4_LENGTH = 4;
+    public static final int IPV6_LENGTH = 16;
+
+    private static final int IPV6_GROUPS = 8;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private IpAddresses() {
+    }
+
+    /**
+     * Accepts dotted decimal IPv4 addresses and IPv6 addresses in full, compressed and mixed
+     * notation. A zone of an IPv6 address, e.g. {@code %eth0}, is ignored.
+     *
+     * @return the bytes of the address, or {@code null} if the text is not an IP address
+     */
+    @Nullable
+    public static byte[] parse(@Nullable final CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return null;
+        }
+        int end = text.length();
+        boolean ipv6 = false;
+        for (int i = 0; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c == ':') {
+                ipv6 = true;
+            } else if (c == '%' && ipv6) {
+                if (i == end - 1) {
+                    return null;
+                }
+                end = i;
+                break;
+            }
+        }
+        if (!ipv6) {
+            final byte[] address = new byte[IPV4_LENGTH];
+            return parseIpv4(text, 0, end, address, 0) ? address : null;
+        }
+        final byte[] address = new byte[IPV6_LENGTH];
+        return parseIpv6(text, end, address) ? address : null;
+    }
+
+    private static boolean parseIpv4(
+            final CharSequence text,
+            final int start,
+            final int end,
+            final byte[] address,
+            final int offset
+    ) {
+        int octet = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (++digits > 3 || value > 255) {
+                    return false;
+                }
+            } else if (c == '.' && digits > 0 && octet < IPV4_LENGTH - 1) {
+                address[offset + octet++] = (byte) value;
+                value = 0;
+                digits = 0;
+            } else {
+                return false;
+            }
+        }
+        if (digits == 0 || octet != IPV4_LENGTH - 1) {
+            return false;
+        }
+        address[offset + octet] = (byte) value;
+        return true;
+    }
+
+    private static boolean parseIpv6(final CharSequence text, final int end, final byte[] address) {
+        int group = 0;
+        int compressedAt = -1;
+        int i = 0;
+        if (text.charAt(0) == ':') {
+            if (end < 2 || text.charAt(1) != ':') {
+                return false;
+            }
+            compressedAt = 0;
+            i = 2;
+        }
+        while (i < end) {
+            if (group == IPV6_GROUPS) {
+                return false;
+            }
+            final int start = i;
+            int value = 0;
+            int digit;
+            while (i < end && (digit = hexDigit(text.charAt(i))) >= 0) {
+                value = (value << 4) | digit;
+                if (i - start == 4) {
+                    return false;
+                }
+                i++;
+            }
+            if (i < end && text.charAt(i) == '.') {
+                // dotted IPv4 in the last 32 bits
+                if (group > IPV6_GROUPS - 2 || !parseIpv4(text, start, end, address, group * 2)) {
+                    return false;
+                }
+                group += 2;
+                break;
+            }
+            if (i == start) {
+                return false;
+            }
+            address[group * 2] = (byte) (value >>> 8);
+            address[group * 2 + 1] = (byte) value;
+            group++;
+            if (i == end) {
+                break;
+            }
+            if (text.charAt(i) != ':' || ++i == end) {
+                return false;
+            }
+            if (text.charAt(i) == ':') {
+                if (compressedAt >= 0) {
+                    return false;
+                }
+                compressedAt = group;
+                i++;
+            }
+        }
+        if (compressedAt < 0) {
+            return group == IPV6_GROUPS;
+        }
+        if (group == IPV6_GROUPS) {
+            return false;
+        }
+        // move the groups following "::" to the end
+        final int shift = (IPV6_GROUPS - group) * 2;
+        for (int b = group * 2 - 1; b >= compressedAt * 2; b--) {
+            address[b + shift] = address[b];
+            address[b] = 0;
+        }
+        return true;
+    }
+
+    private static int hexDigit(final char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Sets all bits following the first {@code prefixLength} bits to zero.
+     */
+    public static void mask(final byte[] address, final int prefixLength) {
+        for (int i = 0; i < address.length; i++) {
+            final int bits = prefixLength - i * 8;
+            if (bits <= 0) {
+                address[i] = 0;
+            } else if (bits < 8) {
+                address[i] &= (byte) (0xFF << (8 - bits));
+            }
+        }
+    }
+
+    /**
+     * @return whether the IPv6 address embeds an IPv4 address as {@code ::ffff:a.b.c.d}
+     */
+    public static boolean isIpv4Mapped(final byte[] address) {
+        if (address.length != IPV6_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < 10; i++) {
+            if (address[i] != 0) {
+                return false;
+            }
+        }
+        return address[10] == (byte) 0xFF && address[11] == (byte) 0xFF;
+    }
+
+    /**
+     * Formats IPv4 addresses in dotted decimal and IPv6 addresses in the canonical form of RFC
+     * 5952: lower case, no leading zeros, the longest run of zero groups compressed. IPv4-mapped
+     * addresses keep their dotted IPv4 part.
+     */
+    public static String format(final byte[] address) {
+        if (address.length == IPV4_LENGTH) {
+            return appendIpv4(new StringBuilder(15), address, 0).toString();
+        }
+        final StringBuilder formatted = new StringBuilder(39);
+        if (isIpv4Mapped(address)) {
+            return appendIpv4(formatted.append("::ffff:"), address, 12).toString();
+        }
+
+        int runStart = -1;
+        int runLength = 0;
+        for (int group = 0; group < IPV6_GROUPS; group++) {
+            int length = 0;
+            while (group + length < IPV6_GROUPS && group(address, group + length) == 0) {
+                length++;
+            }
+            if (length > runLength && length > 1) {
+                runStart = group;
+                runLength = length;
+            }
+            group += length;
+        }
+
+        for (int group = 0; group < IPV6_GROUPS; group++) {
+            if (group == runStart) {
+                formatted.append("::");
+                group += runLength - 1;
+                continue;
+            }
+            if (formatted.length() > 0 && formatted.charAt(formatted.length() - 1) != ':') {
+                formatted.append(':');
+            }
+            appendHex(formatted, group(address, group));
+        }
+        return formatted.toString();
+    }
+
+    private static int group(final byte[] address, final int group) {
+        return ((address[group * 2] & 0xFF) << 8) | (address[group * 2 + 1] & 0xFF);
+    }
+
+    private static void appendHex(final StringBuilder formatted, final int value) {
+        boolean leading = true;
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            final int digit = (value >>> shift) & 0xF;
+            if (digit != 0 || !leading || shift == 0) {
+                formatted.append(HEX_DIGITS[digit]);
+                leading = false;
+            }
+        }
+    }
+
+    private static StringBuilder appendIpv4(
+            final StringBuilder formatted,
+            final byte[] address,
+            final int offset
+    ) {
+        for (int i = offset; i < offset + IPV4_LENGTH; i++) {
+            if (i > offset) {
+                formatted.append('.');
+            }
+            formatted.append(address[i] & 0xFF);
+        }
+        return formatted;
+    }
+}
@@ -0,0 +1,113 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.springframework.lang.Nullable;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Anonymizes IP addresses by keeping only a network prefix of configurable length per address
+ * family, e.g. /24 for IPv4 and /48 for IPv6. IPv4-mapped IPv6 addresses are treated like IPv4.
+ * The result is the masked address in canonical form.
+ * <p>
+ * Recently anonymized addresses are kept in a small direct-mapped cache: each address has exactly
+ * one slot, a newer address with the same slot replaces it. Reads and writes of a slot are single
+ * atomic operations, no lock is taken.
+ */
+public final class IpAnonymizer {
+
+    /**
+     * Zeroes the last two bytes of IPv4 and the last two groups of IPv6 addresses.
+     */
+    public static final IpAnonymizer DEFAULT = new IpAnonymizer(16, 96);
+
+    private static final int DEFAULT_CACHE_SIZE = 1024;
+    private static final int IPV4_MAPPED_PREFIX_LENGTH = 96;
+
+    private final int ipv4PrefixLength;
+    private final int ipv6PrefixLength;
+    @Nullable
+    private final AtomicReferenceArray<Entry> cache;
+    private final int cacheMask;
+
+    public IpAnonymizer(final int ipv4PrefixLength, final int ipv6PrefixLength) {
+        this(ipv4PrefixLength, ipv6PrefixLength, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param cacheSize number of cached addresses, rounded up to a power of two. 0 disables the
+     *                  cache.
+     */
+    public IpAnonymizer(final int ipv4PrefixLength, final int ipv6PrefixLength, final int cacheSize) {
+        if (ipv4PrefixLength < 0 || ipv4PrefixLength > IpAddresses.IPV4_LENGTH * 8) {
+            throw new IllegalArgumentException("Invalid IPv4 prefix length " + ipv4PrefixLength);
+        }
+        if (ipv6PrefixLength < 0 || ipv6PrefixLength > IpAddresses.IPV6_LENGTH * 8) {
+            throw new IllegalArgumentException("Invalid IPv6 prefix length " + ipv6PrefixLength);
+        }
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Invalid cache size " + cacheSize);
+        }
+        this.ipv4PrefixLength = ipv4PrefixLength;
+        this.ipv6PrefixLength = ipv6PrefixLength;
+        if (cacheSize == 0) {
+            this.cache = null;
+            this.cacheMask = 0;
+        } else {
+            final int slots = cacheSize == 1 ? 1 : Integer.highestOneBit(cacheSize - 1) << 1;
+            this.cache = new AtomicReferenceArray<>(slots);
+            this.cacheMask = slots - 1;
+        }
+    }
+
+    /**
+     * @return the anonymized address in canonical form, or the input if it is not an IP address
+     */
+    public String anonymize(final String ipAddress) {
+        if (cache == null || ipAddress == null) {
+            return mask(ipAddress);
+        }
+        final int hash = ipAddress.hashCode();
+        final int slot = (hash ^ (hash >>> 16)) & cacheMask;
+        final Entry entry = cache.get(slot);
+        if (entry != null && entry.address.equals(ipAddress)) {
+            return entry.anonymized;
+        }
+        final String anonymized = mask(ipAddress);
+        cache.set(slot, new Entry(ipAddress, anonymized));
+        return anonymized;
+    }
+
+    private String mask(final String ipAddress) {
+        final byte[] address = IpAddresses.parse(ipAddress);
+        if (address == null) {
+            return ipAddress;
+        }
+        if (address.length == IpAddresses.IPV4_LENGTH) {
+            IpAddresses.mask(address, ipv4PrefixLength);
+        } else if (IpAddresses.isIpv4Mapped(address)) {
+            IpAddresses.mask(address, IPV4_MAPPED_PREFIX_LENGTH + ipv4PrefixLength);
+        } else {
+            IpAddresses.mask(address, ipv6PrefixLength);
+        }
+        return IpAddresses.format(address);
+    }
+
+    public int getIpv4PrefixLength() {
+        return ipv4PrefixLength;
+    }
+
+    public int getIpv6PrefixLength() {
+        return ipv6PrefixLength;
+    }
+
+    private static final class Entry {
+
+        private final String address;
+        private final String anonymized;
+
+        private Entry(final String address, final String anonymized) {
+            this.address = address;
+            this.anonymized = anonymized;
+        }
+    }
+}
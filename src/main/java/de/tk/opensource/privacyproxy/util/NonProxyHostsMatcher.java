@@ -0,0 +1,110 @@
+package de.tk.opensource.privacyproxy.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The patterns of {@code http.nonProxyHosts}, parsed once. Matches a host name like {@linkplain
+ * ProxyHelper#matches(String, String)} does against each pattern, but without iterating over the
+ * patterns: exact names are looked up in a hash set, {@code *suffix} and {@code prefix*} patterns
+ * are matched with a single walk over the host name through a trie of the reversed suffixes and
+ * of the prefixes. Only {@code *infix*} patterns are checked one by one.
+ */
+final class NonProxyHostsMatcher {
+
+    private final boolean matchAll;
+    private final Set<String> exact = new HashSet<>();
+    private final Node reversedSuffixes = new Node();
+    private final Node prefixes = new Node();
+    private final List<String> infixes = new ArrayList<>();
+
+    /**
+     * @param nonProxyHosts patterns separated by '|'
+     */
+    NonProxyHostsMatcher(final String nonProxyHosts) {
+        boolean all = false;
+        for (final String rawPattern : nonProxyHosts.split("\\|")) {
+            final String pattern = rawPattern.trim();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            if (pattern.equals("*")) {
+                all = true;
+            } else if (pattern.startsWith("*") && pattern.endsWith("*")) {
+                infixes.add(pattern.substring(1, pattern.length() - 1));
+            } else if (pattern.startsWith("*")) {
+                reversedSuffixes.add(pattern, pattern.length() - 1, 0);
+            } else if (pattern.endsWith("*")) {
+                prefixes.add(pattern, 0, pattern.length() - 1);
+            } else {
+                exact.add(pattern);
+            }
+        }
+        this.matchAll = all;
+    }
+
+    /**
+     * @return true if the host matches any of the patterns, i.e. is reached without proxy
+     */
+    boolean matches(final String hostname) {
+        if (matchAll || exact.contains(hostname)) {
+            return true;
+        }
+        if (reversedSuffixes.matchesReversed(hostname) || prefixes.matches(hostname)) {
+            return true;
+        }
+        for (final String infix : infixes) {
+            if (hostname.contains(infix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Character trie. A node is terminal if a pattern ends there, any host continuing from a
+     * terminal node matches.
+     */
+    private static final class Node {
+
+        private final Map<Character, Node> children = new HashMap<>();
+        private boolean terminal;
+
+        /**
+         * Adds the characters of the pattern from {@code from} towards {@code to}, exclusive.
+         * Walks backwards if {@code from > to}.
+         */
+        private void add(final String pattern, final int from, final int to) {
+            final int step = from <= to ? 1 : -1;
+            Node node = this;
+            for (int i = from; i != to; i += step) {
+                node = node.children.computeIfAbsent(pattern.charAt(i), c -> new Node());
+            }
+            node.terminal = true;
+        }
+
+        private boolean matches(final String hostname) {
+            Node node = this;
+            for (int i = 0; !node.terminal; i++) {
+                if (i == hostname.length() || (node = node.children.get(hostname.charAt(i))) == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean matchesReversed(final String hostname) {
+            Node node = this;
+            for (int i = hostname.length() - 1; !node.terminal; i--) {
+                if (i < 0 || (node = node.children.get(hostname.charAt(i))) == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -9,9 +9,7 @@ import org.apache.hc.core5.http.protocol.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.MalformedURLException;
 import java.net.Proxy;
-import java.net.URL;
 
 public class PrivacyProxyRoutePlanner implements HttpRoutePlanner {
     private static final Logger LOGGER = LoggerFactory.getLogger(PrivacyProxyRoutePlanner.class);
@@ -27,23 +25,20 @@ public class PrivacyProxyRoutePlanner implements HttpRoutePlanner {
 
     @Override
     public HttpRoute determineRoute(HttpHost host, HttpContext context) throws HttpException {
-        try {
-            if (
-                    Proxy.NO_PROXY.equals(
-                            proxyHelper.selectProxy(new URL(host.toURI()))
-                    )
-            ) {
-                LOGGER.debug("No Proxy for - {}", host);
-                return new HttpRoute(host);
-            }
-        } catch (MalformedURLException e) {
-            LOGGER.error(
-                    "Could not build URL for proxy/no-proxy evaluation. Uri: '{}'",
-                    host.toURI(),
-                    e
-            );
+        if (Proxy.NO_PROXY.equals(proxyHelper.selectProxy(getHost(host)))) {
+            LOGGER.debug("No Proxy for - {}", host);
+            return new HttpRoute(host);
         }
         LOGGER.debug("Using Proxy for {}", host);
         return this.defaultPlanner.determineRoute(host, context);
     }
+
+    /**
+     * The host name as {@link java.net.URL#getHost()} returns it, IPv6 addresses are enclosed in
+     * brackets.
+     */
+    private static String getHost(final HttpHost host) {
+        final String hostName = host.getHostName();
+        return hostName.indexOf(':') >= 0 && !hostName.startsWith("[") ? "[" + hostName + "]" : hostName;
+    }
 }
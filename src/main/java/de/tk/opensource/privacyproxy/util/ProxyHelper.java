@@ -1,54 +1,144 @@
 package de.tk.opensource.privacyproxy.util;
 
+import de.tk.opensource.privacyproxy.config.proxy.ConnectionPoolProperties;
+import de.tk.opensource.privacyproxy.config.proxy.TimeoutProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.ConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.DnsResolver;
+import org.apache.hc.client5.http.SystemDefaultDnsResolver;
 import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.DefaultConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.impl.IdleConnectionEvictor;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
 import org.apache.hc.client5.http.impl.routing.SystemDefaultRoutePlanner;
+import org.apache.hc.client5.http.io.HttpClientConnectionManager;
 import org.apache.hc.client5.http.routing.HttpRoutePlanner;
 import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
 import org.apache.hc.core5.util.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.util.StringUtils;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
 import java.net.URL;
-import java.util.regex.Pattern;
-import java.util.stream.Stream;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToDoubleFunction;
 
-public class ProxyHelper {
+public class ProxyHelper implements Closeable {
 
     public static final int ROUTING_TIMEOUT_MILLISECONDS = 5000;
     private static final Logger LOGGER = LoggerFactory.getLogger(ProxyHelper.class);
+    private static final int MAX_CACHED_PROXY_DECISIONS = 1024;
 
     private final String proxyHost;
     private final Integer proxyPort;
     private final String nonProxyHosts;
     private final HttpHost httpProxyHost;
+    private final ConnectionPoolProperties connectionPoolProperties;
+    private final DnsResolver dnsResolver;
+    private final boolean virtualThreads;
+    private final Map<String, Proxy> proxyDecisions = new ConcurrentHashMap<>();
+    private volatile NonProxyHostsMatcher nonProxyHostsMatcher;
 
-    private Proxy proxy;
+    private final Proxy proxy;
     private HttpRoutePlanner proxyRoutePlanner;
+    private final Lock connectionManagerLock = new ReentrantLock();
+    private volatile PoolingHttpClientConnectionManager connectionManager;
+    private volatile HttpClientConnectionManager clientConnectionManager;
+    // guarded by connectionManagerLock
+    private IdleConnectionEvictor idleConnectionEvictor;
+    private boolean closed;
+    private final List<Closeable> dedicatedConnectionManagers = new CopyOnWriteArrayList<>();
 
     public ProxyHelper(Proxy proxy, final String proxyHost, final Integer proxyPort, final String nonProxyHosts) {
+        this(proxy, proxyHost, proxyPort, nonProxyHosts, new ConnectionPoolProperties());
+    }
+
+    public ProxyHelper(
+            Proxy proxy,
+            final String proxyHost,
+            final Integer proxyPort,
+            final String nonProxyHosts,
+            final ConnectionPoolProperties connectionPoolProperties
+    ) {
+        this(proxy, proxyHost, proxyPort, nonProxyHosts, connectionPoolProperties, 0);
+    }
+
+    /**
+     * @param dnsCacheTtlSeconds how long the pooled clients cache resolved addresses, see {@link
+     *                           CachingDnsResolver}. 0 leaves caching to the JVM.
+     */
+    public ProxyHelper(
+            Proxy proxy,
+            final String proxyHost,
+            final Integer proxyPort,
+            final String nonProxyHosts,
+            final ConnectionPoolProperties connectionPoolProperties,
+            final long dnsCacheTtlSeconds
+    ) {
+        this(proxy, proxyHost, proxyPort, nonProxyHosts, connectionPoolProperties, dnsCacheTtlSeconds, false);
+    }
+
+    /**
+     * @param virtualThreads true if requests are executed on virtual threads. Waiting for a pooled
+     *                       connection is then moved in front of each pool, see
+     *                       {@link ConnectionPermitManager}.
+     */
+    public ProxyHelper(
+            Proxy proxy,
+            final String proxyHost,
+            final Integer proxyPort,
+            final String nonProxyHosts,
+            final ConnectionPoolProperties connectionPoolProperties,
+            final long dnsCacheTtlSeconds,
+            final boolean virtualThreads
+    ) {
+        this.connectionPoolProperties = connectionPoolProperties;
+        this.dnsResolver =
+                dnsCacheTtlSeconds > 0
+                        ? new CachingDnsResolver(dnsCacheTtlSeconds)
+                        : SystemDefaultDnsResolver.INSTANCE;
         this.proxyHost = proxyHost;
         this.proxyPort = proxyPort;
         this.nonProxyHosts = nonProxyHosts;
-        this.proxy = proxy;
+        this.virtualThreads = virtualThreads;
+        // resolved once, selectProxy returns it for every proxied host
+        this.proxy =
+                proxy != null
+                        ? proxy
+                        : (proxyHost == null || proxyPort == null)
+                                ? Proxy.NO_PROXY
+                                : new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort));
         this.httpProxyHost = (this.proxyHost != null && this.proxyPort != null) ? new HttpHost(this.proxyHost, this.proxyPort) : null;
     }
 
-    private Proxy getProxy() {
-        if (proxy != null) {
-            return proxy;
-        }
-
-        return (proxyHost == null || proxyPort == null) 
-            ? Proxy.NO_PROXY 
-            : new Proxy(Proxy.Type.HTTP, new InetSocketAddress(proxyHost, proxyPort));
-    }
-
     public HttpRoutePlanner getProxyRoutePlanner() {
         if (proxyRoutePlanner == null) {
             if (getHttpProxyHost() != null) {
@@ -111,33 +201,331 @@ public class ProxyHelper {
      * excluded.
      */
     public Proxy selectProxy(URL url) {
+        return selectProxy(url.getHost());
+    }
+
+    /**
+     * Like {@linkplain #selectProxy(URL)}, for a host name as returned by {@link URL#getHost()}.
+     * The patterns are parsed once, the decision per host is cached.
+     */
+    public Proxy selectProxy(final String hostname) {
 
         // Skip evaluation if no proxy is configured at all
-        if (Proxy.NO_PROXY.equals(getProxy()) || !StringUtils.hasText(nonProxyHosts)) {
-            return getProxy();
+        if (Proxy.NO_PROXY.equals(proxy) || !StringUtils.hasText(nonProxyHosts)) {
+            return proxy;
         }
 
-        // The list of excluded host patterns is separated by '|'.
-        Stream<String> excluded = Pattern.compile(Pattern.quote("|")).splitAsStream(nonProxyHosts);
-
-        String hostname = url.getHost();
-        boolean isExcluded = excluded.anyMatch(pattern -> matches(hostname, pattern.trim()));
+        final Proxy cached = proxyDecisions.get(hostname);
+        if (cached != null) {
+            return cached;
+        }
+        NonProxyHostsMatcher matcher = nonProxyHostsMatcher;
+        if (matcher == null) {
+            matcher = new NonProxyHostsMatcher(nonProxyHosts);
+            nonProxyHostsMatcher = matcher;
+        }
 
-        Proxy selection = isExcluded ? Proxy.NO_PROXY : getProxy();
+        Proxy selection = matcher.matches(hostname) ? Proxy.NO_PROXY : proxy;
         LOGGER.debug("Using {} for {} ({})", selection, hostname, nonProxyHosts);
+        if (proxyDecisions.size() >= MAX_CACHED_PROXY_DECISIONS) {
+            // the hosts of the 3rd Party Providers fit many times, start over if they do not
+            proxyDecisions.clear();
+        }
+        proxyDecisions.put(hostname, selection);
         return selection;
     }
 
     public CloseableHttpClient getCloseableHttpClient() {
-        final RequestConfig requestConfig =
-                RequestConfig.custom().setConnectTimeout(Timeout.ofMilliseconds(ROUTING_TIMEOUT_MILLISECONDS))
-                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(ROUTING_TIMEOUT_MILLISECONDS)).setResponseTimeout(
-                                Timeout.ofMilliseconds(ROUTING_TIMEOUT_MILLISECONDS)
+        return HttpClients.custom().setDefaultRequestConfig(getRequestConfig()).setRoutePlanner(
+                        getProxyRoutePlanner()
+                )
+                .setConnectionManager(getClientConnectionManager())
+                .setConnectionManagerShared(true)
+                .setKeepAliveStrategy(getKeepAliveStrategy(connectionPoolProperties))
+                .addExecInterceptorBefore(
+                        ChainElement.COMPRESS.name(),
+                        CompressedPassthroughExec.NAME,
+                        new CompressedPassthroughExec()
+                )
+                .build();
+    }
+
+    /**
+     * Creates a client with a connection pool of its own, which is not shared with any other
+     * client of this helper. The pool is closed together with this helper.
+     */
+    public CloseableHttpClient createCloseableHttpClient(
+            final ConnectionPoolProperties poolProperties,
+            final TimeoutProperties timeoutProperties
+    ) {
+        final PoolingHttpClientConnectionManager dedicatedConnectionManager =
+                createConnectionManager(poolProperties);
+        final IdleConnectionEvictor dedicatedEvictor =
+                new IdleConnectionEvictor(
+                        dedicatedConnectionManager,
+                        TimeValue.ofSeconds(poolProperties.getIdleEvictionSeconds())
+                );
+        dedicatedEvictor.start();
+        dedicatedConnectionManagers.add(
+                () -> {
+                    dedicatedEvictor.shutdown();
+                    dedicatedConnectionManager.close(CloseMode.GRACEFUL);
+                }
+        );
+
+        return HttpClients.custom().setDefaultRequestConfig(getRequestConfig(timeoutProperties))
+                .setRoutePlanner(getProxyRoutePlanner())
+                .setConnectionManager(withPermits(dedicatedConnectionManager, poolProperties))
+                .setConnectionManagerShared(true)
+                .setKeepAliveStrategy(getKeepAliveStrategy(poolProperties))
+                .addExecInterceptorBefore(
+                        ChainElement.COMPRESS.name(),
+                        CompressedPassthroughExec.NAME,
+                        new CompressedPassthroughExec()
+                )
+                .build();
+    }
+
+    /**
+     * Creates and starts a non-blocking client for the asynchronous routing path. It applies the
+     * same proxy route planning, timeouts and pool limits as {@linkplain #getCloseableHttpClient()}
+     * but owns a separate connection pool, which is closed together with the client.
+     */
+    public CloseableHttpAsyncClient getCloseableHttpAsyncClient() {
+        return createCloseableHttpAsyncClient(connectionPoolProperties, new TimeoutProperties());
+    }
+
+    /**
+     * Creates and starts a non-blocking client with a connection pool and timeouts of its own,
+     * the asynchronous counterpart of {@linkplain #createCloseableHttpClient}. The client is
+     * closed together with this helper.
+     */
+    public CloseableHttpAsyncClient createDedicatedCloseableHttpAsyncClient(
+            final ConnectionPoolProperties poolProperties,
+            final TimeoutProperties timeoutProperties
+    ) {
+        final CloseableHttpAsyncClient client =
+                createCloseableHttpAsyncClient(poolProperties, timeoutProperties);
+        dedicatedConnectionManagers.add(() -> client.close(CloseMode.GRACEFUL));
+        return client;
+    }
+
+    private CloseableHttpAsyncClient createCloseableHttpAsyncClient(
+            final ConnectionPoolProperties poolProperties,
+            final TimeoutProperties timeoutProperties
+    ) {
+        final CloseableHttpAsyncClient client =
+                HttpAsyncClients.custom().setDefaultRequestConfig(getRequestConfig(timeoutProperties))
+                        .setRoutePlanner(getProxyRoutePlanner())
+                        .setConnectionManager(
+                                PoolingAsyncClientConnectionManagerBuilder.create()
+                                        .setDnsResolver(dnsResolver)
+                                        .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                                        .setMaxConnTotal(poolProperties.getMaxTotal())
+                                        .setMaxConnPerRoute(poolProperties.getMaxPerRoute())
+                                        .setValidateAfterInactivity(
+                                                TimeValue.ofMilliseconds(
+                                                        poolProperties.getValidateAfterInactivityMillis()
+                                                )
+                                        )
+                                        .build()
+                        )
+                        .setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_1)
+                        .setKeepAliveStrategy(getKeepAliveStrategy(poolProperties))
+                        .evictIdleConnections(
+                                TimeValue.ofSeconds(poolProperties.getIdleEvictionSeconds())
                         )
                         .build();
-        return HttpClients.custom().setDefaultRequestConfig(requestConfig).setRoutePlanner(
-                        getProxyRoutePlanner()
+        client.start();
+        return client;
+    }
+
+    /**
+     * Creates a request factory sending requests with HTTP/2 where the 3rd Party Provider supports
+     * it, see {@link Http2ClientHttpRequestFactory}. Proxies are selected per host with
+     * {@linkplain #selectProxy(URL)}, HTTPS requests through the proxy are tunnelled with CONNECT.
+     * Each factory multiplexes over connections of its own, which are not limited by the pool
+     * settings of this helper.
+     */
+    public ClientHttpRequestFactory createHttp2RequestFactory(final TimeoutProperties timeoutProperties) {
+        final HttpClient httpClient =
+                HttpClient.newBuilder().version(HttpClient.Version.HTTP_2)
+                        .connectTimeout(Duration.ofMillis(timeoutProperties.getConnectMillis()))
+                        .followRedirects(HttpClient.Redirect.NORMAL)
+                        .proxy(getProxySelector())
+                        .build();
+        return new Http2ClientHttpRequestFactory(
+                httpClient,
+                Duration.ofMillis(timeoutProperties.getResponseMillis())
+        );
+    }
+
+    /**
+     * The counterpart of {@linkplain #getProxyRoutePlanner()} for the HTTP client of the JDK.
+     */
+    private ProxySelector getProxySelector() {
+        if (Proxy.NO_PROXY.equals(proxy)) {
+            LOGGER.debug("No Proxy configured - Using System (JRE) Default");
+            final ProxySelector systemDefault = ProxySelector.getDefault();
+            return systemDefault != null ? systemDefault : HttpClient.Builder.NO_PROXY;
+        }
+        return new ProxySelector() {
+
+            @Override
+            public List<Proxy> select(final URI uri) {
+                final String hostname = uri.getHost();
+                return List.of(hostname != null ? selectProxy(hostname) : proxy);
+            }
+
+            @Override
+            public void connectFailed(final URI uri, final SocketAddress address, final IOException e) {
+                LOGGER.debug("Connecting {} via {} failed", uri, address, e);
+            }
+        };
+    }
+
+    private RequestConfig getRequestConfig() {
+        return getRequestConfig(new TimeoutProperties());
+    }
+
+    private static RequestConfig getRequestConfig(final TimeoutProperties timeoutProperties) {
+        return RequestConfig.custom().setConnectTimeout(Timeout.ofMilliseconds(timeoutProperties.getConnectMillis()))
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(timeoutProperties.getConnectionRequestMillis()))
+                .setResponseTimeout(Timeout.ofMilliseconds(timeoutProperties.getResponseMillis()))
+                .build();
+    }
+
+    /**
+     * The connection pool shared by all clients created by this helper. It is created on first
+     * access together with a background thread evicting idle connections.
+     *
+     * @throws IllegalStateException if this helper is closed
+     */
+    public PoolingHttpClientConnectionManager getConnectionManager() {
+        PoolingHttpClientConnectionManager manager = connectionManager;
+        if (manager == null) {
+            connectionManagerLock.lock();
+            try {
+                manager = connectionManager;
+                if (manager == null) {
+                    if (closed) {
+                        throw new IllegalStateException("Connection pool is closed");
+                    }
+                    manager = createConnectionManager(connectionPoolProperties);
+                    idleConnectionEvictor =
+                            new IdleConnectionEvictor(
+                                    manager,
+                                    TimeValue.ofSeconds(connectionPoolProperties.getIdleEvictionSeconds())
+                            );
+                    idleConnectionEvictor.start();
+                    clientConnectionManager = withPermits(manager, connectionPoolProperties);
+                    connectionManager = manager;
+                }
+            } finally {
+                connectionManagerLock.unlock();
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * The shared pool as leased from by the clients, with the permits of the pool in front if
+     * requests are executed on virtual threads. All clients of the pool lease through this one
+     * instance.
+     */
+    private HttpClientConnectionManager getClientConnectionManager() {
+        getConnectionManager();
+        return clientConnectionManager;
+    }
+
+    private HttpClientConnectionManager withPermits(
+            final PoolingHttpClientConnectionManager manager,
+            final ConnectionPoolProperties poolProperties
+    ) {
+        return virtualThreads
+                ? new ConnectionPermitManager(manager, poolProperties.getMaxTotal(), poolProperties.getMaxPerRoute())
+                : manager;
+    }
+
+    private PoolingHttpClientConnectionManager createConnectionManager(
+            final ConnectionPoolProperties poolProperties
+    ) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setDnsResolver(dnsResolver)
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setMaxConnTotal(poolProperties.getMaxTotal())
+                .setMaxConnPerRoute(poolProperties.getMaxPerRoute())
+                .setValidateAfterInactivity(
+                        TimeValue.ofMilliseconds(poolProperties.getValidateAfterInactivityMillis())
                 )
                 .build();
     }
+
+    /**
+     * @return leased, available, pending and max connections over all routes of the pool
+     */
+    public PoolStats getConnectionPoolStats() {
+        return getConnectionManager().getTotalStats();
+    }
+
+    /**
+     * Registers the connection counts of the shared pool as gauges {@code
+     * privacyproxy.connections.pool}, tagged with the state leased, available, pending or max.
+     */
+    public void bindTo(final MeterRegistry meterRegistry) {
+        bindPoolGauge(meterRegistry, "leased", PoolStats::getLeased);
+        bindPoolGauge(meterRegistry, "available", PoolStats::getAvailable);
+        bindPoolGauge(meterRegistry, "pending", PoolStats::getPending);
+        bindPoolGauge(meterRegistry, "max", PoolStats::getMax);
+    }
+
+    private void bindPoolGauge(
+            final MeterRegistry meterRegistry,
+            final String state,
+            final ToDoubleFunction<PoolStats> count
+    ) {
+        Gauge.builder(
+                        "privacyproxy.connections.pool",
+                        this,
+                        proxyHelper -> count.applyAsDouble(proxyHelper.getConnectionPoolStats())
+                )
+                .description("Connections of the pool shared by the routed requests")
+                .tag("state", state)
+                .register(meterRegistry);
+    }
+
+    private static ConnectionKeepAliveStrategy getKeepAliveStrategy(
+            final ConnectionPoolProperties poolProperties
+    ) {
+        final TimeValue maxKeepAlive = TimeValue.ofSeconds(poolProperties.getKeepAliveSeconds());
+        return (response, context) -> {
+            final TimeValue keepAlive =
+                    DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return TimeValue.isPositive(keepAlive) ? keepAlive.min(maxKeepAlive) : maxKeepAlive;
+        };
+    }
+
+    @Override
+    public void close() {
+        connectionManagerLock.lock();
+        try {
+            closed = true;
+            if (idleConnectionEvictor != null) {
+                idleConnectionEvictor.shutdown();
+            }
+            if (connectionManager != null) {
+                connectionManager.close(CloseMode.GRACEFUL);
+            }
+        } finally {
+            connectionManagerLock.unlock();
+        }
+        for (final Closeable dedicatedConnectionManager : dedicatedConnectionManagers) {
+            try {
+                dedicatedConnectionManager.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close connection pool", e);
+            }
+        }
+        dedicatedConnectionManagers.clear();
+    }
 }
@@ -0,0 +1,166 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.springframework.lang.Nullable;
+
+import java.net.URI;
+
+/**
+ * Assembles a query string, optionally directly behind the endpoint it is sent to. Values are
+ * percent-encoded straight into the target buffer like {@link java.net.URLEncoder} does with
+ * UTF-8, without intermediate strings or a charset lookup. The resulting {@link URI} is created
+ * from the buffer in one go instead of being parsed into components and reassembled.
+ */
+public final class QueryStringBuilder {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final boolean[] UNRESERVED = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        UNRESERVED['.'] = true;
+        UNRESERVED['-'] = true;
+        UNRESERVED['*'] = true;
+        UNRESERVED['_'] = true;
+    }
+
+    private final StringBuilder buffer;
+    private final int queryStart;
+
+    private QueryStringBuilder(final StringBuilder buffer) {
+        this.buffer = buffer;
+        this.queryStart = buffer.length();
+    }
+
+    /**
+     * @param expectedLength expected length of the query string, to size the buffer once
+     */
+    public static QueryStringBuilder forQueryString(final int expectedLength) {
+        return new QueryStringBuilder(new StringBuilder(expectedLength));
+    }
+
+    /**
+     * @param endpoint       endpoint without query and fragment, see {@link #isAppendable}
+     * @param expectedLength expected length of the query string, to size the buffer once
+     */
+    public static QueryStringBuilder forEndpoint(final String endpoint, final int expectedLength) {
+        final StringBuilder buffer = new StringBuilder(endpoint.length() + 1 + expectedLength);
+        buffer.append(endpoint).append('?');
+        return new QueryStringBuilder(buffer);
+    }
+
+    /**
+     * @return whether a query string can simply be appended to the endpoint, i.e. it has neither
+     * a query nor a fragment yet
+     */
+    public static boolean isAppendable(final String endpoint) {
+        return endpoint.indexOf('?') < 0 && endpoint.indexOf('#') < 0;
+    }
+
+    /**
+     * Appends a parameter whose value is already encoded.
+     */
+    public QueryStringBuilder appendRaw(final String name, @Nullable final String encodedValue) {
+        appendName(name);
+        if (encodedValue != null) {
+            buffer.append(encodedValue);
+        }
+        return this;
+    }
+
+    /**
+     * Appends a parameter and percent-encodes its value.
+     */
+    public QueryStringBuilder appendEncoded(final String name, @Nullable final String value) {
+        appendName(name);
+        if (value != null) {
+            encode(value, buffer);
+        }
+        return this;
+    }
+
+    private void appendName(final String name) {
+        if (buffer.length() > queryStart) {
+            buffer.append('&');
+        }
+        buffer.append(name).append('=');
+    }
+
+    public String toQueryString() {
+        return buffer.substring(queryStart);
+    }
+
+    /**
+     * @return the endpoint with the query string, without a trailing {@code ?} if no parameter
+     * was appended
+     * @throws IllegalArgumentException if the result is not a valid URI
+     */
+    public URI toUri() {
+        if (buffer.length() == queryStart) {
+            buffer.setLength(queryStart - 1);
+        }
+        return URI.create(buffer.toString());
+    }
+
+    /**
+     * @return the value in {@code application/x-www-form-urlencoded} format, identical to {@link
+     * java.net.URLEncoder#encode(String, java.nio.charset.Charset)} with UTF-8
+     */
+    public static String encode(final String value) {
+        final StringBuilder target = new StringBuilder(value.length() + 16);
+        encode(value, target);
+        return target.toString();
+    }
+
+    /**
+     * Appends the value in {@code application/x-www-form-urlencoded} format to the target.
+     */
+    public static void encode(final CharSequence value, final StringBuilder target) {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                if (UNRESERVED[c]) {
+                    target.append(c);
+                } else if (c == ' ') {
+                    target.append('+');
+                } else {
+                    appendEscaped(target, c);
+                }
+            } else if (c < 0x800) {
+                appendEscaped(target, 0xC0 | (c >> 6));
+                appendEscaped(target, 0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                if (
+                        Character.isHighSurrogate(c)
+                                && i + 1 < length
+                                && Character.isLowSurrogate(value.charAt(i + 1))
+                ) {
+                    final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    appendEscaped(target, 0xF0 | (codePoint >> 18));
+                    appendEscaped(target, 0x80 | ((codePoint >> 12) & 0x3F));
+                    appendEscaped(target, 0x80 | ((codePoint >> 6) & 0x3F));
+                    appendEscaped(target, 0x80 | (codePoint & 0x3F));
+                } else {
+                    // malformed input is replaced like the UTF-8 encoder does
+                    appendEscaped(target, '?');
+                }
+            } else {
+                appendEscaped(target, 0xE0 | (c >> 12));
+                appendEscaped(target, 0x80 | ((c >> 6) & 0x3F));
+                appendEscaped(target, 0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static void appendEscaped(final StringBuilder target, final int b) {
+        target.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+    }
+}
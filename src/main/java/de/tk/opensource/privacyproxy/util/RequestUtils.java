@@ -1,13 +1,8 @@
 package de.tk.opensource.privacyproxy.util;
 
-import org.apache.tomcat.util.net.IPv6Utils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
 
 import jakarta.servlet.http.HttpServletRequest;
-import java.io.UnsupportedEncodingException;
-import java.net.*;
-import java.nio.charset.StandardCharsets;
 
 public class RequestUtils {
 
@@ -17,10 +12,6 @@ public class RequestUtils {
                     "HTTP_X_FORWARDED", "HTTP_X_CLUSTER_CLIENT_IP", "HTTP_CLIENT_IP", "HTTP_FORWARDED_FOR",
                     "HTTP_FORWARDED", "HTTP_VIA", "REMOTE_ADDR"
             };
-    private static final Logger LOGGER = LoggerFactory.getLogger(RequestUtils.class);
-    private static final byte LENGTH_IPV4 = 4;
-    private static final byte LENGTH_IPV6 = 8;
-    private static final String IPV6_SHORT_FORM_SEPARATOR = "::";
 
     private RequestUtils() {
     }
@@ -49,99 +40,57 @@ public class RequestUtils {
      * @see #IP_HEADER_CANDIDATES
      */
     public static String getClientIpAddress(HttpServletRequest request, boolean obfuscate) {
+        return getClientIpAddress(request, obfuscate ? IpAnonymizer.DEFAULT : null);
+    }
+
+    /**
+     * Lookup IP address in request headers or use {@link HttpServletRequest#getRemoteAddr()} as
+     * fallback and anonymize IP address.
+     *
+     * @param request
+     * @param anonymizer the prefix lengths to keep, null to return the address as is
+     * @return ip address from request header, use {@link HttpServletRequest#getRemoteAddr()} as
+     * fallback
+     * @see #IP_HEADER_CANDIDATES
+     */
+    public static String getClientIpAddress(
+            HttpServletRequest request,
+            @Nullable IpAnonymizer anonymizer
+    ) {
         String ipAddress = request.getRemoteAddr(); // fallback
         for (String header : IP_HEADER_CANDIDATES) {
             String ipList = request.getHeader(header);
             if (ipList != null && ipList.length() != 0 && !"unknown".equalsIgnoreCase(ipList)) {
-                ipAddress = ipList.split(",")[0];
+                final int separator = ipList.indexOf(',');
+                ipAddress = separator >= 0 ? ipList.substring(0, separator) : ipList;
                 break;
             }
         }
 
-        if (obfuscate) {
-            ipAddress = obfuscateIpAddress(ipAddress);
+        if (anonymizer != null) {
+            ipAddress = anonymizer.anonymize(ipAddress);
         }
 
         return ipAddress;
     }
 
     /**
-     * Obfuscates last two bytes of an IP address (set to zero).
+     * Obfuscates last two bytes of an IP address (set to zero). For IPv6 addresses the last two
+     * groups are set to zero. The address is parsed as a literal, host names are never resolved.
      *
      * @param ipAddress
-     * @return obfuscated IP address if a valid one was found, input value otherwise
+     * @return obfuscated IP address in canonical form if a valid one was found, input value
+     * otherwise
+     * @see IpAnonymizer#DEFAULT
      */
     public static String obfuscateIpAddress(String ipAddress) {
-        try {
-            InetAddress address = InetAddress.getByName(ipAddress);
-            if (address instanceof Inet6Address) {
-                return obfuscateIpV6Address(ipAddress);
-
-            }
-            if (address instanceof Inet4Address) {
-                return obfuscateIpV4Address(ipAddress);
-            }
-        } catch (UnknownHostException e) {
-            LOGGER.debug(e.getMessage());
-        }
-        return ipAddress;
-    }
-
-    private static String obfuscateIpV4Address(String ipAddress) {
-        String[] addr = ipAddress.split("\\.");
-        if (addr.length == LENGTH_IPV4) {
-            addr[LENGTH_IPV4 - 2] = addr[LENGTH_IPV4 - 1] = "0";
-            return String.join(".", addr);
-        }
-        return ipAddress;
-    }
-
-    private static String obfuscateIpV6Address(String ipAddress) {
-        String[] addr = ipAddress.split("\\:");
-        int positionOfShortSeparator = ipAddress.indexOf(IPV6_SHORT_FORM_SEPARATOR);
-        if (
-                ipAddress.contains(IPV6_SHORT_FORM_SEPARATOR)
-                        && positionOfShortSeparator != ipAddress.length() - IPV6_SHORT_FORM_SEPARATOR
-                        .length()
-        ) {
-            addr =
-                    getFullIpV6Address(addr.length, positionOfShortSeparator, ipAddress).split("\\:");
-        }
-
-        if (addr.length == LENGTH_IPV6) {
-            addr[LENGTH_IPV6 - 2] = addr[LENGTH_IPV6 - 1] = "0";
-            return IPv6Utils.canonize(String.join(":", addr));
-        }
-        return ipAddress;
-    }
-
-    private static String getFullIpV6Address(
-            int amountOfIpv6Parts,
-            int positionOfShortSeparator,
-            String ipAddress
-    ) {
-        int startIndex = amountOfIpv6Parts;
-        StringBuilder stringBuilder = new StringBuilder();
-        if (positionOfShortSeparator != 0) {
-            stringBuilder.append(":");
-        } else {
-            startIndex = startIndex - 1;
-        }
-        for (int i = startIndex; i <= LENGTH_IPV6; i++) {
-            stringBuilder.append("0:");
-        }
-        return ipAddress.replace(IPV6_SHORT_FORM_SEPARATOR, stringBuilder.toString());
+        return IpAnonymizer.DEFAULT.anonymize(ipAddress);
     }
 
     /**
      * @return url encoded value
      */
     public static String urlencode(String value) {
-        try {
-            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
-        } catch (UnsupportedEncodingException e) {
-            LOGGER.error("Url encoding failed", e);
-            return "";
-        }
+        return QueryStringBuilder.encode(value);
     }
 }
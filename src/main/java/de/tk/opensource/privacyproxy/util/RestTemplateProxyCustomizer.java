@@ -1,5 +1,8 @@
 package de.tk.opensource.privacyproxy.util;
 
+import de.tk.opensource.privacyproxy.config.proxy.ConnectionPoolProperties;
+import de.tk.opensource.privacyproxy.config.proxy.TimeoutProperties;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.springframework.boot.web.client.RestTemplateCustomizer;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
@@ -7,19 +10,57 @@ import org.springframework.web.client.RestTemplate;
 public class RestTemplateProxyCustomizer implements RestTemplateCustomizer {
 
     private final ProxyHelper proxyHelper;
+    private final ConnectionPoolProperties dedicatedPool;
+    private final TimeoutProperties dedicatedTimeouts;
+    private CloseableHttpClient httpClient;
 
     public RestTemplateProxyCustomizer(
             ProxyHelper proxyHelper
+    ) {
+        this(proxyHelper, null, null);
+    }
+
+    /**
+     * Customizes the RestTemplate with a connection pool of its own instead of the pool shared by
+     * all clients of the {@link ProxyHelper}.
+     *
+     * @param dedicatedPool     pool settings, {@code null} to use the shared pool
+     * @param dedicatedTimeouts timeouts, ignored if the shared pool is used
+     */
+    public RestTemplateProxyCustomizer(
+            ProxyHelper proxyHelper,
+            ConnectionPoolProperties dedicatedPool,
+            TimeoutProperties dedicatedTimeouts
     ) {
         this.proxyHelper = proxyHelper;
+        this.dedicatedPool = dedicatedPool;
+        this.dedicatedTimeouts = dedicatedTimeouts != null ? dedicatedTimeouts : new TimeoutProperties();
     }
 
     @Override
     public void customize(RestTemplate restTemplate) {
-        restTemplate.setRequestFactory(
-                new HttpComponentsClientHttpRequestFactory(
-                        proxyHelper.getCloseableHttpClient()
-                )
-        );
+        restTemplate.setRequestFactory(new HttpComponentsClientHttpRequestFactory(getHttpClient()));
+    }
+
+    /**
+     * A RestTemplate on the same connection pool which streams request bodies to the connection
+     * instead of buffering them, for bodies of unknown size. It shares the HTTP client, and with it
+     * the connection permits of the pool, with the customized RestTemplates.
+     */
+    public RestTemplate createStreamingRestTemplate() {
+        final HttpComponentsClientHttpRequestFactory requestFactory =
+                new HttpComponentsClientHttpRequestFactory(getHttpClient());
+        requestFactory.setBufferRequestBody(false);
+        return new RestTemplate(requestFactory);
+    }
+
+    private synchronized CloseableHttpClient getHttpClient() {
+        if (httpClient == null) {
+            httpClient =
+                    dedicatedPool != null
+                            ? proxyHelper.createCloseableHttpClient(dedicatedPool, dedicatedTimeouts)
+                            : proxyHelper.getCloseableHttpClient();
+        }
+        return httpClient;
     }
 }
@@ -0,0 +1,57 @@
+package de.tk.opensource.privacyproxy.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads (Java 21+) while the library itself is still compiled against Java 17.
+ * All calls go through reflection, so the class can be loaded on older runtimes, where
+ * {@linkplain #isSupported()} simply returns false.
+ */
+public class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the running JVM is able to create virtual threads
+     */
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a factory for virtual threads named {@code namePrefix} followed by a counter.
+     *
+     * @param namePrefix prefix of the thread names
+     * @throws IllegalStateException if virtual threads are not supported by the running JVM
+     */
+    public static ThreadFactory newThreadFactory(String namePrefix) {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            final Method name = builderType.getMethod("name", String.class, long.class);
+            final Method factory = builderType.getMethod("factory");
+            return (ThreadFactory) factory.invoke(name.invoke(builder, namePrefix, 0L));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads require Java 21 or newer", e);
+        }
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for every task.
+     *
+     * @param namePrefix prefix of the thread names
+     * @throws IllegalStateException if virtual threads are not supported by the running JVM
+     */
+    public static Executor newThreadPerTaskExecutor(String namePrefix) {
+        final ThreadFactory threadFactory = newThreadFactory(namePrefix);
+        return task -> threadFactory.newThread(task).start();
+    }
+}
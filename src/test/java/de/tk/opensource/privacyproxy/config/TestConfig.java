@@ -7,7 +7,8 @@ import org.springframework.context.annotation.ComponentScan;
         basePackages =
                 {
                         "de.tk.opensource.privacyproxy.routing", "de.tk.opensource.privacyproxy.util",
-                        "de.tk.opensource.privacyproxy.config.proxy"
+                        "de.tk.opensource.privacyproxy.config.proxy",
+                        "de.tk.opensource.privacyproxy.config.routing"
                 }
 )
 @SpringBootConfiguration
@@ -0,0 +1,139 @@
+package de.tk.opensource.privacyproxy.delivery;
+
+import de.tk.opensource.privacyproxy.config.UrlPattern;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.aMapWithSize;
+import static org.hamcrest.Matchers.anEmptyMap;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+class AssetDeliveryControllerTest {
+
+    @TempDir
+    Path location;
+
+    private Path script;
+    private JavscriptDeliveryController controller;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.createDirectories(location.resolve("provider"));
+        script = Files.writeString(location.resolve("provider/tracker.js"), "track();");
+        Files.setLastModifiedTime(script, FileTime.fromMillis(1_600_000_000_000L));
+
+        controller = new JavscriptDeliveryController();
+        ReflectionTestUtils.setField(controller, "location", location.toString());
+        ReflectionTestUtils.setField(controller, "resourceLoader", new DefaultResourceLoader());
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void testConditionalGet() throws Exception {
+        final MockHttpServletResponse response = request("tracker.js", new HttpHeaders());
+        assertEquals(200, response.getStatus());
+        assertEquals("track();", response.getContentAsString(StandardCharsets.UTF_8));
+        assertThat(response.getHeaders(HttpHeaders.ETAG), hasSize(1));
+        assertThat(response.getHeaders(HttpHeaders.CACHE_CONTROL), contains("no-cache"));
+        final String etag = response.getHeader(HttpHeaders.ETAG);
+        final String lastModified = response.getHeader(HttpHeaders.LAST_MODIFIED);
+        assertEquals("Sun, 13 Sep 2020 12:26:40 GMT", lastModified);
+
+        final HttpHeaders ifNoneMatch = new HttpHeaders();
+        ifNoneMatch.set(HttpHeaders.IF_NONE_MATCH, etag);
+        final MockHttpServletResponse notModified = request("tracker.js", ifNoneMatch);
+        assertEquals(304, notModified.getStatus());
+        assertEquals(0, notModified.getContentLength());
+        assertThat(notModified.getHeaders(HttpHeaders.ETAG), contains(etag));
+        assertThat(notModified.getHeaders(HttpHeaders.CACHE_CONTROL), contains("no-cache"));
+
+        final HttpHeaders ifModifiedSince = new HttpHeaders();
+        ifModifiedSince.set(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        assertEquals(304, request("tracker.js", ifModifiedSince).getStatus());
+
+        // a new version of the asset
+        Files.writeString(script, "track(42);");
+        Files.setLastModifiedTime(script, FileTime.fromMillis(1_700_000_000_000L));
+        final MockHttpServletResponse modified = request("tracker.js", ifNoneMatch);
+        assertEquals(200, modified.getStatus());
+        assertEquals("track(42);", modified.getContentAsString(StandardCharsets.UTF_8));
+        assertThat(modified.getHeaders(HttpHeaders.ETAG), not(contains(etag)));
+    }
+
+    @Test
+    void testMissingAsset() throws Exception {
+        assertEquals(404, request("missing.js", new HttpHeaders()).getStatus());
+    }
+
+    @Test
+    void testRemovedAssetIsForgotten() throws Exception {
+        assertEquals(200, request("tracker.js", new HttpHeaders()).getStatus());
+        assertThat(assetVersions(), hasKey(endsWith("/provider/tracker.js")));
+
+        Files.delete(script);
+        assertEquals(404, request("tracker.js", new HttpHeaders()).getStatus());
+        assertThat(assetVersions(), anEmptyMap());
+    }
+
+    @Test
+    void testPatternsShareTheVersionOfTheFile() throws Exception {
+        assertEquals(200, request("tracker.js", new HttpHeaders()).getStatus());
+        assertEquals(HttpStatus.OK, controller.getScript("provider", "t*.js").getStatusCode());
+        assertEquals(HttpStatus.OK, controller.getScript("provider", "?racker.js").getStatusCode());
+        assertThat(assetVersions(), aMapWithSize(1));
+    }
+
+    @Test
+    void testRecentlyModifiedAssetIsReadAgain() throws Exception {
+        final FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        Files.setLastModifiedTime(script, now);
+        assertEquals("track();", request("tracker.js", new HttpHeaders()).getContentAsString());
+
+        // same size and, within the resolution of the file system, the same modification time
+        Files.writeString(script, "trace();");
+        Files.setLastModifiedTime(script, now);
+        assertEquals("trace();", request("tracker.js", new HttpHeaders()).getContentAsString());
+    }
+
+    @Test
+    void testUnconditionalDelivery() throws Exception {
+        final ResponseEntity<?> response = controller.getScript("provider", "tracker.js");
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertThat(response.getHeaders().get(HttpHeaders.ETAG), hasSize(1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ?> assetVersions() {
+        return (Map<String, ?>) ReflectionTestUtils.getField(controller, "assetVersions");
+    }
+
+    private MockHttpServletResponse request(final String asset, final HttpHeaders headers)
+            throws Exception {
+        return mockMvc.perform(get(UrlPattern.Contexts.DELIVERY + "/provider/" + asset).headers(headers))
+                .andReturn()
+                .getResponse();
+    }
+}
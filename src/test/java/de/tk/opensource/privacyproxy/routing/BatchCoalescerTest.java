@@ -0,0 +1,69 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+
+class BatchCoalescerTest {
+
+    private static BatchedRequest request(final String query) {
+        return new BatchedRequest(
+                "https://localhost/batch",
+                URI.create("https://localhost/batch?" + query),
+                new HttpHeaders(),
+                null
+        );
+    }
+
+    @Test
+    void testFullBatchIsSentImmediately() throws InterruptedException {
+        final BlockingQueue<List<BatchedRequest>> sent = new LinkedBlockingQueue<>();
+        final BatchCoalescer coalescer = new BatchCoalescer("test", 2, 60_000, sent::add);
+
+        coalescer.add(request("a=1"));
+        coalescer.add(request("a=2"));
+        coalescer.add(request("a=3"));
+
+        final List<BatchedRequest> batch = sent.poll(1, TimeUnit.SECONDS);
+        assertThat(batch, hasSize(2));
+        assertThat(batch.get(0).getUri().getRawQuery(), equalTo("a=1"));
+        assertThat(batch.get(1).getUri().getRawQuery(), equalTo("a=2"));
+        assertThat(sent.poll(), nullValue());
+
+        coalescer.shutdown();
+        assertThat(sent.poll(), hasSize(1));
+    }
+
+    @Test
+    void testPartialBatchIsSentAfterDelay() throws InterruptedException {
+        final BlockingQueue<List<BatchedRequest>> sent = new LinkedBlockingQueue<>();
+        final BatchCoalescer coalescer = new BatchCoalescer("test", 10, 50, sent::add);
+
+        coalescer.add(request("a=1"));
+
+        assertThat(sent.poll(5, TimeUnit.SECONDS), hasSize(1));
+        coalescer.shutdown();
+        assertThat(sent.poll(), nullValue());
+    }
+
+    @Test
+    void testRequestAfterShutdownIsSentDirectly() {
+        final BlockingQueue<List<BatchedRequest>> sent = new LinkedBlockingQueue<>();
+        final BatchCoalescer coalescer = new BatchCoalescer("test", 10, 60_000, sent::add);
+        coalescer.shutdown();
+
+        coalescer.add(request("a=1"));
+
+        assertThat(sent.poll(), hasSize(1));
+    }
+}
@@ -0,0 +1,82 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import de.tk.opensource.privacyproxy.config.routing.CircuitBreakerProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private CircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        final CircuitBreakerProperties properties = new CircuitBreakerProperties();
+        properties.setFailureRateThreshold(50);
+        properties.setMinimumNumberOfCalls(4);
+        properties.setSlidingWindowSeconds(10);
+        properties.setWaitDurationInOpenStateSeconds(30);
+        properties.setPermittedCallsInHalfOpenState(2);
+        circuitBreaker = new CircuitBreaker(properties, now::get);
+    }
+
+    private void openCircuit() {
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+        circuitBreaker.onFailure();
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    void testOpensAtFailureRateAndClosesAfterSuccessfulTrials() {
+        openCircuit();
+        assertThat(circuitBreaker.tryAcquirePermission(), equalTo(false));
+
+        now.set(30_000);
+        assertThat(circuitBreaker.tryAcquirePermission(), equalTo(true));
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.HALF_OPEN));
+        assertThat(circuitBreaker.tryAcquirePermission(), equalTo(true));
+        // only two trial calls are permitted
+        assertThat(circuitBreaker.tryAcquirePermission(), equalTo(false));
+
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+        assertThat(circuitBreaker.countCalls(), equalTo(new long[]{0, 0}));
+    }
+
+    @Test
+    void testFailedTrialReopens() {
+        openCircuit();
+
+        now.set(30_000);
+        assertThat(circuitBreaker.tryAcquirePermission(), equalTo(true));
+        circuitBreaker.onFailure();
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.OPEN));
+
+        now.set(59_999);
+        assertThat(circuitBreaker.tryAcquirePermission(), equalTo(false));
+    }
+
+    @Test
+    void testOldOutcomesLeaveTheWindow() {
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+
+        now.set(10_000);
+        assertThat(circuitBreaker.countCalls(), equalTo(new long[]{0, 0}));
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+    }
+}
@@ -0,0 +1,55 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import com.sun.net.httpserver.HttpServer;
+import de.tk.opensource.privacyproxy.config.proxy.WarmUpProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class ConnectionWarmUpTest {
+
+    @Test
+    void testEndpointsReceiveHeadRequests() throws IOException {
+        final AtomicInteger headRequests = new AtomicInteger();
+        final HttpServer upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext(
+                "/",
+                exchange -> {
+                    if ("HEAD".equals(exchange.getRequestMethod())) {
+                        headRequests.incrementAndGet();
+                    }
+                    // not found still means the connection is established
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                }
+        );
+        upstream.start();
+        try {
+            final WarmUpProperties properties = new WarmUpProperties();
+            properties.setConnectionsPerHost(3);
+            final Map<URI, RestTemplate> endpoints = new LinkedHashMap<>();
+            endpoints.put(
+                    URI.create("http://localhost:" + upstream.getAddress().getPort() + "/collect"),
+                    new RestTemplate()
+            );
+            // nothing listens on port 1
+            endpoints.put(URI.create("http://localhost:1/collect"), new RestTemplate());
+
+            final int succeeded = new ConnectionWarmUp(null, properties).warmUp(endpoints);
+
+            assertThat(succeeded, equalTo(3));
+            assertThat(headRequests.get(), equalTo(3));
+        } finally {
+            upstream.stop(0);
+        }
+    }
+}
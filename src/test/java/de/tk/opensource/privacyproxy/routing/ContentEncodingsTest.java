@@ -0,0 +1,45 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class ContentEncodingsTest {
+
+    @Test
+    void testNegotiate() {
+        assertThat(ContentEncodings.negotiate("gzip, deflate, br, zstd"), equalTo("br, gzip, deflate"));
+        assertThat(ContentEncodings.negotiate("GZIP;q=0.8, br;q=0"), equalTo("gzip"));
+        assertThat(ContentEncodings.negotiate("*;q=0.1, deflate;q=0"), equalTo("br, gzip"));
+        assertThat(ContentEncodings.negotiate("identity"), nullValue());
+        assertThat(ContentEncodings.negotiate(null), nullValue());
+    }
+
+    @Test
+    void testDecode() throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write("tracked".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (
+                InputStream decoded =
+                        ContentEncodings.decode(
+                                new ByteArrayInputStream(compressed.toByteArray()),
+                                " GZIP "
+                        )
+        ) {
+            assertThat(new String(decoded.readAllBytes(), StandardCharsets.UTF_8), equalTo("tracked"));
+        }
+        assertThat(ContentEncodings.decode(new ByteArrayInputStream(new byte[0]), "br"), nullValue());
+    }
+}
@@ -0,0 +1,60 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+class DebugCaptureTest {
+
+    @Test
+    void testRenderTruncatesAndDecodesTextualContent() {
+        final byte[] body = "{\"id\":1234567890}".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(
+                DebugCapture.render(body, 6, body.length, MediaType.APPLICATION_JSON),
+                equalTo("{\"id\":... (6 of 17 bytes)")
+        );
+        assertThat(
+                DebugCapture.render(body, body.length, body.length, MediaType.TEXT_PLAIN),
+                equalTo("{\"id\":1234567890}")
+        );
+        assertThat(
+                DebugCapture.render(new byte[] {(byte) 0xCA, (byte) 0xFE}, 2, 2, MediaType.IMAGE_GIF),
+                equalTo("cafe")
+        );
+    }
+
+    @Test
+    void testTeeCapturesAtMostMaxBytesInReusedBuffers() {
+        final DebugCapture capture = new DebugCapture(1, 4);
+        final byte[] chunk = "abcdef".getBytes(StandardCharsets.US_ASCII);
+
+        final DebugCapture.Tee tee = capture.startTee();
+        tee.write(chunk, 0, 3);
+        tee.write(chunk, 3, 3);
+        assertThat(tee.render(MediaType.TEXT_PLAIN), equalTo("abcd... (4 of 6 bytes)"));
+        tee.release();
+
+        final DebugCapture.Tee[] tees = new DebugCapture.Tee[4];
+        for (int i = 0; i < tees.length; i++) {
+            tees[i] = capture.startTee();
+            assertThat(tees[i], notNullValue());
+        }
+        // all buffers are in use, the request is not captured
+        assertThat(capture.startTee(), nullValue());
+        tees[0].release();
+        assertThat(capture.startTee(), notNullValue());
+    }
+
+    @Test
+    void testNothingIsCapturedWithoutSampleRate() {
+        assertThat(new DebugCapture(0, 1024).startTee(), nullValue());
+        assertThat(new DebugCapture(1, 0).startTee(), nullValue());
+    }
+}
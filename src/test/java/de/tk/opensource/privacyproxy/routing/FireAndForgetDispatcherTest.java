@@ -0,0 +1,78 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import de.tk.opensource.privacyproxy.config.QueueOverflowPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+
+class FireAndForgetDispatcherTest {
+
+    @Test
+    void testDropNewest() throws InterruptedException {
+        assertThat(dispatchFourRequests(QueueOverflowPolicy.DROP_NEWEST), contains(1, 2));
+    }
+
+    @Test
+    void testDropOldest() throws InterruptedException {
+        assertThat(dispatchFourRequests(QueueOverflowPolicy.DROP_OLDEST), contains(1, 4));
+    }
+
+    @Test
+    void testQueuedOnlyRequestsDropOldestInsteadOfCallerRuns() throws InterruptedException {
+        assertThat(dispatchFourRequests(QueueOverflowPolicy.CALLER_RUNS, true), contains(1, 4));
+    }
+
+    /**
+     * One worker and room for one queued request. The first request blocks the worker, so the
+     * second one is queued and the two following overflow.
+     */
+    private List<Integer> dispatchFourRequests(final QueueOverflowPolicy overflowPolicy)
+            throws InterruptedException {
+        return dispatchFourRequests(overflowPolicy, false);
+    }
+
+    private List<Integer> dispatchFourRequests(
+            final QueueOverflowPolicy overflowPolicy,
+            final boolean queuedOnly
+    ) throws InterruptedException {
+        final FireAndForgetDispatcher dispatcher =
+                new FireAndForgetDispatcher("test", 1, 1, overflowPolicy);
+        final List<Integer> sent = new CopyOnWriteArrayList<>();
+        final CountDownLatch workerBlocked = new CountDownLatch(1);
+        final CountDownLatch releaseWorker = new CountDownLatch(1);
+
+        dispatcher.dispatch(
+                () -> {
+                    workerBlocked.countDown();
+                    try {
+                        releaseWorker.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    sent.add(1);
+                }
+        );
+        workerBlocked.await(5, TimeUnit.SECONDS);
+        for (int i = 2; i <= 4; i++) {
+            final int request = i;
+            if (queuedOnly) {
+                dispatcher.dispatchQueued(() -> sent.add(request));
+            } else {
+                dispatcher.dispatch(() -> sent.add(request));
+            }
+        }
+        assertThat(dispatcher.getQueueSize(), equalTo(1));
+        assertThat(dispatcher.getDroppedCount(), equalTo(2L));
+
+        releaseWorker.countDown();
+        assertThat(dispatcher.shutdown(5, TimeUnit.SECONDS), equalTo(0));
+        return sent;
+    }
+}
@@ -1,7 +1,43 @@
 package de.tk.opensource.privacyproxy.routing;
 
+import org.springframework.http.HttpEntity;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 @Component
 public class MyRoutingHandler extends RoutingHandler {
+
+    @Override
+    protected HttpEntity<?> mergeBatch(final List<BatchedRequest> batch) {
+        return new HttpEntity<>(
+                batch.stream().map(r -> r.getUri().getRawQuery()).collect(Collectors.joining("\n"))
+        );
+    }
+
+    @Override
+    protected int getBatchMaxSize() {
+        return 2;
+    }
+
+    @Override
+    protected int getResponseCacheMaxEntries() {
+        return 100;
+    }
+
+    @Override
+    protected long getSingleFlightMaxWaitMillis() {
+        return 5000;
+    }
+
+    @Override
+    protected String[] getBlacklistedBodyPaths() {
+        return new String[]{"user.id"};
+    }
+
+    @Override
+    protected boolean isCompressedPassthrough() {
+        return true;
+    }
 }
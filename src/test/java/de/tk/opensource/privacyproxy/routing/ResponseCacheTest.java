@@ -0,0 +1,108 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+class ResponseCacheTest {
+
+    private static ResponseEntity<Resource> response(final int bodySize) {
+        return ResponseEntity.ok(new ByteArrayResource(new byte[bodySize]));
+    }
+
+    private static HttpHeaders upstreamHeaders(final String headerName, final String headerValue) {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.add(headerName, headerValue);
+        return headers;
+    }
+
+    @Test
+    void testFreshness() {
+        final ResponseCache cache = new ResponseCache(10, 1000, 30_000, () -> 1_000_000L);
+
+        assertThat(cache.freshnessMillis(new HttpHeaders()), equalTo(30_000L));
+        assertThat(
+                cache.freshnessMillis(upstreamHeaders("Cache-Control", "public, max-age=60")),
+                equalTo(60_000L)
+        );
+        assertThat(
+                cache.freshnessMillis(upstreamHeaders("Cache-Control", "max-age=60, s-maxage=5")),
+                equalTo(5_000L)
+        );
+        assertThat(cache.freshnessMillis(upstreamHeaders("Cache-Control", "no-store")), equalTo(0L));
+        assertThat(
+                cache.freshnessMillis(upstreamHeaders("Cache-Control", "private, max-age=60")),
+                equalTo(0L)
+        );
+        assertThat(cache.freshnessMillis(upstreamHeaders("Set-Cookie", "id=1")), equalTo(0L));
+        assertThat(cache.freshnessMillis(upstreamHeaders("Expires", "0")) <= 0, equalTo(true));
+
+        final HttpHeaders expires = new HttpHeaders();
+        expires.setDate(1_000_000L);
+        expires.setExpires(1_010_000L);
+        assertThat(cache.freshnessMillis(expires), equalTo(10_000L));
+    }
+
+    @Test
+    void testFreshnessSubtractsAge() {
+        final ResponseCache cache = new ResponseCache(10, 1000, 30_000, () -> 1_000_000L);
+
+        final HttpHeaders aged = upstreamHeaders("Cache-Control", "max-age=60");
+        aged.add(HttpHeaders.AGE, "45");
+        assertThat(cache.freshnessMillis(aged), equalTo(15_000L));
+
+        final HttpHeaders stale = upstreamHeaders("Cache-Control", "max-age=60");
+        stale.add(HttpHeaders.AGE, "600");
+        assertThat(cache.freshnessMillis(stale), equalTo(0L));
+        cache.put("stale", stale, response(10));
+        assertThat(cache.get("stale"), nullValue());
+    }
+
+    @Test
+    void testExpiry() {
+        final AtomicLong now = new AtomicLong();
+        final ResponseCache cache = new ResponseCache(10, 1000, 1000, now::get);
+        cache.put("key", new HttpHeaders(), response(10));
+
+        assertThat(cache.get("key"), notNullValue());
+        now.set(1000);
+        assertThat(cache.get("key"), nullValue());
+        assertThat(cache.size(), equalTo(0));
+        assertThat(cache.getHitCount(), equalTo(1L));
+        assertThat(cache.getMissCount(), equalTo(1L));
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        final ResponseCache cache = new ResponseCache(2, 1000, 1000);
+        cache.put("a", new HttpHeaders(), response(10));
+        cache.put("b", new HttpHeaders(), response(10));
+        cache.get("a");
+        cache.put("c", new HttpHeaders(), response(10));
+
+        assertThat(cache.get("a"), notNullValue());
+        assertThat(cache.get("b"), nullValue());
+        assertThat(cache.get("c"), notNullValue());
+
+        // weight limit: the new entry pushes out both others
+        cache.put("d", new HttpHeaders(), response(990));
+        assertThat(cache.size(), equalTo(1));
+        assertThat(cache.weight(), equalTo(991L));
+
+        // never cached: not 200 or heavier than the whole cache
+        cache.put("e", new HttpHeaders(), ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+        cache.put("f", new HttpHeaders(), response(2000));
+        assertThat(cache.get("e"), nullValue());
+        assertThat(cache.get("f"), nullValue());
+    }
+}
@@ -1,37 +1,51 @@
 package de.tk.opensource.privacyproxy.routing;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 import de.tk.opensource.privacyproxy.config.TestConfig;
+import de.tk.opensource.privacyproxy.config.routing.RoutingProperties;
 import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.client.ExpectedCount;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.util.MultiValueMap;
 import org.springframework.util.MultiValueMapAdapter;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
@@ -48,6 +62,13 @@ class RoutingHandlerSpringTest {
     @Autowired
     private RestTemplate restTemplate;
 
+    @Autowired
+    @Qualifier("streamingRestTemplate")
+    private RestTemplate streamingRestTemplate;
+
+    @Autowired
+    private RoutingProperties routingProperties;
+
     private static void requestTo(
             final ClientHttpRequest request,
             final String expectedUrl,
@@ -146,4 +167,506 @@ class RoutingHandlerSpringTest {
                 equalTo(responseBodyString)
         );
     }
+
+    @Test
+    void testHandleRawQueryRequestInternal() {
+        mockServer.expect(
+                        r -> assertEquals(
+                                "https://localhost/1337/raw?e[]=view&e[]=click&url=a%2Fb%3Fc",
+                                r.getURI().toString()
+                        )
+                )
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withStatus(HttpStatus.NO_CONTENT));
+
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setQueryString("e[]=view&e[]=click&url=a%2Fb%3Fc");
+        final ResponseEntity<Resource> responseEntity =
+                routingHandler.handleRawQueryRequestInternal(
+                        "https://localhost/1337/raw",
+                        request,
+                        null,
+                        HttpMethod.GET
+                );
+
+        mockServer.verify();
+        assertThat(responseEntity.getStatusCode(), equalTo(HttpStatus.NO_CONTENT));
+    }
+
+    @Test
+    void testHandleFilteredBodyRequestInternal() throws IOException {
+        final HttpServer upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        final Map<String, String> receivedRequest = new HashMap<>();
+        upstream.createContext("/1337/json", exchange -> receive(exchange, receivedRequest));
+        upstream.start();
+        try {
+            final MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            request.setContent(
+                    "{\"user\":{\"id\":4711,\"plan\":\"basic\"},\"e\":[1,2]}"
+                            .getBytes(StandardCharsets.UTF_8)
+            );
+            final ResponseEntity<Resource> responseEntity =
+                    routingHandler.handleFilteredBodyRequestInternal(
+                            "http://localhost:" + upstream.getAddress().getPort() + "/1337/json",
+                            null,
+                            request,
+                            HttpMethod.POST
+                    );
+
+            assertThat(receivedRequest.get("method"), equalTo("POST"));
+            assertThat(receivedRequest.get("contentType"), equalTo(MediaType.APPLICATION_JSON_VALUE));
+            assertThat(
+                    receivedRequest.get("body"),
+                    equalTo("{\"user\":{\"plan\":\"basic\"},\"e\":[1,2]}")
+            );
+            assertThat(responseEntity.getStatusCode(), equalTo(HttpStatus.NO_CONTENT));
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    void testHandleFilteredBodyRequestInternalConvertsJsonToUtf8() throws IOException {
+        final HttpServer upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        final Map<String, String> receivedRequest = new HashMap<>();
+        upstream.createContext("/1337/json", exchange -> receive(exchange, receivedRequest));
+        upstream.start();
+        try {
+            final MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setContentType("application/json;charset=ISO-8859-1");
+            request.setContent(
+                    "{\"user\":{\"id\":4711,\"city\":\"Lübeck\"}}".getBytes(StandardCharsets.ISO_8859_1)
+            );
+            final ResponseEntity<Resource> responseEntity =
+                    routingHandler.handleFilteredBodyRequestInternal(
+                            "http://localhost:" + upstream.getAddress().getPort() + "/1337/json",
+                            null,
+                            request,
+                            HttpMethod.POST
+                    );
+
+            assertThat(responseEntity.getStatusCode(), equalTo(HttpStatus.NO_CONTENT));
+            assertThat(
+                    MediaType.parseMediaType(receivedRequest.get("contentType")).getCharset(),
+                    equalTo(StandardCharsets.UTF_8)
+            );
+            assertThat(receivedRequest.get("body"), equalTo("{\"user\":{\"city\":\"Lübeck\"}}"));
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    void testHandleFilteredBodyRequestInternalStreamsLargeBodies() throws IOException {
+        final HttpServer upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        final Map<String, String> receivedRequest = new HashMap<>();
+        upstream.createContext("/1337/json", exchange -> receive(exchange, receivedRequest));
+        upstream.start();
+        try {
+            // far larger than the buffers of the filter and the connection
+            final StringBuilder events = new StringBuilder("{\"user\":{\"id\":4711},\"e\":[");
+            final StringBuilder filteredEvents = new StringBuilder("{\"user\":{},\"e\":[");
+            for (int i = 0; i < 100_000; i++) {
+                final String event = (i > 0 ? "," : "") + "{\"n\":" + i + "}";
+                events.append(event);
+                filteredEvents.append(event);
+            }
+            events.append("]}");
+            filteredEvents.append("]}");
+
+            final MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            request.setContent(events.toString().getBytes(StandardCharsets.UTF_8));
+            final ResponseEntity<Resource> responseEntity =
+                    routingHandler.handleFilteredBodyRequestInternal(
+                            "http://localhost:" + upstream.getAddress().getPort() + "/1337/json",
+                            null,
+                            request,
+                            HttpMethod.POST
+                    );
+
+            assertThat(responseEntity.getStatusCode(), equalTo(HttpStatus.NO_CONTENT));
+            // a buffered body would have been sent with its Content-Length
+            assertThat(receivedRequest.get("transferEncoding"), equalTo("chunked"));
+            assertThat(receivedRequest.get("contentLength"), nullValue());
+            assertThat(receivedRequest.get("body"), equalTo(filteredEvents.toString()));
+            assertThat(
+                    routingHandler.getProviderGroup().getStreamingRestTemplate(),
+                    sameInstance(streamingRestTemplate)
+            );
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    void testHandleFilteredBodyRequestInternalRejectsMalformedBody() throws IOException {
+        final HttpServer upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext("/1337/json", exchange -> receive(exchange, new HashMap<>()));
+        upstream.start();
+        try {
+            final String targetEndpoint =
+                    "http://localhost:" + upstream.getAddress().getPort() + "/1337/json";
+            final MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            request.setContent("{\"user\":".getBytes(StandardCharsets.UTF_8));
+            assertThat(
+                    routingHandler.handleFilteredBodyRequestInternal(
+                            targetEndpoint,
+                            null,
+                            request,
+                            HttpMethod.POST
+                    ).getStatusCode(),
+                    equalTo(HttpStatus.BAD_REQUEST)
+            );
+
+            request.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            assertThat(
+                    routingHandler.handleFilteredBodyRequestInternal(
+                            targetEndpoint,
+                            null,
+                            request,
+                            HttpMethod.POST
+                    ).getStatusCode(),
+                    equalTo(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+            );
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    /**
+     * Records the request in {@code receivedRequest} and responds with 204.
+     */
+    private static void receive(
+            final HttpExchange exchange,
+            final Map<String, String> receivedRequest
+    ) throws IOException {
+        receivedRequest.put("method", exchange.getRequestMethod());
+        receivedRequest.put("contentType", exchange.getRequestHeaders().getFirst("Content-Type"));
+        receivedRequest.put(
+                "transferEncoding",
+                exchange.getRequestHeaders().getFirst("Transfer-Encoding")
+        );
+        receivedRequest.put(
+                "contentLength",
+                exchange.getRequestHeaders().getFirst("Content-Length")
+        );
+        receivedRequest.put(
+                "body",
+                IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8)
+        );
+        exchange.sendResponseHeaders(204, -1);
+        exchange.close();
+    }
+
+    @Test
+    void testHandleGenericRequestStreaming() throws IOException {
+        final String responseBodyString = "[1,2,3,4,5,6]";
+        final Map<String, String> queryParams = new HashMap<>();
+        queryParams.put("id", "1234");
+
+        mockServer.expect(r -> requestTo(r, "https://localhost/1337/stream", queryParams)).andExpect(
+                        method(HttpMethod.GET)
+                )
+                .andRespond(
+                        withStatus(HttpStatus.OK).contentType(MediaType.IMAGE_GIF).body(
+                                responseBodyString.getBytes()
+                        )
+                );
+
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        routingHandler.handleGenericRequestStreaming(
+                "https://localhost/1337/stream",
+                queryParams,
+                request,
+                null,
+                HttpMethod.GET,
+                response
+        );
+
+        mockServer.verify();
+        assertThat(response.getStatus(), equalTo(HttpStatus.OK.value()));
+        assertThat(response.getContentType(), equalTo(MediaType.IMAGE_GIF_VALUE));
+        assertThat(response.getHeader("Cache-Control"), equalTo("no-cache"));
+        assertThat(response.getContentAsString(), equalTo(responseBodyString));
+    }
+
+    @Test
+    void testHandleGenericRequestStreamingUpstreamError() {
+        mockServer.expect(r -> requestTo(r, "https://localhost/1337/stream", Map.of())).andRespond(
+                withStatus(HttpStatus.INTERNAL_SERVER_ERROR)
+        );
+
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        routingHandler.handleGenericRequestStreaming(
+                "https://localhost/1337/stream",
+                null,
+                new MockHttpServletRequest(),
+                null,
+                HttpMethod.GET,
+                response
+        );
+
+        mockServer.verify();
+        assertThat(response.getStatus(), equalTo(HttpStatus.GATEWAY_TIMEOUT.value()));
+    }
+
+    @Test
+    void testHandleGenericRequestAsync() throws Exception {
+        final HttpServer upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        final Map<String, String> receivedRequest = new HashMap<>();
+        upstream.createContext(
+                "/1337/async",
+                exchange -> {
+                    receivedRequest.put("method", exchange.getRequestMethod());
+                    receivedRequest.put("query", exchange.getRequestURI().getRawQuery());
+                    receivedRequest.put(
+                            "body",
+                            IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8)
+                    );
+                    final byte[] responseBody = "[1,2,3,4,5,6]".getBytes();
+                    exchange.getResponseHeaders().add("Content-Type", MediaType.IMAGE_GIF_VALUE);
+                    exchange.getResponseHeaders().add("Set-Cookie", "not=whitelisted");
+                    exchange.sendResponseHeaders(200, responseBody.length);
+                    exchange.getResponseBody().write(responseBody);
+                    exchange.close();
+                }
+        );
+        upstream.start();
+        try {
+            final Map<String, String> queryParams = new HashMap<>();
+            queryParams.put("id", "1234");
+
+            final ResponseEntity<Resource> responseEntity =
+                    routingHandler.handleGenericRequestAsync(
+                            "http://localhost:" + upstream.getAddress().getPort() + "/1337/async",
+                            queryParams,
+                            new MockHttpServletRequest(),
+                            "endpoint?key=1337",
+                            HttpMethod.POST
+                    ).get(5, TimeUnit.SECONDS);
+
+            assertThat(receivedRequest.get("method"), equalTo("POST"));
+            assertThat(receivedRequest.get("query"), equalTo("id=1234"));
+            assertThat(receivedRequest.get("body"), equalTo("endpoint?key=1337"));
+            assertThat(responseEntity.getStatusCode(), equalTo(HttpStatus.OK));
+            assertThat(responseEntity.getHeaders().getContentType(), equalTo(MediaType.IMAGE_GIF));
+            assertThat(responseEntity.getHeaders().containsKey("Set-Cookie"), equalTo(false));
+            assertThat(
+                    IOUtils.toString(responseEntity.getBody().getInputStream(), StandardCharsets.UTF_8),
+                    equalTo("[1,2,3,4,5,6]")
+            );
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    void testHandleGenericRequestAsyncUpstreamError() throws Exception {
+        final HttpServer upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext(
+                "/1337/async",
+                exchange -> {
+                    exchange.sendResponseHeaders(503, -1);
+                    exchange.close();
+                }
+        );
+        upstream.start();
+        try {
+            final ResponseEntity<Resource> responseEntity =
+                    routingHandler.handleGenericRequestAsync(
+                            "http://localhost:" + upstream.getAddress().getPort() + "/1337/async",
+                            null,
+                            new MockHttpServletRequest(),
+                            null,
+                            HttpMethod.GET
+                    ).get(5, TimeUnit.SECONDS);
+
+            assertThat(responseEntity.getStatusCode(), equalTo(HttpStatus.GATEWAY_TIMEOUT));
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    void testHandleFireAndForgetRequestInternal() {
+        final Map<String, String> queryParams = new HashMap<>();
+        queryParams.put("id", "1234");
+
+        mockServer.expect(r -> requestTo(r, "https://localhost/1337/beacon", queryParams)).andExpect(
+                        method(HttpMethod.POST)
+                )
+                .andExpect(content().string("endpoint?key=1337"))
+                .andRespond(withStatus(HttpStatus.OK));
+
+        final ResponseEntity<Resource> responseEntity =
+                routingHandler.handleFireAndForgetRequestInternal(
+                        "https://localhost/1337/beacon",
+                        queryParams,
+                        new MockHttpServletRequest(),
+                        "endpoint?key=1337",
+                        HttpMethod.POST
+                );
+
+        assertThat(responseEntity.getStatusCode(), equalTo(HttpStatus.NO_CONTENT));
+        mockServer.verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testHandleBatchedRequestInternal() {
+        mockServer.expect(r -> requestTo(r, "https://localhost/1337/bulk", Map.of())).andExpect(
+                        method(HttpMethod.POST)
+                )
+                .andExpect(content().string("id=1\nid=2"))
+                .andRespond(withStatus(HttpStatus.OK));
+
+        for (int i = 1; i <= 2; i++) {
+            final ResponseEntity<Resource> responseEntity =
+                    routingHandler.handleBatchedRequestInternal(
+                            "https://localhost/1337/bulk",
+                            new HashMap<>(Map.of("id", String.valueOf(i))),
+                            new MockHttpServletRequest(),
+                            null
+                    );
+            assertThat(responseEntity.getStatusCode(), equalTo(HttpStatus.NO_CONTENT));
+        }
+
+        mockServer.verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void testHandleGenericRequestInternalCachedGet() throws IOException {
+        final Map<String, String> queryParams = Map.of("id", "1234");
+        mockServer.expect(r -> requestTo(r, "https://localhost/1337/config", queryParams)).andRespond(
+                withStatus(HttpStatus.OK).contentType(MediaType.APPLICATION_JSON)
+                        .header("Cache-Control", "public, max-age=60")
+                        .body("{}")
+        );
+
+        for (int i = 0; i < 2; i++) {
+            final ResponseEntity<Resource> responseEntity =
+                    routingHandler.handleGenericRequestInternal(
+                            "https://localhost/1337/config",
+                            new HashMap<>(queryParams),
+                            new MockHttpServletRequest(),
+                            null,
+                            HttpMethod.GET
+                    );
+            assertThat(responseEntity.getStatusCode(), equalTo(HttpStatus.OK));
+            assertThat(
+                    IOUtils.toString(responseEntity.getBody().getInputStream(), StandardCharsets.UTF_8),
+                    equalTo("{}")
+            );
+        }
+        mockServer.verify();
+    }
+
+    @Test
+    void testHandleGenericRequestInternalCompressedPassthrough() throws IOException {
+        final byte[] compressed = gzip("[1,2,3,4,5,6]");
+        mockServer.expect(r -> requestTo(r, "https://localhost/1337/gz", Map.of())).andExpect(
+                        r -> assertEquals("gzip", r.getHeaders().getFirst(HttpHeaders.ACCEPT_ENCODING))
+                )
+                .andRespond(
+                        withStatus(HttpStatus.OK).contentType(MediaType.APPLICATION_JSON)
+                                .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                                .body(compressed)
+                );
+
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip;q=1.0, identity; q=0.5, *;q=0");
+        final ResponseEntity<Resource> responseEntity =
+                routingHandler.handleGenericRequestInternal(
+                        "https://localhost/1337/gz",
+                        null,
+                        request,
+                        null,
+                        HttpMethod.GET
+                );
+
+        mockServer.verify();
+        assertThat(responseEntity.getStatusCode(), equalTo(HttpStatus.OK));
+        assertThat(responseEntity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), equalTo("gzip"));
+        assertThat(responseEntity.getHeaders().getVary(), equalTo(List.of(HttpHeaders.ACCEPT_ENCODING)));
+        assertThat(responseEntity.getBody().getContentAsByteArray(), equalTo(compressed));
+    }
+
+    @Test
+    void testHandleGenericRequestInternalCompressedFallback() throws IOException {
+        // the 3rd Party Provider ignores the advertised encodings
+        mockServer.expect(r -> requestTo(r, "https://localhost/1337/deflate", Map.of())).andRespond(
+                withStatus(HttpStatus.OK).contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                        .body(gzip("[1,2,3,4,5,6]"))
+        );
+
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "br, deflate");
+        final ResponseEntity<Resource> responseEntity =
+                routingHandler.handleGenericRequestInternal(
+                        "https://localhost/1337/deflate",
+                        null,
+                        request,
+                        null,
+                        HttpMethod.GET
+                );
+
+        mockServer.verify();
+        assertThat(responseEntity.getStatusCode(), equalTo(HttpStatus.OK));
+        assertThat(responseEntity.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING), equalTo(false));
+        assertThat(
+                IOUtils.toString(responseEntity.getBody().getInputStream(), StandardCharsets.UTF_8),
+                equalTo("[1,2,3,4,5,6]")
+        );
+    }
+
+    private static byte[] gzip(final String content) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+
+    @Test
+    void testCircuitBreakerShortCircuitsFailingUpstream() {
+        // circuit breakers are opt-in
+        routingProperties.getCircuitBreaker().setEnabled(true);
+        try {
+            mockServer.expect(
+                            ExpectedCount.times(20),
+                            r -> requestTo(r, "https://localhost.failing/1337", Map.of())
+                    )
+                    .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+
+            for (int i = 0; i < 20; i++) {
+                final ResponseEntity<Resource> responseEntity =
+                        routingHandler.handleGenericRequestInternal(
+                                "https://localhost.failing/1337",
+                                null,
+                                new MockHttpServletRequest(),
+                                null,
+                                HttpMethod.POST
+                        );
+                assertThat(responseEntity.getStatusCode(), equalTo(HttpStatus.GATEWAY_TIMEOUT));
+            }
+
+            // the 21st request is not sent anymore
+            final ResponseEntity<Resource> responseEntity =
+                    routingHandler.handleGenericRequestInternal(
+                            "https://localhost.failing/1337",
+                            null,
+                            new MockHttpServletRequest(),
+                            null,
+                            HttpMethod.POST
+                    );
+            mockServer.verify();
+            assertThat(responseEntity.getStatusCode(), equalTo(HttpStatus.SERVICE_UNAVAILABLE));
+        } finally {
+            routingProperties.getCircuitBreaker().setEnabled(false);
+        }
+    }
 }
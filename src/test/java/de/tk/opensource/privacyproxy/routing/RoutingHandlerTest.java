@@ -1,24 +1,52 @@
 package de.tk.opensource.privacyproxy.routing;
 
 import de.tk.opensource.privacyproxy.config.CookieNameMatchType;
+import de.tk.opensource.privacyproxy.config.routing.ProviderGroupProperties;
+import de.tk.opensource.privacyproxy.config.routing.RoutingProperties;
+import de.tk.opensource.privacyproxy.util.ProxyHelper;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
 
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class RoutingHandlerTest {
 
@@ -68,6 +96,39 @@ class RoutingHandlerTest {
                 };
 
         assertEquals("param=some+value", handler.filterQueryString(parameter));
+        assertEquals(2, parameter.size(), "the parameters of the caller must not change");
+    }
+
+    @Test
+    void testRawQueryStringFiltered() {
+        RoutingHandler handler =
+                new RoutingHandler() {
+                    @Override
+                    protected String[] getBlacklistedQueryParams() {
+                        return new String[]{"restricted", "uid"};
+                    }
+                };
+
+        assertEquals(
+                "ids[]=1&ids[]=2&q=a%2Cb+c&flag&ids[]=3",
+                handler.filterRawQueryString(
+                        "ids[]=1&restricted=x&ids[]=2&&q=a%2Cb+c&u%69d=4711&flag&ids[]=3&uid"
+                )
+        );
+        assertEquals("", handler.filterRawQueryString("restricted=x"));
+    }
+
+    @Test
+    void testRawQueryStringTransformed() {
+        RoutingHandler handler =
+                new RoutingHandler() {
+                    @Override
+                    protected String transformQueryParam(String name, String value) {
+                        return "q".equals(name) ? value.toUpperCase() : value;
+                    }
+                };
+
+        assertEquals("q=A,B C&x=1&x=2", handler.filterRawQueryString("q=a%2Cb+c&x=1&x=2"));
     }
 
     @Test
@@ -138,6 +199,37 @@ class RoutingHandlerTest {
         assertThat(whitelistedRequestHeaders.get("Cookie"), contains("key=schnippen dippen"));
     }
 
+    @Test
+    void testAnonymizedClientIpAddress() {
+        final RoutingHandler handler =
+                new RoutingHandler() {
+                    @Override
+                    protected int getAnonymizedIpv4PrefixLength() {
+                        return 24;
+                    }
+
+                    @Override
+                    protected int getAnonymizedIpv6PrefixLength() {
+                        return 48;
+                    }
+                };
+
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("X-Forwarded-For", "203.0.113.17, 10.0.0.1");
+        assertEquals("203.0.113.0", handler.getAnonymizedClientIpAddress(request));
+
+        request.removeHeader("X-Forwarded-For");
+        request.setRemoteAddr("2001:db8:85a3:8d3:1319:8a2e:370:7348");
+        assertEquals("2001:db8:85a3::", handler.getAnonymizedClientIpAddress(request));
+
+        request.setRemoteAddr("198.51.100.42");
+        assertEquals(
+                "198.51.0.0",
+                new RoutingHandler() {
+                }.getAnonymizedClientIpAddress(request)
+        );
+    }
+
     @Test
     void testAddWhitelistedCookiesByPrefix() {
         final RoutingHandler handler =
@@ -197,6 +289,38 @@ class RoutingHandlerTest {
         assertThat(headers.get("Cookie"), contains("wt_rla=1337; path=/"));
     }
 
+    @Test
+    void testAddWhitelistedCookiesByOverlappingPrefixes() {
+        final RoutingHandler handler =
+                new RoutingHandler() {
+                    @Override
+                    protected String[] getWhitelistedCookieNames() {
+                        return new String[]{"wt", "wt_", "_ga"};
+                    }
+
+                    @Override
+                    protected CookieNameMatchType getCookieNameMatchType() {
+                        return CookieNameMatchType.PREFIX;
+                    }
+                };
+
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(
+                new Cookie("_gat", "1"),
+                new Cookie("w", "2"),
+                new Cookie("wt_rla", "1337"),
+                new Cookie("_g", "3"),
+                new Cookie("wteid_111", "111")
+        );
+
+        final HttpHeaders headers = new HttpHeaders();
+        handler.addWhitelistedCookies(request, headers);
+        assertThat(
+                headers.get("Cookie"),
+                contains("_gat=1; path=/; wt_rla=1337; path=/; wteid_111=111; path=/")
+        );
+    }
+
     @Test
     void testFilterRequestBody() {
         final Map<String, String> requestBody = new HashMap<>();
@@ -221,4 +345,355 @@ class RoutingHandlerTest {
         assertDoesNotThrow(() -> new RoutingHandler() {
         }.filterRequestBody(null));
     }
+
+    @Test
+    void testFilterConfigurationIsEvaluatedOnce() {
+        final AtomicInteger calls = new AtomicInteger();
+        final RoutingHandler handler =
+                new RoutingHandler() {
+                    @Override
+                    protected String[] getWhitelistedRequestHeaders() {
+                        calls.incrementAndGet();
+                        return new String[]{"user-agent"};
+                    }
+                };
+
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("user-agent", "Mozilla/5.0");
+        handler.getRequestHeaders(request);
+        handler.getRequestHeaders(request);
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    void testBatchingWithoutMergeBatchFailsAtStartup() {
+        final RoutingHandler handler =
+                new RoutingHandler() {
+                    @Override
+                    protected int getBatchMaxSize() {
+                        return 10;
+                    }
+                };
+
+        final IllegalStateException e =
+                assertThrows(IllegalStateException.class, handler::afterSingletonsInstantiated);
+        assertThat(e.getMessage(), containsString("mergeBatch"));
+    }
+
+    @Test
+    void testBatchedRequestWithoutMergeBatchIsRejected() {
+        final RoutingHandler handler = new RoutingHandler() {
+        };
+        handler.afterSingletonsInstantiated();
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> handler.handleBatchedRequestInternal(
+                        "https://localhost/batch",
+                        null,
+                        new MockHttpServletRequest(),
+                        null
+                )
+        );
+    }
+
+    @Test
+    void testWhitelistResponseHeadersIgnoreCase() {
+        final RoutingHandler handler =
+                new RoutingHandler() {
+                    @Override
+                    protected String[] getWhitelistedResponseHeaders() {
+                        return new String[]{"Set-Cookie", "set-cookie"};
+                    }
+                };
+
+        final HttpHeaders mockHeaders = new HttpHeaders();
+        mockHeaders.add("set-cookie", "schnippen dippen");
+
+        final HttpHeaders whitelistedHeaders = handler.whitelistResponseHeaders(mockHeaders);
+        assertThat(whitelistedHeaders.get("Set-Cookie"), contains("schnippen dippen"));
+    }
+
+    @Test
+    void testProviderGroupRejectsWhenSaturated() {
+        final ProviderGroupProperties tracking = new ProviderGroupProperties();
+        tracking.setMaxConcurrentRequests(1);
+        final RoutingProperties routingProperties = new RoutingProperties();
+        routingProperties.getGroups().put("tracking", tracking);
+        final ProviderGroupRegistry registry =
+                new ProviderGroupRegistry(
+                        routingProperties,
+                        new ProxyHelper(null, null, null, null)
+                );
+        assertThat(registry.getProviderGroup("unknown"), nullValue());
+        assertThat(
+                registry.getProviderGroup("tracking"),
+                sameInstance(registry.getProviderGroup("tracking"))
+        );
+
+        final RoutingHandler handler =
+                new RoutingHandler() {
+                    @Override
+                    protected String getProviderGroupName() {
+                        return "tracking";
+                    }
+                };
+        ReflectionTestUtils.setField(handler, "providerGroupRegistry", registry);
+        final ProviderGroup group = handler.getProviderGroup();
+        assertThat(group, sameInstance(registry.getProviderGroup("tracking")));
+        assertThat(group.getRestTemplate(), not(nullValue()));
+
+        // the only permit is taken by a request in flight
+        assertThat(group.tryAcquire(), is(true));
+        final ResponseEntity<Resource> responseEntity =
+                handler.handleGenericRequestInternal(
+                        "https://localhost/tracking",
+                        null,
+                        new MockHttpServletRequest(),
+                        null,
+                        HttpMethod.POST
+                );
+        assertThat(responseEntity.getStatusCode(), is(HttpStatus.SERVICE_UNAVAILABLE));
+        group.release();
+        assertThat(group.tryAcquire(), is(true));
+    }
+
+    @Test
+    void testAsyncRequestFailuresReleaseThePermit() throws Exception {
+        final RoutingHandler handler =
+                new RoutingHandler() {
+                    @Override
+                    protected HttpHeaders whitelistResponseHeaders(final HttpHeaders sourceHeaders) {
+                        throw new IllegalStateException("broken whitelist");
+                    }
+                };
+        // a group sending through the shared asynchronous client
+        final ProviderGroup group = new ProviderGroup("tracking", new RestTemplate(), new Semaphore(1));
+        ReflectionTestUtils.setField(handler, "providerGroup", group);
+
+        // the client rejects the request synchronously
+        final CloseableHttpAsyncClient stoppedClient = HttpAsyncClients.createDefault();
+        stoppedClient.close();
+        ReflectionTestUtils.setField(handler, "httpAsyncClient", objectProvider(stoppedClient));
+        assertThat(
+                sendAsync(handler, "http://localhost:1/tracking").getStatusCode(),
+                is(HttpStatus.GATEWAY_TIMEOUT)
+        );
+        assertThat(group.tryAcquire(), is(true));
+        group.release();
+
+        // the response cannot be converted
+        final HttpServer upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext(
+                "/tracking",
+                exchange -> {
+                    exchange.sendResponseHeaders(200, -1);
+                    exchange.close();
+                }
+        );
+        upstream.start();
+        try (CloseableHttpAsyncClient client = HttpAsyncClients.createDefault()) {
+            client.start();
+            ReflectionTestUtils.setField(handler, "httpAsyncClient", objectProvider(client));
+            assertThat(
+                    sendAsync(
+                            handler,
+                            "http://localhost:" + upstream.getAddress().getPort() + "/tracking"
+                    ).getStatusCode(),
+                    is(HttpStatus.GATEWAY_TIMEOUT)
+            );
+            assertThat(group.tryAcquire(), is(true));
+            group.release();
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    void testAsyncRequestUsesTheTimeoutsOfTheProviderGroup() throws Exception {
+        final ProviderGroupProperties tracking = new ProviderGroupProperties();
+        tracking.getTimeouts().setResponseMillis(200);
+        final RoutingProperties routingProperties = new RoutingProperties();
+        routingProperties.getGroups().put("tracking", tracking);
+        final HttpServer upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext(
+                "/tracking",
+                exchange -> {
+                    try {
+                        // the I/O reactor checks timeouts once per second
+                        Thread.sleep(3000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    exchange.sendResponseHeaders(200, -1);
+                    exchange.close();
+                }
+        );
+        upstream.start();
+        try (
+                ProxyHelper proxyHelper = new ProxyHelper(null, null, null, null);
+                CloseableHttpAsyncClient sharedClient = HttpAsyncClients.createDefault()
+        ) {
+            sharedClient.start();
+            final RoutingHandler handler =
+                    new RoutingHandler() {
+                        @Override
+                        protected String getProviderGroupName() {
+                            return "tracking";
+                        }
+                    };
+            ReflectionTestUtils.setField(
+                    handler,
+                    "providerGroupRegistry",
+                    new ProviderGroupRegistry(routingProperties, proxyHelper)
+            );
+            ReflectionTestUtils.setField(handler, "httpAsyncClient", objectProvider(sharedClient));
+
+            // the shared client would wait for the response
+            assertThat(
+                    sendAsync(
+                            handler,
+                            "http://localhost:" + upstream.getAddress().getPort() + "/tracking"
+                    ).getStatusCode(),
+                    is(HttpStatus.GATEWAY_TIMEOUT)
+            );
+            assertThat(handler.getProviderGroup().getHttpAsyncClient(), not(nullValue()));
+        } finally {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    void testSingleFlightSharesCacheableResponses() throws Exception {
+        assertThat(countUpstreamCallsOfConcurrentRequests(200, null), is(1));
+    }
+
+    @Test
+    void testSingleFlightDoesNotShareResponsesSettingCookies() throws Exception {
+        assertThat(countUpstreamCallsOfConcurrentRequests(200, "session=4711"), is(3));
+    }
+
+    @Test
+    void testSingleFlightDoesNotShareFailures() throws Exception {
+        assertThat(countUpstreamCallsOfConcurrentRequests(503, null), is(3));
+    }
+
+    /**
+     * Sends three identical GET requests while the first one is in flight.
+     *
+     * @return the number of requests the upstream received
+     */
+    private static int countUpstreamCallsOfConcurrentRequests(
+            final int status,
+            final String setCookie
+    ) throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch firstCallStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstCall = new CountDownLatch(1);
+        final HttpServer upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.setExecutor(Executors.newCachedThreadPool());
+        upstream.createContext(
+                "/flight",
+                exchange -> {
+                    if (calls.incrementAndGet() == 1) {
+                        firstCallStarted.countDown();
+                        try {
+                            releaseFirstCall.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    if (setCookie != null) {
+                        exchange.getResponseHeaders().add(HttpHeaders.SET_COOKIE, setCookie);
+                    }
+                    exchange.sendResponseHeaders(status, -1);
+                    exchange.close();
+                }
+        );
+        upstream.start();
+        final RoutingHandler handler =
+                new RoutingHandler() {
+                    @Override
+                    protected long getSingleFlightMaxWaitMillis() {
+                        return 5000;
+                    }
+                };
+        ReflectionTestUtils.setField(handler, "restTemplate", new RestTemplate());
+        final String targetEndpoint = "http://localhost:" + upstream.getAddress().getPort() + "/flight";
+        final ExecutorService callers = Executors.newFixedThreadPool(3);
+        try {
+            final List<Future<ResponseEntity<Resource>>> responses = new ArrayList<>();
+            responses.add(callers.submit(() -> sendGet(handler, targetEndpoint)));
+            firstCallStarted.await(5, TimeUnit.SECONDS);
+            responses.add(callers.submit(() -> sendGet(handler, targetEndpoint)));
+            responses.add(callers.submit(() -> sendGet(handler, targetEndpoint)));
+            // give the followers time to join the request in flight
+            Thread.sleep(200);
+            releaseFirstCall.countDown();
+
+            for (final Future<ResponseEntity<Resource>> response : responses) {
+                assertThat(
+                        response.get(5, TimeUnit.SECONDS).getStatusCode(),
+                        is(status == 200 ? HttpStatus.OK : HttpStatus.GATEWAY_TIMEOUT)
+                );
+            }
+            return calls.get();
+        } finally {
+            callers.shutdownNow();
+            upstream.stop(0);
+            ((ExecutorService) upstream.getExecutor()).shutdownNow();
+        }
+    }
+
+    private static ResponseEntity<Resource> sendGet(
+            final RoutingHandler handler,
+            final String targetEndpoint
+    ) {
+        return handler.handleGenericRequestInternal(
+                targetEndpoint,
+                null,
+                new MockHttpServletRequest(),
+                null,
+                HttpMethod.GET
+        );
+    }
+
+    private static ResponseEntity<Resource> sendAsync(
+            final RoutingHandler handler,
+            final String targetEndpoint
+    ) throws Exception {
+        return handler.handleGenericRequestAsync(
+                targetEndpoint,
+                null,
+                new MockHttpServletRequest(),
+                null,
+                HttpMethod.GET
+        ).get(5, TimeUnit.SECONDS);
+    }
+
+    private static ObjectProvider<CloseableHttpAsyncClient> objectProvider(
+            final CloseableHttpAsyncClient client
+    ) {
+        return new ObjectProvider<>() {
+            @Override
+            public CloseableHttpAsyncClient getObject() {
+                return client;
+            }
+
+            @Override
+            public CloseableHttpAsyncClient getObject(final Object... args) {
+                return client;
+            }
+
+            @Override
+            public CloseableHttpAsyncClient getIfAvailable() {
+                return client;
+            }
+
+            @Override
+            public CloseableHttpAsyncClient getIfUnique() {
+                return client;
+            }
+        };
+    }
 }
@@ -0,0 +1,95 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class RoutingMetricsTest {
+
+    @Test
+    void testResponsesAreTaggedByHostAndStatusClass() {
+        final MeterRegistry registry = new SimpleMeterRegistry();
+        final RoutingMetrics metrics = new RoutingMetrics(registry, "MyRoutingHandler");
+
+        metrics.recordRequestSize("example.com", 12);
+        metrics.recordResponse("example.com", HttpStatus.OK, 100, 1_000_000);
+        metrics.recordResponse("example.com", HttpStatus.NO_CONTENT, 0, 1_000_000);
+        metrics.recordResponse("example.com", HttpStatus.GATEWAY_TIMEOUT, -1, 1_000_000);
+
+        assertThat(
+                registry.get("privacyproxy.routing.requests")
+                        .tags("handler", "MyRoutingHandler", "host", "example.com", "status", "2xx")
+                        .timer()
+                        .count(),
+                equalTo(2L)
+        );
+        assertThat(
+                registry.get("privacyproxy.routing.requests").tag("status", "5xx").timer().count(),
+                equalTo(1L)
+        );
+        assertThat(
+                registry.get("privacyproxy.routing.response.size").summary().totalAmount(),
+                equalTo(100.0)
+        );
+        assertThat(
+                registry.get("privacyproxy.routing.request.size").summary().totalAmount(),
+                equalTo(12.0)
+        );
+    }
+
+    @Test
+    void testUpstreamErrorsAreClassified() {
+        final MeterRegistry registry = new SimpleMeterRegistry();
+        final RoutingMetrics metrics = new RoutingMetrics(registry, "MyRoutingHandler");
+
+        metrics.recordUpstream("example.com", HttpStatus.OK, 1_000_000);
+        metrics.recordUpstreamError(
+                "example.com",
+                new HttpServerErrorException(HttpStatus.BAD_GATEWAY),
+                1_000_000
+        );
+        metrics.recordUpstreamError(
+                "example.com",
+                new ResourceAccessException("timeout", new SocketTimeoutException()),
+                1_000_000
+        );
+        metrics.recordUpstreamError(
+                "example.com",
+                new ResourceAccessException("reset", new IOException()),
+                1_000_000
+        );
+
+        assertThat(
+                registry.get("privacyproxy.routing.upstream").tag("status", "5xx").timer().count(),
+                equalTo(1L)
+        );
+        assertThat(
+                registry.get("privacyproxy.routing.upstream.errors")
+                        .tag("type", "timeout")
+                        .counter()
+                        .count(),
+                equalTo(1.0)
+        );
+        assertThat(
+                registry.get("privacyproxy.routing.upstream.errors")
+                        .tag("type", "io_error")
+                        .counter()
+                        .count(),
+                equalTo(1.0)
+        );
+        assertThat(
+                registry.find("privacyproxy.routing.upstream.errors").tag("type", "5xx").counter(),
+                nullValue()
+        );
+    }
+}
@@ -0,0 +1,98 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallsShareOneExecution() throws Exception {
+        final SingleFlight<Integer> singleFlight = new SingleFlight<>(5000);
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch leaderStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLeader = new CountDownLatch(1);
+        final ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            final Future<Integer> leader =
+                    callers.submit(
+                            () -> singleFlight.execute(
+                                    "key",
+                                    () -> {
+                                        leaderStarted.countDown();
+                                        await(releaseLeader);
+                                        return executions.incrementAndGet();
+                                    }
+                            )
+                    );
+            leaderStarted.await(5, TimeUnit.SECONDS);
+
+            final List<Future<Integer>> followers = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                followers.add(
+                        callers.submit(() -> singleFlight.execute("key", executions::incrementAndGet))
+                );
+            }
+            // give the followers time to join the call in flight
+            Thread.sleep(200);
+            releaseLeader.countDown();
+
+            assertThat(leader.get(5, TimeUnit.SECONDS), equalTo(1));
+            for (final Future<Integer> follower : followers) {
+                assertThat(follower.get(5, TimeUnit.SECONDS), equalTo(1));
+            }
+            assertThat(executions.get(), equalTo(1));
+            assertThat(singleFlight.getSharedCount(), equalTo(3L));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    void testWaitingCallerFallsBackAfterMaxWait() throws Exception {
+        final SingleFlight<String> singleFlight = new SingleFlight<>(50);
+        final CountDownLatch leaderStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLeader = new CountDownLatch(1);
+        final ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> leader =
+                    callers.submit(
+                            () -> singleFlight.execute(
+                                    "key",
+                                    () -> {
+                                        leaderStarted.countDown();
+                                        await(releaseLeader);
+                                        return "leader";
+                                    }
+                            )
+                    );
+            leaderStarted.await(5, TimeUnit.SECONDS);
+
+            assertThat(singleFlight.execute("key", () -> "own"), equalTo("own"));
+            assertThat(singleFlight.getFallbackCount(), equalTo(1L));
+
+            releaseLeader.countDown();
+            assertThat(leader.get(5, TimeUnit.SECONDS), equalTo("leader"));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
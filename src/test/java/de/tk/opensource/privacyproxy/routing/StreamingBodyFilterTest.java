@@ -0,0 +1,108 @@
+package de.tk.opensource.privacyproxy.routing;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StreamingBodyFilterTest {
+
+    private final StreamingBodyFilter filter =
+            StreamingBodyFilter.compile(
+                    new String[]{"uid"},
+                    new String[]{"user.email", "events.ip"}
+            );
+
+    @Test
+    void testJsonFieldsAreRemovedByPath() throws IOException {
+        final String body =
+                "{\"uid\":\"4711\",\"user\":{\"email\":\"a@b.c\",\"plan\":\"basic\",\"uid\":1},"
+                        + "\"events\":[{\"ip\":\"203.0.113.1\",\"v\":1.50},{\"ip\":null,\"v\":[1,2]}],"
+                        + "\"email\":\"kept\"}";
+
+        assertThat(
+                filter(body, MediaType.APPLICATION_JSON),
+                equalTo(
+                        "{\"user\":{\"plan\":\"basic\",\"uid\":1},"
+                                + "\"events\":[{\"v\":1.50},{\"v\":[1,2]}],\"email\":\"kept\"}"
+                )
+        );
+    }
+
+    @Test
+    void testLargeJsonBodiesAreFilteredInChunks() throws IOException {
+        final StringBuilder body = new StringBuilder("[");
+        final StringBuilder expected = new StringBuilder("[");
+        for (int i = 0; i < 10_000; i++) {
+            final String separator = i > 0 ? "," : "";
+            body.append(separator).append("{\"uid\":").append(i).append(",\"n\":").append(i).append('}');
+            expected.append(separator).append("{\"n\":").append(i).append('}');
+        }
+        body.append(']');
+        expected.append(']');
+
+        // arrays are transparent, the objects of a batch are filtered like a single object
+        assertThat(filter(body.toString(), MediaType.APPLICATION_JSON), equalTo(expected.toString()));
+    }
+
+    @Test
+    void testFormParamsAreRemovedByDecodedName() throws IOException {
+        assertThat(
+                filter(
+                        "u%69d=4711&a=1&&b=x%26y&uid&c=&uid=2",
+                        MediaType.APPLICATION_FORM_URLENCODED
+                ),
+                equalTo("a=1&b=x%26y&c=")
+        );
+    }
+
+    @Test
+    void testJsonIsReadInDeclaredCharsetAndWrittenAsUtf8() throws IOException {
+        final MediaType latin1Json = new MediaType(MediaType.APPLICATION_JSON, StandardCharsets.ISO_8859_1);
+        final InputStream filtered =
+                filter.filter(
+                        new ByteArrayInputStream(
+                                "{\"uid\":1,\"city\":\"Lübeck\"}".getBytes(StandardCharsets.ISO_8859_1)
+                        ),
+                        latin1Json
+                );
+
+        assertThat(IOUtils.toString(filtered, StandardCharsets.UTF_8), equalTo("{\"city\":\"Lübeck\"}"));
+        assertThat(
+                StreamingBodyFilter.filteredContentType(latin1Json),
+                equalTo(MediaType.parseMediaType("application/json;charset=UTF-8"))
+        );
+        assertThat(
+                StreamingBodyFilter.filteredContentType(MediaType.APPLICATION_FORM_URLENCODED),
+                equalTo(MediaType.APPLICATION_FORM_URLENCODED)
+        );
+    }
+
+    @Test
+    void testMalformedJsonIsReported() {
+        assertThrows(
+                StreamingBodyFilter.MalformedBodyException.class,
+                () -> filter("{\"uid\":", MediaType.APPLICATION_JSON)
+        );
+    }
+
+    private String filter(final String body, final MediaType contentType) throws IOException {
+        try (
+                InputStream filtered =
+                        filter.filter(
+                                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)),
+                                contentType
+                        )
+        ) {
+            return IOUtils.toString(filtered, StandardCharsets.UTF_8);
+        }
+    }
+}
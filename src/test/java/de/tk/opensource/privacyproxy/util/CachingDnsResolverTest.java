@@ -0,0 +1,63 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.apache.hc.client5.http.DnsResolver;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CachingDnsResolverTest {
+
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicLong now = new AtomicLong();
+
+    private final DnsResolver delegate =
+            new DnsResolver() {
+
+                @Override
+                public InetAddress[] resolve(final String host) throws UnknownHostException {
+                    lookups.incrementAndGet();
+                    if (host.endsWith(".invalid")) {
+                        throw new UnknownHostException(host);
+                    }
+                    return new InetAddress[]{
+                            InetAddress.getByAddress(host, new byte[]{10, 0, 0, (byte) lookups.get()})
+                    };
+                }
+
+                @Override
+                public String resolveCanonicalHostname(final String host) {
+                    return host;
+                }
+            };
+
+    @Test
+    void testAddressesAreCachedUntilTtl() throws UnknownHostException {
+        final CachingDnsResolver resolver = new CachingDnsResolver(delegate, 60, now::get);
+
+        final InetAddress[] first = resolver.resolve("www.domain.tld");
+        now.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        assertArrayEquals(first, resolver.resolve("www.domain.tld"));
+        assertEquals(1, lookups.get());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        resolver.resolve("www.domain.tld");
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    void testFailedLookupsAreNotCached() {
+        final CachingDnsResolver resolver = new CachingDnsResolver(delegate, 60, now::get);
+
+        assertThrows(UnknownHostException.class, () -> resolver.resolve("host.invalid"));
+        assertThrows(UnknownHostException.class, () -> resolver.resolve("host.invalid"));
+        assertEquals(2, lookups.get());
+    }
+}
@@ -0,0 +1,62 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CidrMatcherTest {
+
+    private final CidrMatcher matcher =
+            new CidrMatcher(
+                    List.of("10.0.0.0/8", "192.168.17.0/24", "203.0.113.7", "0.0.0.0/32", "fd00::/8",
+                            "2001:db8:0:42::/64", "::ffff:198.51.100.0/120"
+                    )
+            );
+
+    @Test
+    void testIpv4() {
+        assertTrue(matches("10.255.1.2"));
+        assertTrue(matches("192.168.17.254"));
+        assertTrue(matches("203.0.113.7"));
+        assertTrue(matches("198.51.100.9"));
+        assertFalse(matches("11.0.0.1"));
+        assertFalse(matches("192.168.18.1"));
+        assertFalse(matches("203.0.113.8"));
+        assertFalse(matches("0.0.0.1"));
+    }
+
+    @Test
+    void testIpv6() {
+        assertTrue(matches("fd12:3456::1"));
+        assertTrue(matches("2001:db8:0:42:ffff::1"));
+        assertTrue(matches("::ffff:10.1.2.3"));
+        assertFalse(matches("fe80::1"));
+        assertFalse(matches("2001:db8:0:43::1"));
+        assertFalse(matches("::a01:203"));
+    }
+
+    @Test
+    void testRangesCoveringEachOther() {
+        final CidrMatcher nested = new CidrMatcher(List.of("10.1.2.0/24", "10.0.0.0/8", "10.1.0.0/16"));
+        assertTrue(nested.matches(IpAddresses.parse("10.200.0.1")));
+        assertTrue(nested.matches(IpAddresses.parse("10.1.2.3")));
+        assertTrue(new CidrMatcher(List.of("0.0.0.0/0")).matches(IpAddresses.parse("1.2.3.4")));
+        assertFalse(new CidrMatcher(List.of()).matches(IpAddresses.parse("1.2.3.4")));
+        assertTrue(new CidrMatcher(List.of()).isEmpty());
+    }
+
+    @Test
+    void testInvalidRanges() {
+        assertThrows(IllegalArgumentException.class, () -> new CidrMatcher(List.of("10.0.0.0/33")));
+        assertThrows(IllegalArgumentException.class, () -> new CidrMatcher(List.of("fd00::/")));
+        assertThrows(IllegalArgumentException.class, () -> new CidrMatcher(List.of("proxy.local/8")));
+    }
+
+    private boolean matches(final String address) {
+        return matcher.matches(IpAddresses.parse(address));
+    }
+}
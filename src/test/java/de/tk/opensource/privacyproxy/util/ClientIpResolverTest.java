@@ -0,0 +1,74 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ClientIpResolverTest {
+
+    private final ClientIpResolver resolver =
+            new ClientIpResolver(
+                    List.of("10.0.0.0/8", "2001:db8:ffff::/48"),
+                    List.of("X-Forwarded-For", "Forwarded")
+            );
+
+    @Test
+    void testUntrustedPeerIsClient() {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("198.51.100.42");
+        request.addHeader("X-Forwarded-For", "203.0.113.17");
+        assertEquals("198.51.100.42", resolver.resolve(request));
+    }
+
+    @Test
+    void testFirstUntrustedHopIsClient() {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("X-Forwarded-For", "1.1.1.1, 203.0.113.17 , 10.0.0.2");
+        assertEquals("203.0.113.17", resolver.resolve(request));
+    }
+
+    @Test
+    void testAllHopsTrusted() {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("X-Forwarded-For", "10.0.0.3,10.0.0.2");
+        assertEquals("10.0.0.3", resolver.resolve(request));
+    }
+
+    @Test
+    void testInvalidHopStopsTheWalk() {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("X-Forwarded-For", "203.0.113.17, unknown, 10.0.0.2");
+        assertEquals("10.0.0.2", resolver.resolve(request));
+    }
+
+    @Test
+    void testForwardedHeader() {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("2001:db8:ffff::1");
+        request.addHeader(
+                "Forwarded",
+                "for=192.0.2.60;proto=http, For=\"[2001:db8:cafe::17]:4711\";by=10.0.0.9, "
+                        + "for=10.0.0.5:8080"
+        );
+        assertEquals("2001:db8:cafe::17", resolver.resolve(request));
+    }
+
+    @Test
+    void testHeaderOrder() {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.1");
+        request.addHeader("Forwarded", "for=192.0.2.60");
+        request.addHeader("X-Forwarded-For", "203.0.113.17");
+        assertEquals("203.0.113.17", resolver.resolve(request));
+        assertEquals(
+                "10.0.0.1",
+                new ClientIpResolver(List.of(), List.of("X-Forwarded-For")).resolve(request)
+        );
+    }
+}
@@ -0,0 +1,73 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConnectionPermitManagerTest {
+
+    private static final HttpRoute ROUTE = new HttpRoute(new HttpHost("http", "localhost", 80));
+    private static final HttpRoute OTHER_ROUTE = new HttpRoute(new HttpHost("http", "127.0.0.1", 80));
+    private static final Timeout TIMEOUT = Timeout.ofMilliseconds(100);
+
+    private final PoolingHttpClientConnectionManager pool =
+            PoolingHttpClientConnectionManagerBuilder.create().setMaxConnTotal(2).setMaxConnPerRoute(1).build();
+
+    @AfterEach
+    void closePool() {
+        pool.close(CloseMode.IMMEDIATE);
+    }
+
+    @Test
+    void testLeaseTimesOutWithoutPermit() throws Exception {
+        final ConnectionPermitManager manager = new ConnectionPermitManager(pool, 2, 1);
+        final ConnectionEndpoint endpoint = manager.lease("1", ROUTE, TIMEOUT, null).get(TIMEOUT);
+        assertNotNull(endpoint);
+
+        // the second lease waits for the permit of the route, the pool itself is never asked
+        assertThrows(TimeoutException.class, () -> manager.lease("2", ROUTE, TIMEOUT, null).get(TIMEOUT));
+        assertEquals(0, pool.getTotalStats().getPending());
+
+        manager.release(endpoint, null, TimeValue.ZERO_MILLISECONDS);
+        manager.release(manager.lease("3", ROUTE, TIMEOUT, null).get(TIMEOUT), null, TimeValue.ZERO_MILLISECONDS);
+        assertEquals(0, pool.getTotalStats().getLeased());
+    }
+
+    @Test
+    void testRoutesHavePermitsOfTheirOwn() throws Exception {
+        final ConnectionPermitManager manager = new ConnectionPermitManager(pool, 2, 1);
+        final ConnectionEndpoint endpoint = manager.lease("1", ROUTE, TIMEOUT, null).get(TIMEOUT);
+        final ConnectionEndpoint otherEndpoint = manager.lease("2", OTHER_ROUTE, TIMEOUT, null).get(TIMEOUT);
+        assertEquals(2, pool.getTotalStats().getLeased());
+
+        manager.release(endpoint, null, TimeValue.ZERO_MILLISECONDS);
+        manager.release(otherEndpoint, null, TimeValue.ZERO_MILLISECONDS);
+        assertEquals(0, pool.getTotalStats().getLeased());
+    }
+
+    @Test
+    void testReleasingTwiceReturnsThePermitOnce() throws Exception {
+        final ConnectionPermitManager manager = new ConnectionPermitManager(pool, 1, 1);
+        final ConnectionEndpoint endpoint = manager.lease("1", ROUTE, TIMEOUT, null).get(TIMEOUT);
+        manager.release(endpoint, null, TimeValue.ZERO_MILLISECONDS);
+        manager.release(endpoint, null, TimeValue.ZERO_MILLISECONDS);
+
+        final ConnectionEndpoint next = manager.lease("2", OTHER_ROUTE, TIMEOUT, null).get(TIMEOUT);
+        // a second permit would let this lease through
+        assertThrows(TimeoutException.class, () -> manager.lease("3", ROUTE, TIMEOUT, null).get(TIMEOUT));
+        manager.release(next, null, TimeValue.ZERO_MILLISECONDS);
+    }
+}
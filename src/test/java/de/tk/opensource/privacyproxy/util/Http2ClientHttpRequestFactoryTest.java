@@ -0,0 +1,109 @@
+package de.tk.opensource.privacyproxy.util;
+
+import com.sun.net.httpserver.HttpServer;
+import de.tk.opensource.privacyproxy.config.proxy.TimeoutProperties;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class Http2ClientHttpRequestFactoryTest {
+
+    private final Map<String, String> receivedHeaders = new ConcurrentHashMap<>();
+    private final ClientHttpRequestFactory requestFactory =
+            new ProxyHelper(null, null, null, null).createHttp2RequestFactory(new TimeoutProperties());
+    private HttpServer upstream;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        upstream = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        upstream.createContext(
+                "/gzip",
+                exchange -> {
+                    exchange.getRequestHeaders().forEach(
+                            (name, values) -> receivedHeaders.put(name.toLowerCase(), values.get(0))
+                    );
+                    receivedHeaders.put(
+                            "body",
+                            IOUtils.toString(exchange.getRequestBody(), StandardCharsets.UTF_8)
+                    );
+                    final byte[] responseBody = gzip("[1,2,3,4,5,6]");
+                    exchange.getResponseHeaders().add(HttpHeaders.CONTENT_ENCODING, "gzip");
+                    exchange.sendResponseHeaders(200, responseBody.length);
+                    exchange.getResponseBody().write(responseBody);
+                    exchange.close();
+                }
+        );
+        upstream.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        upstream.stop(0);
+    }
+
+    @Test
+    void testResponseIsDecoded() throws IOException {
+        final ClientHttpRequest request = requestFactory.createRequest(uri(), HttpMethod.POST);
+        request.getHeaders().add("X-Forwarded", "yes");
+        request.getHeaders().add(HttpHeaders.CONNECTION, "close");
+        request.getBody().write("id=1234".getBytes(StandardCharsets.UTF_8));
+
+        try (ClientHttpResponse response = request.execute()) {
+            assertThat(response.getStatusCode(), equalTo(HttpStatus.OK));
+            assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), nullValue());
+            assertThat(
+                    IOUtils.toString(response.getBody(), StandardCharsets.UTF_8),
+                    equalTo("[1,2,3,4,5,6]")
+            );
+        }
+        assertThat(receivedHeaders.get("x-forwarded"), equalTo("yes"));
+        assertThat(receivedHeaders.get("accept-encoding"), equalTo("gzip, deflate"));
+        assertThat(receivedHeaders.get("body"), equalTo("id=1234"));
+    }
+
+    @Test
+    void testCompressedPassthrough() throws IOException {
+        final ClientHttpRequest request = requestFactory.createRequest(uri(), HttpMethod.GET);
+        request.getHeaders().add(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        request.getHeaders().add(CompressedPassthroughExec.HEADER, "true");
+
+        try (ClientHttpResponse response = request.execute()) {
+            assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), equalTo("gzip"));
+            assertThat(response.getBody().readAllBytes(), equalTo(gzip("[1,2,3,4,5,6]")));
+        }
+        assertThat(receivedHeaders.get("accept-encoding"), equalTo("gzip"));
+        assertThat(receivedHeaders.get(CompressedPassthroughExec.HEADER.toLowerCase()), nullValue());
+    }
+
+    private URI uri() {
+        return URI.create("http://localhost:" + upstream.getAddress().getPort() + "/gzip");
+    }
+
+    private static byte[] gzip(final String content) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return compressed.toByteArray();
+    }
+}
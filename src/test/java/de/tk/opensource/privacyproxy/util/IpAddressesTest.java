@@ -0,0 +1,191 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.apache.tomcat.util.net.IPv6Utils;
+import org.junit.jupiter.api.Test;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IpAddressesTest {
+
+    private static final int FUZZ_ROUNDS = 20_000;
+
+    private final Random random = new Random(4711);
+
+    @Test
+    void testObfuscationMatchesLegacyForIpv4() {
+        for (int i = 0; i < FUZZ_ROUNDS; i++) {
+            final String address =
+                    random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256)
+                            + "." + random.nextInt(256);
+            assertEquals(legacyObfuscate(address), RequestUtils.obfuscateIpAddress(address), address);
+        }
+    }
+
+    @Test
+    void testObfuscationMatchesLegacyForIpv6() {
+        for (int i = 0; i < FUZZ_ROUNDS; i++) {
+            final String address = randomIpv6();
+            if (IpAddresses.isIpv4Mapped(IpAddresses.parse(address))) {
+                // returned unchanged by the legacy code, see below
+                continue;
+            }
+            assertEquals(legacyObfuscate(address), RequestUtils.obfuscateIpAddress(address), address);
+        }
+    }
+
+    @Test
+    void testParsingMatchesInetAddress() throws UnknownHostException {
+        for (int i = 0; i < FUZZ_ROUNDS; i++) {
+            final String address = randomIpv6();
+            final byte[] parsed = IpAddresses.parse(address);
+            if (IpAddresses.isIpv4Mapped(parsed)) {
+                // InetAddress converts IPv4-mapped addresses to IPv4
+                continue;
+            }
+            final InetAddress expected = InetAddress.getByName(address);
+            assertArrayEquals(expected.getAddress(), parsed, address);
+            assertEquals(
+                    IPv6Utils.canonize(expected.getHostAddress()),
+                    IpAddresses.format(parsed),
+                    address
+            );
+        }
+    }
+
+    @Test
+    void testMalformedAddressesAreRejected() {
+        final String[] malformed = {
+                null, "", " ", "unknown", "localhost", "www.domain.tld", "1.2.3", "1.2.3.4.5",
+                "1.2.3.", ".1.2.3", "256.1.1.1", "1..2.3", "1.2.3.4 ", "1.2.3.x", "١.٢.٣.٤", ":",
+                ":::", "1:2", "1:2:3:4:5:6:7:8:9", "1::2::3", "12345::", "1:2:3:4:5:6:7:8::",
+                "::1.2.3", "1:2:3:4:5:6:7:1.2.3.4", "fe80::1%", "g::1", "[::1]"
+        };
+        for (final String address : malformed) {
+            assertNull(IpAddresses.parse(address), address);
+            assertEquals(address, RequestUtils.obfuscateIpAddress(address), address);
+        }
+    }
+
+    @Test
+    void testObfuscationOfAddressesTheLegacyCodeMissed() {
+        // trailing "::" was not expanded
+        assertEquals("1:2:3:4:5:6::", RequestUtils.obfuscateIpAddress("1:2:3:4:5:6:7::"));
+        // IPv4-mapped addresses in hex notation were returned unchanged
+        assertEquals("::ffff:1.2.0.0", RequestUtils.obfuscateIpAddress("::ffff:102:304"));
+        assertEquals("::ffff:1.2.0.0", RequestUtils.obfuscateIpAddress("::ffff:1.2.3.4"));
+        assertEquals("fe80::", RequestUtils.obfuscateIpAddress("fe80::1%eth0"));
+        assertEquals("1.2.0.0", RequestUtils.obfuscateIpAddress("001.002.003.004"));
+    }
+
+    @Test
+    void testMask() {
+        final byte[] address = IpAddresses.parse("2001:db8:ffff:ffff::ffff");
+        IpAddresses.mask(address, 36);
+        assertEquals("2001:db8:f000::", IpAddresses.format(address));
+    }
+
+    /**
+     * Full or compressed notation with random case, leading zeros and runs of zero groups. The
+     * legacy code did not expand a trailing "::", so it is never generated.
+     */
+    private String randomIpv6() {
+        final int[] groups = new int[8];
+        for (int g = 0; g < groups.length; g++) {
+            groups[g] = random.nextInt(3) == 0 ? 0 : random.nextInt(0x10000);
+        }
+        if (random.nextInt(10) == 0) {
+            // IPv4-mapped
+            groups[0] = groups[1] = groups[2] = groups[3] = groups[4] = 0;
+            groups[5] = 0xFFFF;
+        }
+        int compressFrom = -1;
+        int compressTo = -1;
+        if (random.nextBoolean()) {
+            compressFrom = random.nextInt(7);
+            compressTo = compressFrom + 1 + random.nextInt(7 - compressFrom);
+            if (compressTo == 8) {
+                compressTo = 7;
+            }
+            for (int g = compressFrom; g < compressTo; g++) {
+                groups[g] = 0;
+            }
+        }
+        final StringBuilder address = new StringBuilder();
+        for (int g = 0; g < groups.length; g++) {
+            if (g == compressFrom) {
+                address.append(g == 0 ? "::" : ":");
+                g = compressTo - 1;
+                continue;
+            }
+            String group = Integer.toHexString(groups[g]);
+            if (random.nextBoolean()) {
+                group = "000".substring(0, Math.min(3, 4 - group.length())) + group;
+            }
+            if (random.nextBoolean()) {
+                group = group.toUpperCase();
+            }
+            address.append(group);
+            if (g < groups.length - 1) {
+                address.append(':');
+            }
+        }
+        return address.toString();
+    }
+
+    // the implementation of RequestUtils before it stopped using InetAddress
+
+    private static String legacyObfuscate(final String ipAddress) {
+        try {
+            final InetAddress address = InetAddress.getByName(ipAddress);
+            if (address instanceof Inet6Address) {
+                return legacyObfuscateIpV6Address(ipAddress);
+            }
+            if (address instanceof Inet4Address) {
+                return legacyObfuscateIpV4Address(ipAddress);
+            }
+        } catch (UnknownHostException e) {
+            // not an address
+        }
+        return ipAddress;
+    }
+
+    private static String legacyObfuscateIpV4Address(final String ipAddress) {
+        final String[] addr = ipAddress.split("\\.");
+        if (addr.length == 4) {
+            addr[2] = addr[3] = "0";
+            return String.join(".", addr);
+        }
+        return ipAddress;
+    }
+
+    private static String legacyObfuscateIpV6Address(final String ipAddress) {
+        String[] addr = ipAddress.split("\\:");
+        final int positionOfShortSeparator = ipAddress.indexOf("::");
+        if (ipAddress.contains("::") && positionOfShortSeparator != ipAddress.length() - 2) {
+            int startIndex = addr.length;
+            final StringBuilder stringBuilder = new StringBuilder();
+            if (positionOfShortSeparator != 0) {
+                stringBuilder.append(":");
+            } else {
+                startIndex = startIndex - 1;
+            }
+            for (int i = startIndex; i <= 8; i++) {
+                stringBuilder.append("0:");
+            }
+            addr = ipAddress.replace("::", stringBuilder.toString()).split("\\:");
+        }
+        if (addr.length == 8) {
+            addr[6] = addr[7] = "0";
+            return IPv6Utils.canonize(String.join(":", addr));
+        }
+        return ipAddress;
+    }
+}
@@ -0,0 +1,46 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IpAnonymizerTest {
+
+    @Test
+    void testPrefixLengths() {
+        final IpAnonymizer anonymizer = new IpAnonymizer(24, 48);
+        assertEquals("203.0.113.0", anonymizer.anonymize("203.0.113.17"));
+        assertEquals("2001:db8:85a3::", anonymizer.anonymize("2001:db8:85a3:8d3:1319:8a2e:370:7348"));
+        assertEquals("::ffff:203.0.113.0", anonymizer.anonymize("::ffff:203.0.113.17"));
+        assertEquals("www.domain.tld", anonymizer.anonymize("www.domain.tld"));
+
+        final IpAnonymizer bits = new IpAnonymizer(20, 36, 0);
+        assertEquals("203.0.112.0", bits.anonymize("203.0.127.255"));
+        assertEquals("2001:db8:f000::", bits.anonymize("2001:db8:ffff::1"));
+
+        final IpAnonymizer none = new IpAnonymizer(32, 128);
+        assertEquals("203.0.113.17", none.anonymize("203.0.113.17"));
+        assertEquals("2001:db8::1", none.anonymize("2001:0DB8::0001"));
+    }
+
+    @Test
+    void testCache() {
+        final IpAnonymizer anonymizer = new IpAnonymizer(24, 48, 1);
+        final String anonymized = anonymizer.anonymize("203.0.113.17");
+        assertSame(anonymized, anonymizer.anonymize("203.0.113.17"));
+        // replaces the only slot
+        assertEquals("198.51.100.0", anonymizer.anonymize("198.51.100.42"));
+        assertEquals("203.0.113.0", anonymizer.anonymize("203.0.113.17"));
+        assertNull(anonymizer.anonymize(null));
+    }
+
+    @Test
+    void testInvalidPrefixLengths() {
+        assertThrows(IllegalArgumentException.class, () -> new IpAnonymizer(33, 48));
+        assertThrows(IllegalArgumentException.class, () -> new IpAnonymizer(24, -1));
+        assertThrows(IllegalArgumentException.class, () -> new IpAnonymizer(24, 48, -1));
+    }
+}
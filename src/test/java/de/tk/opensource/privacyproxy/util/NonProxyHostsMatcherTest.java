@@ -0,0 +1,72 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NonProxyHostsMatcherTest {
+
+    private static final List<String> PATTERNS =
+            List.of(
+                    "domain.tld",
+                    "*.wildcard.tld",
+                    "*domain.de",
+                    "any-tld.*",
+                    "10.0.*",
+                    "*.all.*",
+                    "**",
+                    "*",
+                    "",
+                    " spaced.tld ",
+                    "[::1]"
+            );
+
+    private static final List<String> HOSTS =
+            List.of(
+                    "domain.tld",
+                    "www.domain.tld",
+                    "wildcard.tld",
+                    "www.wildcard.tld",
+                    "otherdomain.de",
+                    "domain.de",
+                    "any-tld.tld",
+                    "any-tld",
+                    "10.0.0.1",
+                    "10.1.0.1",
+                    "sub.all.tld",
+                    "all",
+                    "spaced.tld",
+                    "[::1]",
+                    ""
+            );
+
+    @Test
+    void testMatchesLikeThePatterns() {
+        // every single pattern and every pattern without the catch-all ones
+        final Stream<List<String>> patternLists =
+                Stream.concat(
+                        PATTERNS.stream().map(List::of),
+                        Stream.of(
+                                PATTERNS.stream().filter(p -> !p.startsWith("*") || p.length() > 2)
+                                        .collect(Collectors.toList())
+                        )
+                );
+        patternLists.forEach(
+                patterns -> {
+                    final NonProxyHostsMatcher matcher =
+                            new NonProxyHostsMatcher(String.join("|", patterns));
+                    for (final String host : HOSTS) {
+                        assertEquals(
+                                patterns.stream().anyMatch(p -> ProxyHelper.matches(host, p.trim())),
+                                matcher.matches(host),
+                                host + " against " + patterns
+                        );
+                    }
+                }
+        );
+    }
+}
@@ -1,5 +1,9 @@
 package de.tk.opensource.privacyproxy.util;
 
+import de.tk.opensource.privacyproxy.config.proxy.ConnectionPoolProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
 import org.apache.hc.client5.http.impl.routing.SystemDefaultRoutePlanner;
 import org.junit.jupiter.api.Test;
 
@@ -7,6 +11,12 @@ import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
@@ -122,6 +132,14 @@ class ProxyHelperTest {
         assertTrue(ProxyHelper.matches("t*t", "**t"));
     }
 
+    @Test
+    void testConfiguredProxyIsCreatedOnce() throws MalformedURLException {
+        ProxyHelper proxyHelper = new ProxyHelper(null, "proxy.domain.de", 8080, "domain.tld");
+        final Proxy selected = proxyHelper.selectProxy(new URL("http://some.external.url"));
+        assertEquals("proxy.domain.de", ((InetSocketAddress) selected.address()).getHostString());
+        assertSame(selected, proxyHelper.selectProxy(new URL("http://other.external.url")));
+    }
+
     @Test
     void testProxyRoutePlannerInitialize() {
         ProxyHelper proxyHelper = new ProxyHelper(null, null, null, null);
@@ -130,4 +148,56 @@ class ProxyHelperTest {
         proxyHelper = new ProxyHelper(null, "proxy.domain.de", 8080, null);
         assertThat(proxyHelper.getProxyRoutePlanner(), is(instanceOf(PrivacyProxyRoutePlanner.class)));
     }
+
+    @Test
+    void testConnectionPoolConfiguration() {
+        final ConnectionPoolProperties connectionPoolProperties = new ConnectionPoolProperties();
+        connectionPoolProperties.setMaxTotal(42);
+        connectionPoolProperties.setMaxPerRoute(7);
+
+        try (ProxyHelper proxyHelper = new ProxyHelper(null, null, null, null, connectionPoolProperties)) {
+            proxyHelper.getCloseableHttpClient();
+            assertEquals(42, proxyHelper.getConnectionManager().getMaxTotal());
+            assertEquals(7, proxyHelper.getConnectionManager().getDefaultMaxPerRoute());
+            assertEquals(42, proxyHelper.getConnectionPoolStats().getMax());
+            assertEquals(0, proxyHelper.getConnectionPoolStats().getLeased());
+        }
+    }
+
+    @Test
+    void testConcurrentAccessCreatesOnePool() throws Exception {
+        try (ProxyHelper proxyHelper = new ProxyHelper(null, null, null, null)) {
+            final ExecutorService callers = Executors.newFixedThreadPool(8);
+            try {
+                final List<Future<PoolingHttpClientConnectionManager>> managers = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    managers.add(callers.submit(proxyHelper::getConnectionManager));
+                }
+                for (final Future<PoolingHttpClientConnectionManager> manager : managers) {
+                    assertSame(proxyHelper.getConnectionManager(), manager.get(5, TimeUnit.SECONDS));
+                }
+            } finally {
+                callers.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    void testConnectionPoolMetrics() {
+        final ConnectionPoolProperties connectionPoolProperties = new ConnectionPoolProperties();
+        connectionPoolProperties.setMaxTotal(42);
+        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        try (ProxyHelper proxyHelper = new ProxyHelper(null, null, null, null, connectionPoolProperties)) {
+            proxyHelper.bindTo(meterRegistry);
+            assertEquals(
+                    42.0,
+                    meterRegistry.get("privacyproxy.connections.pool").tag("state", "max").gauge().value()
+            );
+            assertEquals(
+                    0.0,
+                    meterRegistry.get("privacyproxy.connections.pool").tag("state", "leased").gauge().value()
+            );
+        }
+    }
 }
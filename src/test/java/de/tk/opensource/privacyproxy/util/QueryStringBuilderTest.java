@@ -0,0 +1,62 @@
+package de.tk.opensource.privacyproxy.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryStringBuilderTest {
+
+    @Test
+    void encodeLikeUrlEncoder() {
+        final Random random = new Random(42);
+        // ASCII, Latin-1, BMP, surrogates (paired and unpaired)
+        final char[] alphabet = "aZ09.-*_ ~!$&'()+,/:;=?@[]%#\"<>äß€😀\ud800"
+                .toCharArray();
+        for (int i = 0; i < 10_000; i++) {
+            final char[] value = new char[random.nextInt(16)];
+            for (int j = 0; j < value.length; j++) {
+                value[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            final String input = new String(value);
+            assertEquals(
+                    URLEncoder.encode(input, StandardCharsets.UTF_8),
+                    QueryStringBuilder.encode(input),
+                    "encoding of " + input
+            );
+        }
+    }
+
+    @Test
+    void buildUriForEndpoint() {
+        final String endpoint = "https://example.com/matomo.php";
+        assertTrue(QueryStringBuilder.isAppendable(endpoint));
+        assertFalse(QueryStringBuilder.isAppendable(endpoint + "?idsite=1"));
+
+        assertEquals(
+                URI.create("https://example.com/matomo.php?action_name=Start+%26+Ziel&raw=a%2Bb"),
+                QueryStringBuilder.forEndpoint(endpoint, 0)
+                        .appendEncoded("action_name", "Start & Ziel")
+                        .appendRaw("raw", "a%2Bb")
+                        .toUri()
+        );
+        assertEquals(URI.create(endpoint), QueryStringBuilder.forEndpoint(endpoint, 0).toUri());
+    }
+
+    @Test
+    void buildQueryString() {
+        assertEquals(
+                "one=1&two=",
+                QueryStringBuilder.forQueryString(0)
+                        .appendEncoded("one", "1")
+                        .appendEncoded("two", null)
+                        .toQueryString()
+        );
+    }
+}